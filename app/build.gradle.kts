@@ -63,6 +63,8 @@ dependencies {
     implementation(libs.splashscreen)
 
     testImplementation(libs.junit)
+    // android.jar only stubs org.json; unit tests need the real thing.
+    testImplementation(libs.json)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
\ No newline at end of file
@@ -3,19 +3,20 @@ package com.example.storyprinter;
 import android.Manifest;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
+import android.content.ContentResolver;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Matrix;
-import android.graphics.Color;
 import android.net.Uri;
 import android.os.Build;
 import android.provider.Settings;
 import android.os.Bundle;
 import android.os.Looper;
 import android.util.Log;
+import android.view.View;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.ImageView;
@@ -34,19 +35,32 @@ import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
+import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.snackbar.Snackbar;
 
-import com.example.storyprinter.bluetooth.BluetoothConnectionManager;
+import com.example.storyprinter.bluetooth.PrinterPool;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.IntentFilter;
 
-import com.example.storyprinter.print.ImageRasterizer;
+import com.example.storyprinter.print.ImageProcessor;
+import com.example.storyprinter.print.MonoRaster;
+import com.example.storyprinter.print.ParallelRasterLoader;
 import com.example.storyprinter.print.PhomemoEscPosEncoder;
+import com.example.storyprinter.print.PrintJob;
+import com.example.storyprinter.print.PrintQueue;
+import com.example.storyprinter.print.PrintPreferences;
+import com.example.storyprinter.print.PrintQuality;
+import com.example.storyprinter.print.PrintSpool;
+import com.example.storyprinter.print.PrinterProfile;
+import com.example.storyprinter.print.PrinterProfiles;
+import com.example.storyprinter.print.TallImageEncoder;
+import com.example.storyprinter.print.TextStyle;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -55,20 +69,33 @@ import java.util.Set;
 public class ManualModeActivity extends AppCompatActivity {
 
     public static final String EXTRA_IMAGE_URI = "com.example.storyprinter.extra.IMAGE_URI";
+    /** Optional story text printed below the image in the printer's font. */
+    public static final String EXTRA_PAGE_TEXT = "com.example.storyprinter.extra.PAGE_TEXT";
 
     private com.google.android.material.textfield.MaterialAutoCompleteTextView spinnerDevices;
-    private Button btnConnect, btnSelectImage, btnRotate, btnPrint;
+    private Button btnConnect, btnSelectImage, btnRotate, btnPrint, btnCancelPrint;
     private ImageView imagePreview;
     private TextView txtStatus;
 
     private final Map<String, BluetoothDevice> deviceMap = new HashMap<>();
-    private BluetoothConnectionManager connectionManager;
+    private StoryPrinterApp app;
+    private PrinterPool printerPool;
+    private PrintQueue printQueue;
+    private PrinterProfile activeProfile = PrinterProfiles.DEFAULT;
+    private final PrintQueue.Listener printQueueListener = job -> runOnUiThread(() -> onPrintJobChanged(job));
+    private final PrinterPool.StatusListener printerStatusListener = (printer, status) -> {
+        // Only surface problems; "ready" is implied by the regular status messages.
+        if (status.isBlocking() || status.overheated) {
+            runOnUiThread(() -> updateStatus(printer.displayName() + ": " + status.describe()));
+        }
+    };
 
     private Bitmap originalBitmap; // raw selected image
     private Bitmap processedBitmap; // dithered / printer-ready image shown in preview & sent
+    // Set for images too long to decode whole: originalBitmap is then a downsampled preview and
+    // printing decodes this source again in strips.
+    private Uri streamingSourceUri;
 
-    private static final int PRINTER_MAX_WIDTH_PX = 384; // Typical 58mm thermal printer width
-    private static final String TARGET_DEVICE_NAME = "T02"; // Filter target
 
     // Preview scaling configuration
     private static final int PREVIEW_MAX_SCALE = 4; // Max integer multiple upscale
@@ -79,19 +106,16 @@ public class ManualModeActivity extends AppCompatActivity {
     private ActivityResultLauncher<String[]> permissionsLauncher;
     private ActivityResultLauncher<String> singlePermissionLauncher;
     private ActivityResultLauncher<String> imagePickerLauncher;
+    private volatile ParallelRasterLoader batchLoader;
 
-    // Simplified adjustable parameters
-    // Remove boolean currentUseFSDither; introduce enum-like int for dither mode
-    private static final int DITHER_ATKINSON = 0;
-    private static final int DITHER_FLOYD_STEINBERG = 1;
-    private static final int DITHER_ORDERED_8x8 = 2;
-    private static final int DITHER_NONE = 3;
-    private int currentDitherMode = DITHER_ATKINSON;
+    // Simplified adjustable parameters; see ImageProcessor for what they do.
+    private int currentDitherMode = ImageProcessor.DITHER_ATKINSON;
     // Keep existing fields
     private float currentGamma = 1.0f;
     private int currentThreshold = 128;
     private boolean currentInvert = false;
     private boolean currentSharpen = false;
+    private int currentTone = ImageProcessor.TONE_NONE;
 
     // UI control fields (adjust) - remove btnReprocess, add spinnerDitherMode
     private SeekBar seekGamma, seekThreshold;
@@ -100,23 +124,21 @@ public class ManualModeActivity extends AppCompatActivity {
     private com.google.android.material.chip.Chip switchSharpen;
     private Button btnReset;
     private com.google.android.material.textfield.MaterialAutoCompleteTextView spinnerDitherMode;
+    private com.google.android.material.textfield.MaterialAutoCompleteTextView spinnerTone;
+    private com.google.android.material.textfield.MaterialAutoCompleteTextView spinnerCopies;
+    private com.google.android.material.chip.Chip chipMirror;
+    private com.google.android.material.chip.Chip chipIncludeText;
+    private String pageText; // set when opened from Story mode
+
+    // Copies are gang-printed as one continuous job, so larger runs of stickers stay cheap.
+    private static final int MAX_COPIES = 20;
+    private int currentCopies = 1;
 
     // Adapters for exposed dropdowns
     private ArrayAdapter<String> devicesAdapter;
     private ArrayAdapter<String> ditherAdapter;
+    private ArrayAdapter<String> toneAdapter;
 
-    // Preference / state persistence
-    private static final String PREFS_NAME = "image_prefs";
-    private static final String KEY_GAMMA = "gamma_progress"; // stored as int progress (10..150)
-    private static final String KEY_THRESHOLD = "threshold"; // 0..255
-    private static final String KEY_DITHER_MODE = "dither_mode"; // 0 FS,1 ORD,2 NONE
-    private static final String KEY_INVERT = "invert";
-    private static final String KEY_SHARPEN = "sharpen";
-    private static final String KEY_FSDITHER_LEGACY = "fs_dither"; // legacy boolean for migration
-    private static final String KEY_LAST_DEVICE_ADDRESS = "last_device_address"; // MAC of last connected printer
-
-    private static final int DEFAULT_GAMMA_PROGRESS = 100; // => 1.00
-    private static final int DEFAULT_THRESHOLD = 128;
     private static final boolean DEFAULT_INVERT = false;
 
     // Live reprocess debounce
@@ -125,10 +147,6 @@ public class ManualModeActivity extends AppCompatActivity {
     private final Runnable reprocessRunnable = this::processCurrentImageAsync; // will check for null image inside method
     private int processingGeneration = 0; // to discard stale results
 
-    // Prevent accidental double-taps on Send.
-    private static final long SEND_DEBOUNCE_MS = 5_000L;
-    private long sendDisabledUntilUptimeMs = 0L;
-
     // React to Bluetooth being toggled while the app is in the foreground.
     private final BroadcastReceiver bluetoothStateReceiver = new BroadcastReceiver() {
         @Override
@@ -161,7 +179,13 @@ public class ManualModeActivity extends AppCompatActivity {
             toolbar.setNavigationOnClickListener(v -> finish());
         }
 
-        connectionManager = new BluetoothConnectionManager(this);
+        // Connections and queued jobs are app-wide; Story mode may have connected already.
+        app = StoryPrinterApp.get(this);
+        printerPool = app.getPrinterPool();
+        printerPool.addStatusListener(printerStatusListener);
+        printQueue = app.getPrintQueue();
+        printQueue.addListener(printQueueListener);
+        activeProfile = app.getActiveProfile();
 
         registerReceiver(bluetoothStateReceiver,
                 new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED));
@@ -224,6 +248,14 @@ public class ManualModeActivity extends AppCompatActivity {
             // Consume the extra so rotation / repeated intents don't reload unexpectedly.
             intent.removeExtra(EXTRA_IMAGE_URI);
         }
+
+        String text = intent.getStringExtra(EXTRA_PAGE_TEXT);
+        if (text != null && !text.trim().isEmpty()) {
+            pageText = text;
+            chipIncludeText.setVisibility(View.VISIBLE);
+            chipIncludeText.setChecked(true);
+            intent.removeExtra(EXTRA_PAGE_TEXT);
+        }
     }
 
     private void initPermissionLaunchers() {
@@ -248,9 +280,12 @@ public class ManualModeActivity extends AppCompatActivity {
             }
         });
 
-        imagePickerLauncher = registerForActivityResult(new ActivityResultContracts.GetContent(), uri -> {
-            if (uri != null) {
-                loadBitmapFromUri(uri);
+        imagePickerLauncher = registerForActivityResult(new ActivityResultContracts.GetMultipleContents(), uris -> {
+            if (uris == null || uris.isEmpty()) return;
+            if (uris.size() == 1) {
+                loadBitmapFromUri(uris.get(0));
+            } else {
+                confirmBatchPrint(uris);
             }
         });
     }
@@ -293,6 +328,10 @@ public class ManualModeActivity extends AppCompatActivity {
         btnSelectImage = findViewById(R.id.btnSelectImage);
         btnRotate = findViewById(R.id.btnRotate);
         btnPrint = findViewById(R.id.btnPrint);
+        btnCancelPrint = findViewById(R.id.btnCancelPrint);
+        spinnerCopies = findViewById(R.id.spinnerCopies);
+        chipMirror = findViewById(R.id.chipMirror);
+        chipIncludeText = findViewById(R.id.chipIncludeText);
         imagePreview = findViewById(R.id.imagePreview);
         txtStatus = findViewById(R.id.txtStatus);
         seekGamma = findViewById(R.id.seekGamma);
@@ -303,10 +342,17 @@ public class ManualModeActivity extends AppCompatActivity {
         switchSharpen = findViewById(R.id.switchSharpen);
         btnReset = findViewById(R.id.btnReset);
         spinnerDitherMode = findViewById(R.id.spinnerDitherMode);
+        spinnerTone = findViewById(R.id.spinnerTone);
 
         // Device dropdown adapter is filled in loadPairedDevices.
         devicesAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, new ArrayList<>());
         spinnerDevices.setAdapter(devicesAdapter);
+
+        String[] copies = new String[MAX_COPIES];
+        for (int i = 0; i < MAX_COPIES; i++) copies[i] = String.valueOf(i + 1);
+        spinnerCopies.setAdapter(new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, copies));
+        spinnerCopies.setText(copies[0], false);
+        spinnerCopies.setOnItemClickListener((parent, view, position, id) -> currentCopies = position + 1);
     }
 
     private void initControls() {
@@ -323,6 +369,18 @@ public class ManualModeActivity extends AppCompatActivity {
             }
         });
 
+        toneAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1,
+                new String[]{"Off", "Auto levels", "Adaptive (CLAHE)"});
+        spinnerTone.setAdapter(toneAdapter);
+        spinnerTone.setText(toneAdapter.getItem(currentTone), false);
+        spinnerTone.setOnItemClickListener((parent, view, position, id) -> {
+            if (position != currentTone) {
+                currentTone = position;
+                savePreferences();
+                scheduleLiveReprocess();
+            }
+        });
+
         seekGamma.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 if (progress < 10) progress = 10; if (progress > 150) progress = 150;
@@ -359,12 +417,16 @@ public class ManualModeActivity extends AppCompatActivity {
         });
 
         btnReset.setOnClickListener(v -> {
-            seekGamma.setProgress(DEFAULT_GAMMA_PROGRESS);
-            seekThreshold.setProgress(DEFAULT_THRESHOLD);
-            currentDitherMode = DITHER_ATKINSON;
+            seekGamma.setProgress(ImageProcessor.DEFAULT_GAMMA_PROGRESS);
+            seekThreshold.setProgress(ImageProcessor.DEFAULT_THRESHOLD);
+            currentDitherMode = ImageProcessor.DITHER_ATKINSON;
             if (ditherAdapter != null) {
                 spinnerDitherMode.setText(ditherAdapter.getItem(currentDitherMode), false);
             }
+            currentTone = ImageProcessor.TONE_NONE;
+            if (toneAdapter != null) {
+                spinnerTone.setText(toneAdapter.getItem(currentTone), false);
+            }
             switchInvert.setChecked(DEFAULT_INVERT);
             switchSharpen.setChecked(false);
             // internal vars updated by listeners
@@ -373,19 +435,12 @@ public class ManualModeActivity extends AppCompatActivity {
     }
 
     private void loadPreferencesAndApply() {
-        SharedPreferences sp = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        int gammaProgress = sp.getInt(KEY_GAMMA, DEFAULT_GAMMA_PROGRESS);
-        int threshold = sp.getInt(KEY_THRESHOLD, DEFAULT_THRESHOLD);
-        int ditherMode = sp.contains(KEY_DITHER_MODE)
-                ? sp.getInt(KEY_DITHER_MODE, DITHER_ATKINSON)
-                : (sp.getBoolean(KEY_FSDITHER_LEGACY, true) ? DITHER_ATKINSON : DITHER_NONE);
-        boolean inv = sp.getBoolean(KEY_INVERT, DEFAULT_INVERT);
-        boolean sharpen = sp.getBoolean(KEY_SHARPEN, false);
-
-        // Clamp values just in case
-        if (gammaProgress < 10) gammaProgress = 10; if (gammaProgress > 150) gammaProgress = 150;
-        if (threshold < 0) threshold = 0; if (threshold > 255) threshold = 255;
-        if (ditherMode < 0 || ditherMode > 3) ditherMode = DITHER_ATKINSON;
+        ImageProcessor saved = ImageProcessor.fromPreferences(this);
+        int gammaProgress = Math.round(saved.gamma * 100f);
+        int threshold = saved.threshold;
+        int ditherMode = saved.ditherMode;
+        boolean inv = saved.invert;
+        boolean sharpen = saved.sharpen;
 
         // Update internal variables & labels
         currentGamma = gammaProgress / 100f;
@@ -393,6 +448,7 @@ public class ManualModeActivity extends AppCompatActivity {
         currentDitherMode = ditherMode;
         currentInvert = inv;
         currentSharpen = sharpen;
+        currentTone = saved.tone;
 
         // Apply to UI controls (they exist after initViews)
         seekGamma.setProgress(gammaProgress);
@@ -402,18 +458,15 @@ public class ManualModeActivity extends AppCompatActivity {
         valueGamma.setText(String.format(java.util.Locale.US, "%.2f", currentGamma));
         valueThreshold.setText(String.valueOf(currentThreshold));
 
-        // Dither dropdown text is set in initControls after adapter is attached.
+        // Dither and tone dropdown text is set in initControls after adapters are attached.
     }
 
     private void savePreferences() {
-        SharedPreferences sp = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        sp.edit()
-            .putInt(KEY_GAMMA, Math.round(currentGamma * 100f))
-            .putInt(KEY_THRESHOLD, currentThreshold)
-            .putInt(KEY_DITHER_MODE, currentDitherMode)
-            .putBoolean(KEY_INVERT, currentInvert)
-            .putBoolean(KEY_SHARPEN, currentSharpen)
-            .apply();
+        currentProcessor().save(this);
+    }
+
+    private ImageProcessor currentProcessor() {
+        return new ImageProcessor(currentGamma, currentThreshold, currentDitherMode, currentInvert, currentSharpen, currentTone);
     }
 
     private void loadPairedDevices() {
@@ -435,9 +488,11 @@ public class ManualModeActivity extends AppCompatActivity {
 
         List<String> names = new ArrayList<>();
         deviceMap.clear();
+        PrinterProfile modelOverride = PrintPreferences.getPrinterModelOverride(this);
         for (BluetoothDevice d : bonded) {
             String rawName = safeDeviceName(d);
-            if (rawName != null && rawName.equalsIgnoreCase(TARGET_DEVICE_NAME)) {
+            // Only list models we have a profile for, unless the user picked the model in Settings.
+            if (modelOverride != null || PrinterProfiles.forDeviceName(rawName) != null) {
                 String label = rawName + " (" + d.getAddress() + ")";
                 names.add(label);
                 deviceMap.put(label, d);
@@ -447,7 +502,7 @@ public class ManualModeActivity extends AppCompatActivity {
         if (names.isEmpty()) {
             btnConnect.setEnabled(false);
             devicesAdapter.clear();
-            devicesAdapter.add("No paired " + TARGET_DEVICE_NAME + " devices");
+            devicesAdapter.add("No paired printers");
             devicesAdapter.notifyDataSetChanged();
             spinnerDevices.setText(devicesAdapter.getItem(0), false);
         } else {
@@ -457,8 +512,7 @@ public class ManualModeActivity extends AppCompatActivity {
             devicesAdapter.notifyDataSetChanged();
 
             // Pre-select the last connected device if available, otherwise default to first.
-            String savedAddress = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-                    .getString(KEY_LAST_DEVICE_ADDRESS, null);
+            String savedAddress = app.getLastPrinterAddress();
             String labelToSelect = null;
             if (savedAddress != null) {
                 for (Map.Entry<String, BluetoothDevice> entry : deviceMap.entrySet()) {
@@ -479,7 +533,7 @@ public class ManualModeActivity extends AppCompatActivity {
         }
 
         // Update status
-        updateStatus("Found " + deviceMap.size() + " " + TARGET_DEVICE_NAME + " device(s)");
+        updateStatus("Found " + deviceMap.size() + " printer(s)");
 
         // When user picks a device from dropdown.
         spinnerDevices.setOnItemClickListener((parent, view, position, id) -> {
@@ -507,21 +561,23 @@ public class ManualModeActivity extends AppCompatActivity {
         updateStatus("Connecting to " + (nameForStatus != null ? nameForStatus : "device") + "...");
         btnConnect.setEnabled(false);
         new Thread(() -> {
-            connectionManager.pairDevice(device);
+            PrinterPool.Printer printer = app.connectPrinter(device);
             runOnUiThread(() -> {
                 btnConnect.setEnabled(true);
-                if (connectionManager.isConnected()) {
+                if (printer != null) {
+                    PrinterProfile previous = activeProfile;
+                    activeProfile = app.getActiveProfile();
                     String dn = safeDeviceName(device);
-                    updateStatus("Connected: " + (dn != null ? dn : "device"));
-
-                    // Remember this device for auto-reconnect next time.
-                    getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit()
-                            .putString(KEY_LAST_DEVICE_ADDRESS, device.getAddress())
-                            .apply();
+                    // Connecting another printer adds it to the pool; the earlier ones stay connected.
+                    int count = printerPool.getConnectedPrinters().size();
+                    updateStatus("Connected: " + (dn != null ? dn : "device")
+                            + (count > 1 ? " (" + count + " printers)" : ""));
 
                     // If we already have an image (e.g. coming from Story mode), allow printing right away.
                     // We rely on the already-processed bitmap if available; otherwise kick off processing now.
-                    if (processedBitmap == null && originalBitmap != null) {
+                    // A narrower printer also needs the image processed again at its width.
+                    if ((processedBitmap == null || activeProfile.widthPx != previous.widthPx)
+                            && originalBitmap != null) {
                         processCurrentImageAsync();
                     }
                 } else {
@@ -540,7 +596,7 @@ public class ManualModeActivity extends AppCompatActivity {
         devicesAdapter.notifyDataSetChanged();
         spinnerDevices.setText("", false);
         btnConnect.setEnabled(false);
-        if (connectionManager != null) connectionManager.closeConnection();
+        if (printerPool != null) printerPool.disconnectAll();
         refreshSendAvailability();
         updateStatus("Bluetooth is off");
     }
@@ -596,13 +652,26 @@ public class ManualModeActivity extends AppCompatActivity {
             }
         }
 
+        // Check the size first: very long images would run out of memory decoded whole.
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream is = getContentResolver().openInputStream(uri)) {
+            if (is != null) BitmapFactory.decodeStream(is, null, bounds);
+        } catch (IOException e) {
+            Log.w("ManualModeActivity", "Couldn't read image size", e);
+        }
+        boolean streaming = TallImageEncoder.needsStreaming(bounds.outWidth, bounds.outHeight, activeProfile);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        if (streaming) options.inSampleSize = TallImageEncoder.previewSampleSize(bounds.outHeight);
+
         try (InputStream is = getContentResolver().openInputStream(uri)) {
             if (is == null) { Toast.makeText(this, "Cannot open image", Toast.LENGTH_SHORT).show(); return; }
-            Bitmap bitmap = BitmapFactory.decodeStream(is);
+            Bitmap bitmap = BitmapFactory.decodeStream(is, null, options);
             if (bitmap == null) { Toast.makeText(this, "Decode failed", Toast.LENGTH_SHORT).show(); return; }
             originalBitmap = bitmap;
             processedBitmap = null;
-            updateStatus("Image loaded");
+            streamingSourceUri = streaming ? uri : null;
+            updateStatus(streaming ? "Long image loaded (printed in strips)" : "Image loaded");
             imagePreview.setImageDrawable(null);
             processingGeneration++; // invalidate prior processing
             refreshSendAvailability();
@@ -610,7 +679,7 @@ public class ManualModeActivity extends AppCompatActivity {
 
             // If we're already connected, make sure we process immediately so "Send" is available
             // without requiring a settings change.
-            if (connectionManager != null && connectionManager.isConnected()) {
+            if (printerPool != null && printerPool.isAnyConnected()) {
                 processCurrentImageAsync();
             }
         } catch (IOException e) {
@@ -629,6 +698,11 @@ public class ManualModeActivity extends AppCompatActivity {
             Toast.makeText(this, "Select an image first", Toast.LENGTH_SHORT).show();
             return;
         }
+        if (streamingSourceUri != null) {
+            // Only the preview is in memory; the print would still come out unrotated.
+            Toast.makeText(this, "Very long images can't be rotated", Toast.LENGTH_SHORT).show();
+            return;
+        }
         Matrix matrix = new Matrix();
         matrix.postRotate(90);
         originalBitmap = Bitmap.createBitmap(originalBitmap, 0, 0,
@@ -644,7 +718,7 @@ public class ManualModeActivity extends AppCompatActivity {
             refreshSendAvailability();
             return;
         }
-        if (connectionManager == null || !connectionManager.isConnected()) {
+        if (printerPool == null || !printerPool.isAnyConnected()) {
             Toast.makeText(this, "Connect to a device first", Toast.LENGTH_SHORT).show();
             refreshSendAvailability();
             return;
@@ -653,29 +727,220 @@ public class ManualModeActivity extends AppCompatActivity {
             singlePermissionLauncher.launch(Manifest.permission.BLUETOOTH_CONNECT);
             return;
         }
-        updateStatus("Sending image...");
-        btnPrint.setEnabled(false);
         final Bitmap toSend = processedBitmap;
+        final int copies = currentCopies;
+        final boolean mirror = chipMirror.isChecked();
+        final PrinterProfile profile = activeProfile;
+        final PrintQuality quality = PrintPreferences.getQuality(this);
+        final String text = pageText != null && chipIncludeText.isChecked() ? pageText : null;
+        final TextStyle textStyle = PrintPreferences.getTextStyle(this);
+        if (streamingSourceUri != null) {
+            sendStreamingImage(streamingSourceUri, copies, mirror, profile, quality);
+            return;
+        }
         new Thread(() -> {
             // Inversion already applied to processedBitmap if selected.
-            byte[] raster = ImageRasterizer.rasterizeImage(toSend);
-            byte[] escpos = PhomemoEscPosEncoder.encodeImage(raster, toSend.getWidth(), toSend.getHeight());
-            connectionManager.sendImage(escpos);
-            runOnUiThread(() -> {
-                refreshSendAvailability();
-                updateStatus("Image sent");
-            });
+            MonoRaster raster = MonoRaster.of(toSend);
+            try {
+                if (text != null) {
+                    // Picture and text in one job; copies repeat the whole page.
+                    PrintSpool.PayloadWriter page = out -> PhomemoEscPosEncoder.encodePage(
+                            out, raster, text, textStyle, profile, quality);
+                    if (mirror) {
+                        printQueue.enqueueMirrored("Page", copies, page);
+                    } else {
+                        printQueue.enqueue("Page", copies, page);
+                    }
+                    return;
+                }
+                String label = copies == 1 ? "Image" : "Image x" + copies;
+                PrintSpool.PayloadWriter writer = copies == 1
+                        ? out -> PhomemoEscPosEncoder.encodeImage(out, raster.data, raster.width, raster.height, profile, quality)
+                        // One reset and feed for the whole run instead of per copy.
+                        : out -> PhomemoEscPosEncoder.encodeBatch(
+                                out, Collections.nCopies(copies, raster), profile.mmToDots(PhomemoEscPosEncoder.DEFAULT_GAP_MM), profile, quality);
+                if (mirror) {
+                    printQueue.enqueueMirrored(label, 1, writer);
+                } else {
+                    printQueue.enqueue(label, 1, writer);
+                }
+            } catch (IOException e) {
+                Log.e("ManualModeActivity", "Couldn't spool print job", e);
+                runOnUiThread(() -> updateStatus("Couldn't spool job"));
+            }
         }).start();
     }
 
+    /**
+     * Queues a long image decoded, dithered and encoded strip by strip from its source, so it is
+     * never in memory whole. Copies repeat the spooled job.
+     */
+    private void sendStreamingImage(Uri source, int copies, boolean mirror, PrinterProfile profile,
+                                    PrintQuality quality) {
+        final ImageProcessor processor = currentProcessor();
+        PrintSpool.PayloadWriter writer = out -> {
+            try (InputStream is = getContentResolver().openInputStream(source)) {
+                if (is == null) throw new IOException("Cannot open image");
+                BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(is, false);
+                try {
+                    TallImageEncoder.encode(out, decoder, processor, profile, quality);
+                } finally {
+                    decoder.recycle();
+                }
+            }
+        };
+        updateStatus("Preparing long image...");
+        new Thread(() -> {
+            try {
+                if (mirror) {
+                    printQueue.enqueueMirrored("Long image", copies, writer);
+                } else {
+                    printQueue.enqueue("Long image", copies, writer);
+                }
+            } catch (IOException e) {
+                Log.e("ManualModeActivity", "Couldn't spool long image", e);
+                runOnUiThread(() -> updateStatus("Couldn't spool job"));
+            }
+        }).start();
+    }
+
+    private void confirmBatchPrint(List<Uri> uris) {
+        if (printerPool == null || !printerPool.isAnyConnected()) {
+            Toast.makeText(this, "Connect to a device first", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        new MaterialAlertDialogBuilder(this)
+                .setTitle("Print " + uris.size() + " images?")
+                .setMessage("Each image is printed with the current settings.")
+                .setPositiveButton("Print", (d, w) -> printBatch(uris))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    /**
+     * Prints several gallery images in the order picked. They are decoded and dithered on all
+     * cores a few at a time, and each one is queued as soon as it and those before it are ready,
+     * so the printer starts on the first while the rest are still being processed.
+     */
+    private void printBatch(List<Uri> uris) {
+        cancelBatch();
+        final List<Uri> sources = new ArrayList<>(uris);
+        final int copies = currentCopies;
+        final boolean mirror = chipMirror.isChecked();
+        final PrinterProfile profile = activeProfile;
+        final PrintQuality quality = PrintPreferences.getQuality(this);
+        final ImageProcessor processor = currentProcessor();
+        final ContentResolver resolver = getContentResolver();
+        final ParallelRasterLoader loader = new ParallelRasterLoader(sources.size(), index -> {
+            Uri uri = sources.get(index);
+            Bitmap bitmap = ImageProcessor.decodeSampled(resolver, uri, profile.widthPx);
+            if (TallImageEncoder.needsStreaming(bitmap.getWidth(), bitmap.getHeight(), profile)) {
+                // Too long to hold in a batch; it can still be printed on its own.
+                Log.w("ManualModeActivity", "Skipping long image in batch: " + uri);
+                bitmap.recycle();
+                return null;
+            }
+            Bitmap bw = processor.process(bitmap, profile);
+            if (bw != bitmap) bitmap.recycle();
+            MonoRaster raster = MonoRaster.of(bw);
+            bw.recycle();
+            return raster;
+        });
+        batchLoader = loader;
+        updateStatus("Preparing " + sources.size() + " images...");
+        new Thread(() -> {
+            int queued = 0;
+            try {
+                MonoRaster raster;
+                while ((raster = loader.next()) != null) {
+                    final MonoRaster r = raster;
+                    String label = "Batch " + (loader.lastIndex() + 1) + "/" + sources.size();
+                    PrintSpool.PayloadWriter writer = out -> PhomemoEscPosEncoder.encodeImage(
+                            out, r.data, r.width, r.height, profile, quality);
+                    if (mirror) {
+                        printQueue.enqueueMirrored(label, copies, writer);
+                    } else {
+                        printQueue.enqueue(label, copies, writer);
+                    }
+                    queued++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                Log.e("ManualModeActivity", "Couldn't spool batch image", e);
+                runOnUiThread(() -> updateStatus("Couldn't spool job"));
+            }
+            boolean cancelled = loader.isClosed();
+            loader.close();
+            if (batchLoader == loader) batchLoader = null;
+            int skipped = sources.size() - queued;
+            if (skipped > 0 && !cancelled) {
+                runOnUiThread(() -> Toast.makeText(app, skipped + " images couldn't be printed",
+                        Toast.LENGTH_LONG).show());
+            }
+        }, "batch-print").start();
+    }
+
+    private void cancelBatch() {
+        ParallelRasterLoader loader = batchLoader;
+        batchLoader = null;
+        if (loader != null) loader.close();
+    }
+
+    private void onPrintJobChanged(PrintJob job) {
+        int queued = 0;
+        for (PrintJob j : printQueue.snapshot()) {
+            if (j.getState() == PrintJob.State.QUEUED) queued++;
+        }
+        String queuedSuffix = queued > 0 ? ", " + queued + " queued" : "";
+
+        switch (job.getState()) {
+            case QUEUED:
+                // A started job that was put back in line carries the reason it's waiting.
+                if (job.getError() != null) {
+                    updateStatus(job.getError() + queuedSuffix);
+                    break;
+                }
+                updateStatus(printerPool.isAnyConnected()
+                        ? "Queued" + queuedSuffix
+                        : "Queued, waiting for printer" + queuedSuffix);
+                break;
+            case PRINTING:
+                int active = printQueue.getActivePrinterCount();
+                if (active > 1) {
+                    updateStatus(String.format(java.util.Locale.US, "Printing on %d printers (%.1f KB/s total)%s",
+                            active, printQueue.getBytesPerSecond() / 1024.0, queuedSuffix));
+                    break;
+                }
+                String copyInfo = job.copies > 1
+                        ? " copy " + Math.min(job.getCopiesDone() + 1, job.copies) + "/" + job.copies
+                        : "";
+                updateStatus(String.format(java.util.Locale.US, "Printing%s %d%% (%.1f KB/s)%s",
+                        copyInfo, job.getProgressPercent(), job.getBytesPerSecond() / 1024.0, queuedSuffix));
+                break;
+            case DONE:
+                updateStatus("Image sent" + queuedSuffix);
+                break;
+            case CANCELLED:
+                updateStatus("Print cancelled" + queuedSuffix);
+                break;
+            case FAILED:
+                updateStatus(job.getError() + " - print stopped" + queuedSuffix);
+                break;
+        }
+        btnCancelPrint.setEnabled(!printQueue.isIdle());
+    }
+
     private void processCurrentImageAsync() {
         if (originalBitmap == null) return; // guard
         btnPrint.setEnabled(false);
         final int generation = ++processingGeneration;
         updateStatus("Processing...");
         final Bitmap source = originalBitmap;
+        final PrinterProfile profile = activeProfile;
+        final ImageProcessor processor = currentProcessor();
         new Thread(() -> {
-            Bitmap processed = simpleProcessBitmap(source);
+            Bitmap processed = processor.process(source, profile);
             Bitmap preview = buildPreviewBitmap(processed);
             runOnUiThread(() -> {
                 if (generation != processingGeneration) {
@@ -690,136 +955,6 @@ public class ManualModeActivity extends AppCompatActivity {
         }).start();
     }
 
-    private Bitmap simpleProcessBitmap(Bitmap original) {
-        // Scale to printer width if needed
-        int width = original.getWidth();
-        int height = original.getHeight();
-        if (width > PRINTER_MAX_WIDTH_PX) {
-            float ratio = (float) PRINTER_MAX_WIDTH_PX / width;
-            width = PRINTER_MAX_WIDTH_PX;
-            height = Math.round(height * ratio);
-            original = Bitmap.createScaledBitmap(original, width, height, true);
-        }
-        // Pad to multiple of 8
-        int paddedWidth = (width + 7) / 8 * 8;
-        if (paddedWidth != width) {
-            Bitmap padded = Bitmap.createBitmap(paddedWidth, height, Bitmap.Config.ARGB_8888);
-            for (int y = 0; y < height; y++) for (int x = 0; x < paddedWidth; x++) padded.setPixel(x, y, (x < width) ? original.getPixel(x, y) : Color.WHITE);
-            original = padded; width = paddedWidth;
-        }
-
-        // Build luminance array
-        double[][] lum = new double[height][width];
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int c = original.getPixel(x, y);
-                double L = 0.299 * Color.red(c) + 0.587 * Color.green(c) + 0.114 * Color.blue(c);
-                double normalized = L / 255.0;
-                double adjusted = Math.pow(normalized, 1.0 / currentGamma);
-                lum[y][x] = adjusted * 255.0;
-            }
-        }
-
-        // Unsharp mask: sharpen edges so they survive dithering.
-        // Subtracts a 3x3 box blur from the original and adds the difference scaled by strength.
-        if (currentSharpen) {
-            double strength = 0.5;
-            double[][] sharpened = new double[height][width];
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    double sum = 0;
-                    int count = 0;
-                    for (int dy = -1; dy <= 1; dy++) {
-                        for (int dx = -1; dx <= 1; dx++) {
-                            int ny = y + dy, nx = x + dx;
-                            if (ny >= 0 && ny < height && nx >= 0 && nx < width) {
-                                sum += lum[ny][nx];
-                                count++;
-                            }
-                        }
-                    }
-                    double blur = sum / count;
-                    double detail = lum[y][x] - blur;
-                    sharpened[y][x] = Math.max(0, Math.min(255, lum[y][x] + detail * strength));
-                }
-            }
-            lum = sharpened;
-        }
-
-        Bitmap bw = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        if (currentDitherMode == DITHER_FLOYD_STEINBERG) {
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    double oldPixel = lum[y][x];
-                    double newPixel = oldPixel < currentThreshold ? 0 : 255;
-                    double error = oldPixel - newPixel;
-                    boolean isBlack = (newPixel == 0);
-                    if (currentInvert) isBlack = !isBlack;
-                    bw.setPixel(x, y, isBlack ? Color.BLACK : Color.WHITE);
-                    if (x + 1 < width) lum[y][x + 1] += error * 7 / 16.0;
-                    if (y + 1 < height) {
-                        if (x > 0) lum[y + 1][x - 1] += error * 3 / 16.0;
-                        lum[y + 1][x] += error * 5 / 16.0;
-                        if (x + 1 < width) lum[y + 1][x + 1] += error * 1 / 16.0;
-                    }
-                }
-            }
-        } else if (currentDitherMode == DITHER_ORDERED_8x8) {
-            final int[][] bayer8 = {
-                    {0,32,8,40,2,34,10,42},
-                    {48,16,56,24,50,18,58,26},
-                    {12,44,4,36,14,46,6,38},
-                    {60,28,52,20,62,30,54,22},
-                    {3,35,11,43,1,33,9,41},
-                    {51,19,59,27,49,17,57,25},
-                    {15,47,7,39,13,45,5,37},
-                    {63,31,55,23,61,29,53,21}
-            }; // values 0..63
-            // Precompute offset for global threshold influence (center around 128)
-            double offset = 128 - currentThreshold; // positive means make image darker
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    int m = bayer8[y & 7][x & 7];
-                    double orderedThreshold = ( (m + 0.5) * 4 ); // 0..~255
-                    double lumAdj = Math.max(0, Math.min(255, lum[y][x] + offset));
-                    boolean isBlack = lumAdj < orderedThreshold;
-                    if (currentInvert) isBlack = !isBlack;
-                    bw.setPixel(x, y, isBlack ? Color.BLACK : Color.WHITE);
-                }
-            }
-        } else if (currentDitherMode == DITHER_ATKINSON) {
-            // Atkinson: diffuses 6/8 of error to 6 neighbors (loses 1/4 of error).
-            // Produces cleaner whites and darker blacks — ideal for thermal printers.
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    double oldPixel = lum[y][x];
-                    double newPixel = oldPixel < currentThreshold ? 0 : 255;
-                    double err = (oldPixel - newPixel) / 8.0;
-                    boolean isBlack = (newPixel == 0);
-                    if (currentInvert) isBlack = !isBlack;
-                    bw.setPixel(x, y, isBlack ? Color.BLACK : Color.WHITE);
-                    if (x + 1 < width) lum[y][x + 1] += err;
-                    if (x + 2 < width) lum[y][x + 2] += err;
-                    if (y + 1 < height) {
-                        if (x > 0) { lum[y + 1][x - 1] += err; }
-                        lum[y + 1][x] += err;
-                        if (x + 1 < width) { lum[y + 1][x + 1] += err; }
-                    }
-                    if (y + 2 < height) { lum[y + 2][x] += err; }
-                }
-            }
-        } else { // DITHER_NONE
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    boolean isBlack = lum[y][x] < currentThreshold;
-                    if (currentInvert) isBlack = !isBlack;
-                    bw.setPixel(x, y, isBlack ? Color.BLACK : Color.WHITE);
-                }
-            }
-        }
-        return bw;
-    }
-
     // Reintroduce preview upscaling helper lost during refactor
     private Bitmap buildPreviewBitmap(Bitmap processed) {
         if (processed == null) return null;
@@ -839,8 +974,11 @@ public class ManualModeActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         cancelScheduledReprocess();
+        if (isFinishing()) cancelBatch();
         unregisterReceiver(bluetoothStateReceiver);
-        if (connectionManager != null) connectionManager.closeConnection();
+        // The app-wide queue keeps printing; only stop listening to it.
+        if (printQueue != null) printQueue.removeListener(printQueueListener);
+        if (printerPool != null) printerPool.removeStatusListener(printerStatusListener);
     }
 
     private void scheduleLiveReprocess() {
@@ -866,32 +1004,20 @@ public class ManualModeActivity extends AppCompatActivity {
             }
         });
 
-        btnPrint.setOnClickListener(v -> {
-            // Debounce by disabling the button for a fixed time window.
-            long now = android.os.SystemClock.uptimeMillis();
-            if (now < sendDisabledUntilUptimeMs) return;
-
-            // Start debounce window immediately so the UI becomes disabled.
-            sendDisabledUntilUptimeMs = now + SEND_DEBOUNCE_MS;
-            refreshSendAvailability();
-
-            // Re-evaluate after the debounce window (only re-enables if still eligible).
-            btnPrint.removeCallbacks(reEnableSendAfterDebounce);
-            btnPrint.postDelayed(reEnableSendAfterDebounce, SEND_DEBOUNCE_MS);
-
-            sendCurrentImage();
+        // Every tap queues another job; the queue prints them back to back.
+        btnPrint.setOnClickListener(v -> sendCurrentImage());
+        btnCancelPrint.setOnClickListener(v -> {
+            cancelBatch();
+            printQueue.cancelAll();
         });
     }
 
-    private final Runnable reEnableSendAfterDebounce = this::refreshSendAvailability;
-
     private void refreshSendAvailability() {
         boolean hasImage = processedBitmap != null;
-        boolean isConnected = (connectionManager != null && connectionManager.isConnected());
-        boolean debounceActive = android.os.SystemClock.uptimeMillis() < sendDisabledUntilUptimeMs;
+        boolean isConnected = (printerPool != null && printerPool.isAnyConnected());
 
         if (btnPrint != null) {
-            btnPrint.setEnabled(hasImage && isConnected && !debounceActive);
+            btnPrint.setEnabled(hasImage && isConnected);
         }
     }
 }
@@ -15,13 +15,21 @@ import androidx.core.view.WindowInsetsCompat;
 
 import com.example.storyprinter.openai.ModelPreferences;
 import com.example.storyprinter.openai.OpenAiKeyStore;
+import com.example.storyprinter.print.PrintPreferences;
+import com.example.storyprinter.print.PrintQuality;
+import com.example.storyprinter.print.PrinterProfile;
+import com.example.storyprinter.print.PrinterProfiles;
+import com.example.storyprinter.print.TextStyle;
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+import com.google.android.material.materialswitch.MaterialSwitch;
 import com.google.android.material.snackbar.Snackbar;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
 
+import java.util.List;
+
 public class SettingsActivity extends AppCompatActivity {
 
     private TextInputLayout tilApiKey;
@@ -83,6 +91,69 @@ public class SettingsActivity extends AppCompatActivity {
         }
 
         setupModelDropdowns();
+        setupPrintingSettings();
+    }
+
+    private void setupPrintingSettings() {
+        PrintQuality[] qualities = PrintQuality.values();
+        String[] labels = new String[qualities.length];
+        for (int i = 0; i < qualities.length; i++) labels[i] = qualities[i].label;
+
+        AutoCompleteTextView actvQuality = findViewById(R.id.actvPrintQuality);
+        if (actvQuality != null) {
+            ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
+                    android.R.layout.simple_dropdown_item_1line, labels);
+            actvQuality.setAdapter(adapter);
+            actvQuality.setText(PrintPreferences.getQuality(this).label, false);
+            actvQuality.setOnItemClickListener((parent, view, position, id) ->
+                    PrintPreferences.setQuality(this, qualities[position]));
+        }
+
+        // Printer model: automatic detection first, then every known profile.
+        List<PrinterProfile> profiles = PrinterProfiles.all();
+        String[] modelLabels = new String[profiles.size() + 1];
+        modelLabels[0] = getString(R.string.settings_printer_model_auto);
+        for (int i = 0; i < profiles.size(); i++) modelLabels[i + 1] = profiles.get(i).displayName;
+
+        AutoCompleteTextView actvModel = findViewById(R.id.actvPrinterModel);
+        if (actvModel != null) {
+            ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
+                    android.R.layout.simple_dropdown_item_1line, modelLabels);
+            actvModel.setAdapter(adapter);
+            PrinterProfile override = PrintPreferences.getPrinterModelOverride(this);
+            actvModel.setText(override != null ? override.displayName : modelLabels[0], false);
+            actvModel.setOnItemClickListener((parent, view, position, id) ->
+                    PrintPreferences.setPrinterModelOverride(this, position == 0 ? null : profiles.get(position - 1)));
+        }
+
+        // Story text size and weight
+        String[] sizeLabels = {"Normal", "Large", "Extra large"};
+        AutoCompleteTextView actvTextSize = findViewById(R.id.actvTextSize);
+        MaterialSwitch switchBold = findViewById(R.id.switchTextBold);
+        TextStyle style = PrintPreferences.getTextStyle(this);
+        if (actvTextSize != null) {
+            ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
+                    android.R.layout.simple_dropdown_item_1line, sizeLabels);
+            actvTextSize.setAdapter(adapter);
+            actvTextSize.setText(sizeLabels[style.scale - TextStyle.MIN_SCALE], false);
+            actvTextSize.setOnItemClickListener((parent, view, position, id) ->
+                    PrintPreferences.setTextStyle(this, new TextStyle(position + TextStyle.MIN_SCALE,
+                            PrintPreferences.getTextStyle(this).bold)));
+        }
+        if (switchBold != null) {
+            switchBold.setChecked(style.bold);
+            switchBold.setOnCheckedChangeListener((button, checked) ->
+                    PrintPreferences.setTextStyle(this, new TextStyle(PrintPreferences.getTextStyle(this).scale, checked)));
+        }
+
+        ImageButton btnInfoQuality = findViewById(R.id.btnInfoPrintQuality);
+        if (btnInfoQuality != null) {
+            btnInfoQuality.setOnClickListener(v -> new MaterialAlertDialogBuilder(this)
+                    .setTitle(R.string.settings_info_print_quality_title)
+                    .setMessage(R.string.settings_info_print_quality_message)
+                    .setPositiveButton(android.R.string.ok, null)
+                    .show());
+        }
     }
 
     private void setupModelDropdowns() {
@@ -100,6 +171,18 @@ public class SettingsActivity extends AppCompatActivity {
                     ModelPreferences.setTextModel(this, textModels[position]));
         }
 
+        // Image backend dropdown (indexes are the ModelPreferences.IMAGE_BACKEND_* values)
+        String[] backendLabels = {"Orchestration model (Responses API)", "Rendering model only (Images API)"};
+        AutoCompleteTextView actvBackend = findViewById(R.id.actvImageBackend);
+        if (actvBackend != null) {
+            ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
+                    android.R.layout.simple_dropdown_item_1line, backendLabels);
+            actvBackend.setAdapter(adapter);
+            actvBackend.setText(backendLabels[ModelPreferences.getImageBackend(this)], false);
+            actvBackend.setOnItemClickListener((parent, view, position, id) ->
+                    ModelPreferences.setImageBackend(this, position));
+        }
+
         // Image orchestration model dropdown
         AutoCompleteTextView actvOrch = findViewById(R.id.actvImageOrchModel);
         if (actvOrch != null) {
@@ -122,6 +205,36 @@ public class SettingsActivity extends AppCompatActivity {
                     ModelPreferences.setImageToolModel(this, imageRenderModels[position]));
         }
 
+        // Backup for slow images: off, or after one of a few latency budgets
+        int[] hedgeSeconds = {0, 20, 30, 45};
+        String[] hedgeLabels = {"Off", "After 20 s", "After 30 s", "After 45 s"};
+        AutoCompleteTextView actvHedge = findViewById(R.id.actvImageHedge);
+        if (actvHedge != null) {
+            ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
+                    android.R.layout.simple_dropdown_item_1line, hedgeLabels);
+            actvHedge.setAdapter(adapter);
+            int current = ModelPreferences.getImageHedgeSeconds(this);
+            String label = current > 0 ? "After " + current + " s" : hedgeLabels[0];
+            actvHedge.setText(label, false);
+            actvHedge.setOnItemClickListener((parent, view, position, id) ->
+                    ModelPreferences.setImageHedgeSeconds(this, hedgeSeconds[position]));
+        }
+
+        // Backup rendering model: the regular one first, then every rendering model
+        String[] hedgeModels = new String[imageRenderModels.length + 1];
+        hedgeModels[0] = getString(R.string.settings_image_hedge_same_model);
+        System.arraycopy(imageRenderModels, 0, hedgeModels, 1, imageRenderModels.length);
+        AutoCompleteTextView actvHedgeModel = findViewById(R.id.actvImageHedgeModel);
+        if (actvHedgeModel != null) {
+            ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
+                    android.R.layout.simple_dropdown_item_1line, hedgeModels);
+            actvHedgeModel.setAdapter(adapter);
+            actvHedgeModel.setText(ModelPreferences.hasImageHedgeModel(this)
+                    ? ModelPreferences.getImageHedgeModel(this) : hedgeModels[0], false);
+            actvHedgeModel.setOnItemClickListener((parent, view, position, id) ->
+                    ModelPreferences.setImageHedgeModel(this, position == 0 ? "" : hedgeModels[position]));
+        }
+
         // Info buttons
         ImageButton btnInfoText = findViewById(R.id.btnInfoTextModel);
         if (btnInfoText != null) {
@@ -132,6 +245,15 @@ public class SettingsActivity extends AppCompatActivity {
                     .show());
         }
 
+        ImageButton btnInfoBackend = findViewById(R.id.btnInfoImageBackend);
+        if (btnInfoBackend != null) {
+            btnInfoBackend.setOnClickListener(v -> new MaterialAlertDialogBuilder(this)
+                    .setTitle(R.string.settings_info_image_backend_title)
+                    .setMessage(R.string.settings_info_image_backend_message)
+                    .setPositiveButton(android.R.string.ok, null)
+                    .show());
+        }
+
         ImageButton btnInfoOrch = findViewById(R.id.btnInfoImageOrchModel);
         if (btnInfoOrch != null) {
             btnInfoOrch.setOnClickListener(v -> new MaterialAlertDialogBuilder(this)
@@ -149,6 +271,15 @@ public class SettingsActivity extends AppCompatActivity {
                     .setPositiveButton(android.R.string.ok, null)
                     .show());
         }
+
+        ImageButton btnInfoHedge = findViewById(R.id.btnInfoImageHedge);
+        if (btnInfoHedge != null) {
+            btnInfoHedge.setOnClickListener(v -> new MaterialAlertDialogBuilder(this)
+                    .setTitle(R.string.settings_info_image_hedge_title)
+                    .setMessage(R.string.settings_info_image_hedge_message)
+                    .setPositiveButton(android.R.string.ok, null)
+                    .show());
+        }
     }
 }
 
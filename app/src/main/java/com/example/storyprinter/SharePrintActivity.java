@@ -0,0 +1,181 @@
+package com.example.storyprinter;
+
+import android.Manifest;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
+
+import com.example.storyprinter.bluetooth.PrinterPool;
+import com.example.storyprinter.print.ImageProcessor;
+import com.example.storyprinter.print.MonoRaster;
+import com.example.storyprinter.print.PhomemoEscPosEncoder;
+import com.example.storyprinter.print.PrintJob;
+import com.example.storyprinter.print.PrintMetrics;
+import com.example.storyprinter.print.PrintPreferences;
+import com.example.storyprinter.print.PrintQuality;
+import com.example.storyprinter.print.PrintQueue;
+import com.example.storyprinter.print.PrintSpool;
+import com.example.storyprinter.print.PrinterProfile;
+import com.example.storyprinter.print.TallImageEncoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One-tap "share to print": prints an image shared from another app on the last used printer
+ * with the settings saved in Manual mode, without showing any screen.
+ *
+ * The printer connects while the image is decoded and processed; the time from the share to the
+ * job being sent is recorded with {@link PrintMetrics}. If there is no printer to use yet, the
+ * image opens in Manual mode instead.
+ */
+public class SharePrintActivity extends AppCompatActivity {
+
+    private static final String TAG = "SharePrintActivity";
+
+    // A job still waiting after this long (printer off, out of paper) isn't a time-to-paper sample.
+    private static final long WATCH_TIMEOUT_MS = 10 * 60_000L;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        final long sharedAt = SystemClock.elapsedRealtime();
+
+        Intent intent = getIntent();
+        Uri uri = intent != null && Intent.ACTION_SEND.equals(intent.getAction())
+                ? intent.getParcelableExtra(Intent.EXTRA_STREAM)
+                : null;
+        if (uri == null) {
+            finish();
+            return;
+        }
+
+        StoryPrinterApp app = StoryPrinterApp.get(this);
+        BluetoothDevice device = lastPrinter(app);
+        if (device == null) {
+            openInManualMode(uri);
+            return;
+        }
+
+        Toast.makeText(this, R.string.share_print_started, Toast.LENGTH_SHORT).show();
+        final PrinterProfile profile = app.profileForDeviceName(device.getName());
+        final ImageProcessor processor = ImageProcessor.fromPreferences(this);
+        final PrintQuality quality = PrintPreferences.getQuality(this);
+
+        // Connecting takes a second or two; do it while the image is being processed.
+        new Thread(() -> {
+            PrinterPool.Printer printer = app.connectPrinter(device);
+            if (printer == null) {
+                runOnUiThread(() -> Toast.makeText(app, R.string.share_print_connect_failed, Toast.LENGTH_LONG).show());
+            }
+        }, "share-print-connect").start();
+
+        new Thread(() -> {
+            try {
+                PrintJob job = enqueue(app.getPrintQueue(), uri, processor, profile, quality);
+                watchUntilPrinted(app, job, sharedAt);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Couldn't print shared image", e);
+                runOnUiThread(() -> Toast.makeText(app, R.string.share_print_failed, Toast.LENGTH_LONG).show());
+            }
+            // The read grant for the shared image ends with this activity, so only finish once
+            // the job is safely in the spool.
+            runOnUiThread(this::finish);
+        }, "share-print-process").start();
+    }
+
+    /** The printer connected most recently, if it can be used right now without asking anything. */
+    private BluetoothDevice lastPrinter(StoryPrinterApp app) {
+        String address = app.getLastPrinterAddress();
+        BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        if (address == null || adapter == null || !adapter.isEnabled()) return null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                && ContextCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT)
+                != PackageManager.PERMISSION_GRANTED) {
+            return null;
+        }
+        return adapter.getRemoteDevice(address);
+    }
+
+    /** Decodes no larger than the paper needs, or in strips for very long images. */
+    private PrintJob enqueue(PrintQueue queue, Uri uri, ImageProcessor processor, PrinterProfile profile,
+                             PrintQuality quality) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream is = getContentResolver().openInputStream(uri)) {
+            if (is == null) throw new IOException("Cannot open image");
+            BitmapFactory.decodeStream(is, null, options);
+        }
+
+        if (TallImageEncoder.needsStreaming(options.outWidth, options.outHeight, profile)) {
+            return queue.enqueue("Shared image", 1, out -> {
+                try (InputStream is = getContentResolver().openInputStream(uri)) {
+                    if (is == null) throw new IOException("Cannot open image");
+                    BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(is, false);
+                    try {
+                        TallImageEncoder.encode(out, decoder, processor, profile, quality);
+                    } finally {
+                        decoder.recycle();
+                    }
+                }
+            });
+        }
+
+        Bitmap bitmap = ImageProcessor.decodeSampled(getContentResolver(), uri, profile.widthPx);
+        MonoRaster raster = MonoRaster.of(processor.process(bitmap, profile));
+        PrintSpool.PayloadWriter writer = out -> PhomemoEscPosEncoder.encodeImage(
+                out, raster.data, raster.width, raster.height, profile, quality);
+        return queue.enqueue("Shared image", 1, writer);
+    }
+
+    /** Records time to paper once {@code job} is completely sent, unless that takes too long. */
+    private static void watchUntilPrinted(StoryPrinterApp app, PrintJob job, long sharedAt) {
+        PrintQueue queue = app.getPrintQueue();
+        PrintQueue.Listener[] self = new PrintQueue.Listener[1];
+        AtomicBoolean finished = new AtomicBoolean();
+        self[0] = changed -> {
+            if (changed.id != job.id) return;
+            PrintJob.State state = changed.getState();
+            if (state != PrintJob.State.DONE && state != PrintJob.State.FAILED
+                    && state != PrintJob.State.CANCELLED) {
+                return;
+            }
+            if (!finished.compareAndSet(false, true)) return;
+            queue.removeListener(self[0]);
+            if (state == PrintJob.State.DONE) {
+                PrintMetrics.recordTimeToPaper(app, SystemClock.elapsedRealtime() - sharedAt);
+            }
+        };
+        queue.addListener(self[0]);
+        // In case it finished before the listener was in place.
+        self[0].onJobChanged(job);
+        new Handler(Looper.getMainLooper()).postDelayed(() -> {
+            if (finished.compareAndSet(false, true)) queue.removeListener(self[0]);
+        }, WATCH_TIMEOUT_MS);
+    }
+
+    private void openInManualMode(Uri uri) {
+        Toast.makeText(this, R.string.share_print_no_printer, Toast.LENGTH_LONG).show();
+        Intent i = new Intent(this, ManualModeActivity.class);
+        i.putExtra(ManualModeActivity.EXTRA_IMAGE_URI, uri.toString());
+        i.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        startActivity(i);
+        finish();
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.storyprinter;
 
 import android.Manifest;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Intent;
@@ -13,9 +15,10 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.provider.MediaStore;
 import android.text.TextUtils;
-import android.util.Base64;
+import android.util.Log;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.View;
@@ -42,14 +45,26 @@ import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 import androidx.core.widget.NestedScrollView;
 
+import com.example.storyprinter.bluetooth.PrinterPool;
 import com.example.storyprinter.openai.ModelPreferences;
+import com.example.storyprinter.openai.InputImage;
 import com.example.storyprinter.openai.OpenAiClient;
 import com.example.storyprinter.openai.OpenAiKeyStore;
+import com.example.storyprinter.print.ImageProcessor;
+import com.example.storyprinter.print.MonoRaster;
+import com.example.storyprinter.print.PhomemoEscPosEncoder;
+import com.example.storyprinter.print.PrintPreferences;
+import com.example.storyprinter.print.PrintQuality;
+import com.example.storyprinter.print.PrintQueue;
+import com.example.storyprinter.print.PrinterProfile;
+import com.example.storyprinter.print.TextStyle;
+import com.example.storyprinter.story.StoryMetrics;
 import com.example.storyprinter.story.StorySession;
 import com.google.android.material.chip.Chip;
 import com.google.android.material.floatingactionbutton.ExtendedFloatingActionButton;
 import com.google.android.material.textfield.TextInputLayout;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -57,18 +72,25 @@ import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
-import okhttp3.OkHttpClient;
 
 public class StoryModeActivity extends AppCompatActivity {
 
     private static final double TEMPERATURE = 1.1; // relatively high for imagination
+    private static final int PARTIAL_IMAGES = 2; // previews streamed before each final image
 
     private String textModel;
     private String imageModel;
     private String imageToolModel;
+    private String imageHedgeModel;
+    private long imageHedgeAfterMs;
+    private boolean directImages;
 
     private volatile boolean isLoading = false;
 
@@ -86,10 +108,14 @@ public class StoryModeActivity extends AppCompatActivity {
 
     private final ExecutorService io = Executors.newSingleThreadExecutor();
     private final ExecutorService diskIo = Executors.newSingleThreadExecutor();
+    // Dithers and queues auto-printed pages in page order, off the generation thread.
+    private final ExecutorService printPrep = Executors.newSingleThreadExecutor();
     private final Handler main = new Handler(Looper.getMainLooper());
 
     private OpenAiClient openAi;
     private OpenAiClient openAiImages;
+    // The page being generated, so its requests can be abandoned when the story is cleared.
+    private volatile Generation generation;
 
     private String seedPrompt = null;
 
@@ -116,6 +142,7 @@ public class StoryModeActivity extends AppCompatActivity {
     private ExtendedFloatingActionButton fabGoToBottom;
 
     private Chip chipSwipeNext;
+    private Chip chipAutoPrint;
 
 
     // Bottom swipe-to-next (press + drag) state
@@ -226,28 +253,35 @@ public class StoryModeActivity extends AppCompatActivity {
         btnNext = findViewById(R.id.btnNext);
         btnClear = findViewById(R.id.btnClear);
 
+        chipAutoPrint = findViewById(R.id.chipAutoPrint);
+        if (chipAutoPrint != null) {
+            chipAutoPrint.setChecked(PrintPreferences.isStoryAutoPrint(this));
+            chipAutoPrint.setOnCheckedChangeListener((button, checked) -> {
+                PrintPreferences.setStoryAutoPrint(this, checked);
+                if (checked) connectLastPrinterIfNeeded();
+            });
+            if (chipAutoPrint.isChecked()) connectLastPrinterIfNeeded();
+        }
+
         // tvOutput/progress were removed from the layout; keep these as null.
         tvOutput = null;
         progress = null;
         pagesContainer = findViewById(R.id.pagesContainer);
 
-        // Text calls: default timeouts.
-        OkHttpClient textHttp = new OkHttpClient();
-        // Image calls can take longer: bump call/read/write timeouts.
-        OkHttpClient imageHttp = new OkHttpClient.Builder()
-                .callTimeout(java.time.Duration.ofSeconds(120))
-                .connectTimeout(java.time.Duration.ofSeconds(30))
-                .readTimeout(java.time.Duration.ofSeconds(120))
-                .writeTimeout(java.time.Duration.ofSeconds(120))
-                .build();
-
+        // The HTTP clients are app-wide, so connections outlive this screen.
+        StoryPrinterApp app = StoryPrinterApp.get(this);
         String apiKey = OpenAiKeyStore.getEffectiveApiKey(this);
-        openAi = new OpenAiClient(textHttp, apiKey);
-        openAiImages = new OpenAiClient(imageHttp, apiKey);
+        openAi = new OpenAiClient(app.getTextHttpClient(), apiKey);
+        openAiImages = new OpenAiClient(app.getImageHttpClient(), apiKey);
+        // Idle connections are dropped after a few minutes; reopen one while the user types.
+        app.preconnectApi();
 
         textModel = ModelPreferences.getTextModel(this);
         imageModel = ModelPreferences.getImageOrchestrationModel(this);
         imageToolModel = ModelPreferences.getImageToolModel(this);
+        imageHedgeModel = ModelPreferences.getImageHedgeModel(this);
+        imageHedgeAfterMs = ModelPreferences.getImageHedgeSeconds(this) * 1000L;
+        directImages = ModelPreferences.getImageBackend(this) == ModelPreferences.IMAGE_BACKEND_IMAGES_API;
 
         // If the key is missing, prevent actions that will fail anyway.
         if (apiKey.trim().isEmpty()) {
@@ -302,9 +336,11 @@ public class StoryModeActivity extends AppCompatActivity {
                     if (uri == null) return;
                     io.execute(() -> {
                         try {
-                            ReferenceImage ref = loadReferenceImageBase64(uri);
-                            session.setReferenceImage(ref.base64Jpeg, ref.thumbnail);
+                            ReferenceImage ref = loadReferenceImage(uri);
+                            deleteUploadedFile(session.setReferenceImage(ref.jpeg, ref.thumbnail));
                             main.post(() -> renderReferenceImageFromSession());
+                            // Upload it now, ahead of the first request that uses it.
+                            referenceInputImage();
                         } catch (Exception e) {
                             String msg = e.getMessage() != null ? e.getMessage() : e.toString();
                             main.post(() -> Toast.makeText(this, "Couldn't load image: " + msg, Toast.LENGTH_LONG).show());
@@ -339,7 +375,7 @@ public class StoryModeActivity extends AppCompatActivity {
 
             btnRemoveReference.setOnClickListener(v -> {
                 main.removeCallbacks(hideReferenceRemoveRunnable);
-                session.clearReferenceImage();
+                deleteUploadedFile(session.clearReferenceImage());
                 renderReferenceImageFromSession();
             });
         }
@@ -412,11 +448,24 @@ public class StoryModeActivity extends AppCompatActivity {
         super.onDestroy();
         // Don't shut down io here (story generation should survive navigation).
         // Also don't aggressively shut down diskIo here for the same reason.
+        // Leaving Story mode for good makes the page in flight pointless, though.
+        if (isFinishing()) {
+            cancelGeneration();
+            // The story stays in memory, but its upload shouldn't linger in the account's file
+            // storage; it is uploaded again if the story continues.
+            deleteUploadedFile(session.takeReferenceImageFileId());
+        }
+    }
+
+    private void cancelGeneration() {
+        Generation g = generation;
+        if (g != null) g.cancel();
     }
 
     private void clearStory() {
-        // If a request is in-flight, shutting down the executor would be too destructive; just clear UI + session.
-        session.clear();
+        // Abandon the page in flight (its requests are cancelled, not just ignored), then clear UI + session.
+        cancelGeneration();
+        deleteUploadedFile(session.clear());
         seedPrompt = null;
 
         // Clear the textbox as well.
@@ -511,7 +560,10 @@ public class StoryModeActivity extends AppCompatActivity {
     }
 
     private void queryAndAppendAssistantMessage(String steerInstructionOrNull) {
+        final Generation current = new Generation();
+        generation = current;
         io.execute(() -> {
+            if (current.isCancelled()) return;
             final int pageNumberToRender = session.getNextPageNumber();
 
             final LinearLayout[] pageBlockHolder = new LinearLayout[1];
@@ -521,6 +573,7 @@ public class StoryModeActivity extends AppCompatActivity {
                     || (steerInstructionOrNull != null && !steerInstructionOrNull.trim().isEmpty());
 
             main.post(() -> {
+                if (current.isCancelled()) return;
                 LinearLayout pageBlock = createPageBlock(pageNumberToRender);
                 pagesContainer.addView(pageBlock);
                 setPageImageLoading(pageBlock, true);
@@ -562,15 +615,23 @@ public class StoryModeActivity extends AppCompatActivity {
                 }
 
                 // If we're applying a user-provided prompt (seed/update), attach the optional reference image.
-                String referenceBase64 = isSeedOrUpdate ? session.getReferenceImageBase64() : null;
+                InputImage reference = isSeedOrUpdate ? referenceInputImage() : null;
 
-                OpenAiClient.ResponseResult result = openAi.createResponse(
+                // Show the description as it streams in. Only the latest text matters, so at most
+                // one update is waiting on the main thread at a time.
+                final AtomicReference<String> streamedText = new AtomicReference<>();
+                OpenAiClient.ResponseResult result = current.await(openAi.createResponseStreamingAsync(
                         textModel,
                         TEMPERATURE,
                         input,
-                        referenceBase64,
-                        previousTextResponseId
-                );
+                        reference,
+                        previousTextResponseId,
+                        (delta, textSoFar) -> {
+                            if (streamedText.getAndSet(textSoFar) == null) {
+                                main.post(() -> setPageText(pageBlockHolder[0], streamedText.getAndSet(null)));
+                            }
+                        }
+                ));
 
                 if (result.responseId != null && !result.responseId.trim().isEmpty()) {
                     session.setPreviousTextResponseId(result.responseId);
@@ -593,23 +654,43 @@ public class StoryModeActivity extends AppCompatActivity {
                 // Image generation:
                 // - chain only to previous IMAGE response id
                 // - include user-provided reference image ONLY when the user provided a prompt (seed/update)
-                referenceBase64 = isSeedOrUpdate ? session.getReferenceImageBase64() : null;
+                // - the Images API backend skips the orchestration model (and has nothing to chain)
+                OpenAiClient.ImageAttempt attempt;
+                if (directImages) {
+                    byte[] referenceJpeg = isSeedOrUpdate ? session.getReferenceImageJpeg() : null;
+                    attempt = (toolModel, listener) -> openAiImages.generateImageDirectAsync(
+                            toolModel, assistant, referenceJpeg, PARTIAL_IMAGES, listener);
+                } else {
+                    InputImage imageReference = isSeedOrUpdate ? referenceInputImage() : null;
+                    String previousImageResponseId = session.getPreviousImageResponseId();
+                    attempt = (toolModel, listener) -> openAiImages.generateImageStreamingAsync(
+                            imageModel, toolModel, assistant, imageReference, previousImageResponseId,
+                            PARTIAL_IMAGES, listener);
+                }
 
-                OpenAiClient.ImageResult imageResult = openAiImages.generateImage(
-                        imageModel,
+                // Partial frames replace the spinner-only wait with a picture that sharpens as it
+                // is generated; the final image below replaces them.
+                // With a latency budget set, a slow image is raced against a second request.
+                long imageStartMs = SystemClock.elapsedRealtime();
+                OpenAiClient.ImageResult imageResult = current.await(OpenAiClient.generateImageHedgedAsync(
                         imageToolModel,
-                        assistant,
-                        referenceBase64,
-                        session.getPreviousImageResponseId()
-                );
+                        imageHedgeModel,
+                        imageHedgeAfterMs,
+                        (index, partial) -> main.post(() -> setPageImage(pageBlockHolder[0], partial, pageNumberToRender)),
+                        attempt
+                ));
+                StoryMetrics.recordPageImage(this, directImages ? "images_api" : "responses",
+                        pageNumberToRender, SystemClock.elapsedRealtime() - imageStartMs);
 
                 if (imageResult.responseId != null && !imageResult.responseId.trim().isEmpty()) {
                     session.setPreviousImageResponseId(imageResult.responseId);
                 }
 
-                Bitmap bitmap = decodeBase64ToBitmap(imageResult.imageBase64);
+                Bitmap bitmap = imageResult.image;
                 if (p != null) {
                     p.image = bitmap;
+                    // Encode (and maybe print) while the next page is being generated.
+                    if (bitmap != null) preparePrintJob(p, PrintPreferences.isStoryAutoPrint(this));
                 }
 
                 main.post(() -> {
@@ -631,6 +712,9 @@ public class StoryModeActivity extends AppCompatActivity {
                         storyScroll.post(this::updateScrollFabEnabledState);
                     }
                 });
+            } catch (CancellationException e) {
+                // The story was cleared or the screen closed; whatever replaced it owns the UI now.
+                Log.i("StoryModeActivity", "Page " + pageNumberToRender + " generation cancelled");
             } catch (IOException e) {
                 main.post(() -> {
                     LinearLayout pageBlock = pageBlockHolder[0];
@@ -649,6 +733,38 @@ public class StoryModeActivity extends AppCompatActivity {
         });
     }
 
+    /**
+     * The session's reference image for a request, uploaded on first use so later requests
+     * send only its file id. Falls back to sending it inline if the upload fails. Runs on io.
+     */
+    private InputImage referenceInputImage() {
+        byte[] jpeg = session.getReferenceImageJpeg();
+        if (jpeg == null || jpeg.length == 0) return null;
+        String fileId = session.getReferenceImageFileId();
+        if (fileId == null) {
+            try {
+                fileId = openAi.uploadImage(jpeg, "reference.jpg");
+                if (!session.setReferenceImageFileId(jpeg, fileId)) {
+                    // Replaced or removed while uploading; nothing will refer to this upload.
+                    deleteUploadedFile(fileId);
+                    return InputImage.ofJpeg(jpeg);
+                }
+            } catch (IOException e) {
+                Log.w("StoryModeActivity", "Couldn't upload reference image, sending it inline", e);
+                return InputImage.ofJpeg(jpeg);
+            }
+        }
+        return InputImage.ofFileId(fileId);
+    }
+
+    /** Deletes a reference image upload from the account's file storage, in the background. */
+    private void deleteUploadedFile(String fileId) {
+        if (fileId == null) return;
+        openAi.deleteFileAsync(fileId).whenComplete((ignored, error) -> {
+            if (error != null) Log.w("StoryModeActivity", "Couldn't delete uploaded file " + fileId, error);
+        });
+    }
+
     private void renderReferenceImageFromSession() {
         if (cardReferenceImage == null || ivReferenceThumb == null || btnRemoveReference == null) return;
 
@@ -656,7 +772,8 @@ public class StoryModeActivity extends AppCompatActivity {
         main.removeCallbacks(hideReferenceRemoveRunnable);
 
         Bitmap thumb = session.getReferenceImageThumbnail();
-        boolean has = (thumb != null) && (session.getReferenceImageBase64() != null) && (!session.getReferenceImageBase64().trim().isEmpty());
+        byte[] jpeg = session.getReferenceImageJpeg();
+        boolean has = (thumb != null) && (jpeg != null) && (jpeg.length > 0);
 
         if (!has) {
             cardReferenceImage.setVisibility(View.GONE);
@@ -671,17 +788,58 @@ public class StoryModeActivity extends AppCompatActivity {
         btnRemoveReference.setVisibility(View.GONE);
     }
 
+    /**
+     * The requests behind one page. Cancelling it cancels the request in flight and makes any
+     * later {@link #await} fail, so a cleared story gets no more text, images or session updates.
+     */
+    private static final class Generation {
+        private volatile boolean cancelled;
+        private volatile CompletableFuture<?> inFlight;
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        void cancel() {
+            cancelled = true;
+            CompletableFuture<?> f = inFlight;
+            if (f != null) f.cancel(true);
+        }
+
+        /** Waits for {@code future}; throws {@link CancellationException} once cancelled. */
+        <T> T await(CompletableFuture<T> future) throws IOException {
+            inFlight = future;
+            if (cancelled) future.cancel(true);
+            try {
+                T result = future.get();
+                if (cancelled) throw new CancellationException();
+                return result;
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IOException(cause);
+            } finally {
+                inFlight = null;
+            }
+        }
+    }
+
     private static final class ReferenceImage {
-        final String base64Jpeg;
+        final byte[] jpeg;
         final Bitmap thumbnail;
 
-        ReferenceImage(String base64Jpeg, Bitmap thumbnail) {
-            this.base64Jpeg = base64Jpeg;
+        ReferenceImage(byte[] jpeg, Bitmap thumbnail) {
+            this.jpeg = jpeg;
             this.thumbnail = thumbnail;
         }
     }
 
-    private ReferenceImage loadReferenceImageBase64(Uri uri) throws IOException {
+    private ReferenceImage loadReferenceImage(Uri uri) throws IOException {
         ContentResolver resolver = getContentResolver();
 
         // Decode with sampling to avoid large allocations.
@@ -714,15 +872,14 @@ public class StoryModeActivity extends AppCompatActivity {
         }
         if (decoded == null) throw new IOException("Couldn't decode image");
 
-        // Encode to JPEG for the data-url (we always send data:image/jpeg;base64,...)
+        // Keep it as JPEG; the client base64-encodes it into the request as it is sent.
         java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
         decoded.compress(Bitmap.CompressFormat.JPEG, 90, baos);
-        String base64 = Base64.encodeToString(baos.toByteArray(), Base64.NO_WRAP);
 
         // Thumbnail for UI.
         Bitmap thumb = Bitmap.createScaledBitmap(decoded, 120, (int) (120f * decoded.getHeight() / Math.max(1, decoded.getWidth())), true);
 
-        return new ReferenceImage(base64, thumb);
+        return new ReferenceImage(baos.toByteArray(), thumb);
     }
 
     private LinearLayout createPageBlock(int pageNumber) {
@@ -922,7 +1079,15 @@ public class StoryModeActivity extends AppCompatActivity {
                 Toast.makeText(this, "No image to print yet.", Toast.LENGTH_SHORT).show();
                 return;
             }
-            openManualModeWithImage(bmp, pageNumber);
+            // With a printer connected, print the page as is; otherwise connect in Manual mode.
+            StorySession.Page page = findPage(pageNumber);
+            if (page != null && page.image != null
+                    && StoryPrinterApp.get(this).getPrinterPool().isAnyConnected()) {
+                preparePrintJob(page, true);
+                Toast.makeText(this, "Page " + pageNumber + " queued for printing", Toast.LENGTH_SHORT).show();
+            } else {
+                openManualModeWithImage(bmp, pageNumber);
+            }
             showImageOverlay(outer, false);
         });
 
@@ -1011,7 +1176,17 @@ public class StoryModeActivity extends AppCompatActivity {
         });
     }
 
+    private StorySession.Page findPage(int pageNumber) {
+        for (StorySession.Page p : session.snapshotPages()) {
+            if (p.pageNumber == pageNumber) return p;
+        }
+        return null;
+    }
+
     private void openManualModeWithImage(Bitmap bitmap, int pageNumber) {
+        StorySession.Page page = findPage(pageNumber);
+        final String text = page != null ? page.text : null;
+
         // Navigation should happen immediately; file writing can happen in the background.
         diskIo.execute(() -> {
             try {
@@ -1021,6 +1196,7 @@ public class StoryModeActivity extends AppCompatActivity {
                 main.post(() -> {
                     Intent i = new Intent(this, ManualModeActivity.class);
                     i.putExtra(ManualModeActivity.EXTRA_IMAGE_URI, uri.toString());
+                    if (text != null) i.putExtra(ManualModeActivity.EXTRA_PAGE_TEXT, text);
                     i.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
                     startActivity(i);
                 });
@@ -1031,6 +1207,80 @@ public class StoryModeActivity extends AppCompatActivity {
         });
     }
 
+    /**
+     * Encodes the page in the background so printing it later costs nothing, and with
+     * {@code print} also queues it on the app-wide print queue. A queued page waits there if no
+     * printer is connected yet.
+     */
+    private void preparePrintJob(StorySession.Page page, boolean print) {
+        printPrep.execute(() -> {
+            byte[] job;
+            try {
+                job = printJobFor(page);
+            } catch (IOException e) {
+                Log.e("StoryModeActivity", "Error encoding page " + page.pageNumber, e);
+                if (print) {
+                    main.post(() -> Toast.makeText(this, "Couldn't print page " + page.pageNumber, Toast.LENGTH_LONG).show());
+                }
+                return;
+            }
+            if (!print) return;
+            PrintQueue queue = StoryPrinterApp.get(this).getPrintQueue();
+            queue.enqueue("Page " + page.pageNumber, job, 1);
+        });
+    }
+
+    /**
+     * The page's print-ready job for the current settings: dithered with what was saved in Manual
+     * mode, text included. Reuses the cached job unless a setting or the printer model changed;
+     * a job that failed to encode is never cached. Call off the main thread.
+     */
+    private byte[] printJobFor(StorySession.Page page) throws IOException {
+        ImageProcessor processor = ImageProcessor.fromPreferences(this);
+        PrinterProfile profile = StoryPrinterApp.get(this).getActiveProfile();
+        PrintQuality quality = PrintPreferences.getQuality(this);
+        TextStyle textStyle = PrintPreferences.getTextStyle(this);
+        String key = processor.cacheKey() + "|" + profile.id + "|" + quality.name()
+                + "|" + textStyle.scale + (textStyle.bold ? "b" : "");
+
+        byte[] job = page.getPrintJob(key);
+        if (job != null) return job;
+
+        MonoRaster raster = MonoRaster.of(processor.process(page.image, profile));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PhomemoEscPosEncoder.encodePage(out, raster, page.text, textStyle, profile, quality);
+        job = out.toByteArray();
+        page.setPrintJob(key, job);
+        return job;
+    }
+
+    /** Reconnects the printer last used in Manual mode so auto-printed pages don't just queue up. */
+    private void connectLastPrinterIfNeeded() {
+        StoryPrinterApp app = StoryPrinterApp.get(this);
+        if (app.getPrinterPool().isAnyConnected()) return;
+
+        String address = app.getLastPrinterAddress();
+        BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        boolean canConnect = Build.VERSION.SDK_INT < Build.VERSION_CODES.S
+                || ContextCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED;
+        if (address == null || adapter == null || !adapter.isEnabled() || !canConnect) {
+            Toast.makeText(this, R.string.story_auto_print_no_printer, Toast.LENGTH_LONG).show();
+            return;
+        }
+
+        BluetoothDevice device = adapter.getRemoteDevice(address);
+        new Thread(() -> {
+            PrinterPool.Printer printer = app.connectPrinter(device);
+            main.post(() -> {
+                if (printer != null) {
+                    Toast.makeText(this, "Auto-print: connected to " + printer.displayName(), Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(this, R.string.story_auto_print_no_printer, Toast.LENGTH_LONG).show();
+                }
+            });
+        }).start();
+    }
+
     private Uri writeBitmapToCacheAndGetUri(Bitmap bitmap, int pageNumber) throws IOException {
         File dir = new File(getCacheDir(), TEMP_PRINT_DIR);
         if (!dir.exists() && !dir.mkdirs()) {
@@ -1100,16 +1350,6 @@ public class StoryModeActivity extends AppCompatActivity {
     }
 
 
-    private static Bitmap decodeBase64ToBitmap(String base64) {
-        if (base64 == null || base64.trim().isEmpty()) return null;
-        try {
-            byte[] bytes = Base64.decode(base64, Base64.DEFAULT);
-            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-        } catch (IllegalArgumentException e) {
-            return null;
-        }
-    }
-
     private void updateScrollFabEnabledState() {
         if (storyScroll == null) return;
 
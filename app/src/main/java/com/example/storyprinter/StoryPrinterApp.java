@@ -1,13 +1,166 @@
 package com.example.storyprinter;
 
 import android.app.Application;
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
 
+import com.example.storyprinter.bluetooth.PrinterPool;
+import com.example.storyprinter.openai.OpenAiClient;
+import com.example.storyprinter.openai.OpenAiKeyStore;
+import com.example.storyprinter.openai.RetryInterceptor;
+import com.example.storyprinter.print.ImageProcessor;
+import com.example.storyprinter.print.PrintPreferences;
+import com.example.storyprinter.print.PrintQueue;
+import com.example.storyprinter.print.PrintSpool;
+import com.example.storyprinter.print.PrinterProfile;
+import com.example.storyprinter.print.PrinterProfiles;
 import com.google.android.material.color.DynamicColors;
 
+import java.io.File;
+import java.util.Arrays;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
 public class StoryPrinterApp extends Application {
+
+    private static final String KEY_LAST_DEVICE_ADDRESS = "last_device_address"; // MAC of last connected printer
+
+    // Every OpenAiClient call, blocking or not, is enqueued on the shared dispatcher, whose
+    // default of 5 calls per host would make a text request wait behind image streams. A page
+    // can have a text stream, two hedged image streams, a reference upload and a pre-connect in
+    // flight, and a page from a closed screen may still be finishing, hence 16 (api.openai.com
+    // is the only host).
+    private static final int MAX_REQUESTS_PER_HOST = 16;
+    private static final int MAX_REQUESTS = 32;
+
+    // Printers and their queue live as long as the process, so Manual and Story mode share
+    // connections and a job keeps printing after the screen that queued it is closed.
+    private PrinterPool printerPool;
+    private PrintQueue printQueue;
+
+    // One HTTP stack for the process. Clients derived from it share its connection pool and
+    // dispatcher, so a connection (and TLS session) set up once serves every request, and over
+    // HTTP/2 text and image calls run side by side on it.
+    private OkHttpClient textHttp;
+    private OkHttpClient imageHttp;
+
     @Override
     public void onCreate() {
         super.onCreate();
         DynamicColors.applyToActivitiesIfAvailable(this);
+        preconnectApi();
+    }
+
+    public static StoryPrinterApp get(Context context) {
+        return (StoryPrinterApp) context.getApplicationContext();
+    }
+
+    public synchronized PrinterPool getPrinterPool() {
+        if (printerPool == null) printerPool = new PrinterPool(this);
+        return printerPool;
+    }
+
+    /** Client for text calls: default timeouts, rate limited and retried (see {@link RetryInterceptor}). */
+    public synchronized OkHttpClient getTextHttpClient() {
+        if (textHttp == null) {
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+            dispatcher.setMaxRequests(MAX_REQUESTS);
+            textHttp = new OkHttpClient.Builder()
+                    .dispatcher(dispatcher)
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .addInterceptor(new RetryInterceptor())
+                    .build();
+        }
+        return textHttp;
+    }
+
+    /**
+     * Client for image calls, which can take longer: bumped call/read/write timeouts. Shares the
+     * text client's {@link RetryInterceptor}, so both draw from the same per-model budgets.
+     */
+    public synchronized OkHttpClient getImageHttpClient() {
+        if (imageHttp == null) {
+            imageHttp = getTextHttpClient().newBuilder()
+                    .callTimeout(java.time.Duration.ofSeconds(120))
+                    .connectTimeout(java.time.Duration.ofSeconds(30))
+                    .readTimeout(java.time.Duration.ofSeconds(120))
+                    .writeTimeout(java.time.Duration.ofSeconds(120))
+                    .build();
+        }
+        return imageHttp;
+    }
+
+    /**
+     * Opens a connection to the OpenAI API in the background if none is open, so the next
+     * request doesn't wait for DNS and the TLS handshake. Does nothing without an API key.
+     */
+    public void preconnectApi() {
+        if (OpenAiKeyStore.getEffectiveApiKey(this).isEmpty()) return;
+        OkHttpClient http = getTextHttpClient();
+        if (http.connectionPool().connectionCount() > 0) return;
+        OpenAiClient.preconnect(http);
+    }
+
+    public synchronized PrintQueue getPrintQueue() {
+        if (printQueue == null) {
+            printQueue = new PrintQueue(getPrinterPool(), new PrintSpool(new File(getFilesDir(), "print_spool")));
+        }
+        return printQueue;
+    }
+
+    /**
+     * Connects {@code device} into the pool and tunes the link for its model. A printer that is
+     * already connected is left alone, so a job it is printing isn't cut off. Blocks; call off
+     * the main thread. Returns null if the connection failed.
+     */
+    public PrinterPool.Printer connectPrinter(BluetoothDevice device) {
+        PrinterPool.Printer existing = getPrinterPool().get(device.getAddress());
+        if (existing != null && existing.isConnected()) return existing;
+        PrinterPool.Printer printer = getPrinterPool().connect(device);
+        if (printer == null) return null;
+        printer.connection.setChunkSize(profileOf(printer).chunkSize);
+        setLastPrinterAddress(device.getAddress());
+        getPrintQueue().resume();
+        return printer;
+    }
+
+    public PrinterProfile profileOf(PrinterPool.Printer printer) {
+        return profileForDeviceName(printer.name);
+    }
+
+    /** The model set in Settings, else the one recognised from the Bluetooth name, else the default. */
+    public PrinterProfile profileForDeviceName(String deviceName) {
+        PrinterProfile override = PrintPreferences.getPrinterModelOverride(this);
+        if (override != null) return override;
+        PrinterProfile profile = PrinterProfiles.forDeviceName(deviceName);
+        return profile != null ? profile : PrinterProfiles.DEFAULT;
+    }
+
+    /**
+     * The profile images are processed and encoded for: the narrowest connected printer, so a job
+     * fits every printer it may be balanced or mirrored to.
+     */
+    public PrinterProfile getActiveProfile() {
+        PrinterProfile narrowest = null;
+        for (PrinterPool.Printer p : getPrinterPool().getConnectedPrinters()) {
+            PrinterProfile profile = profileOf(p);
+            if (narrowest == null || profile.widthPx < narrowest.widthPx) narrowest = profile;
+        }
+        return narrowest != null ? narrowest : PrinterProfiles.DEFAULT;
+    }
+
+    /** Address of the printer connected most recently, for auto-reconnect; null if none yet. */
+    public String getLastPrinterAddress() {
+        return getSharedPreferences(ImageProcessor.PREFS_NAME, MODE_PRIVATE)
+                .getString(KEY_LAST_DEVICE_ADDRESS, null);
+    }
+
+    private void setLastPrinterAddress(String address) {
+        getSharedPreferences(ImageProcessor.PREFS_NAME, MODE_PRIVATE).edit()
+                .putString(KEY_LAST_DEVICE_ADDRESS, address)
+                .apply();
     }
 }
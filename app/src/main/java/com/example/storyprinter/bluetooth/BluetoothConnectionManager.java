@@ -6,29 +6,83 @@ import android.bluetooth.BluetoothSocket;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class BluetoothConnectionManager {
     private static final String TAG = "BluetoothConnectionManager";
     private final BluetoothAdapter bluetoothAdapter;
     private BluetoothSocket bluetoothSocket;
     private OutputStream outputStream;
+    private InputStream inputStream;
 
     // UUID for the SPP (Serial Port Profile)
     private static final UUID MY_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
 
+    // Jobs are written in chunks so a status change can stop them between two writes.
+    private static final int DEFAULT_CHUNK_SIZE = 1024;
+    private static final long STATUS_QUERY_TIMEOUT_MS = 800L;
+    private static final long OVERHEAT_MAX_WAIT_MS = 60_000L;
+    private static final long OVERHEAT_POLL_MS = 1_000L;
+
+    // DLE EOT 4 (paper sensor), DLE EOT 2 (offline cause), DLE EOT 3 (error cause).
+    // The order must match the expectReply() calls in queryStatus().
+    private static final byte[] STATUS_QUERY = {
+            0x10, 0x04, 0x04,
+            0x10, 0x04, 0x02,
+            0x10, 0x04, 0x03
+    };
+
+    /** Notified on the reader thread whenever the printer reports a different state. */
+    public interface StatusListener {
+        void onStatusChanged(PrinterStatus status);
+    }
+
+    /** Progress of a single {@link #sendJob} call, reported on the sending thread after each chunk. */
+    public interface TransferListener {
+        void onProgress(int bytesSent, int totalBytes);
+    }
+
+    private final Object writeLock = new Object();
+    private final Object statusLock = new Object();
+    private final PrinterStatusParser statusParser = new PrinterStatusParser(); // guarded by statusLock
+    private PrinterStatus status = PrinterStatus.UNKNOWN; // guarded by statusLock
+    private final CopyOnWriteArrayList<StatusListener> statusListeners = new CopyOnWriteArrayList<>();
+    private volatile int chunkSize = DEFAULT_CHUNK_SIZE;
+
     public BluetoothConnectionManager(Context context) {
-        bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+        this(BluetoothAdapter.getDefaultAdapter());
+    }
+
+    protected BluetoothConnectionManager(BluetoothAdapter bluetoothAdapter) {
+        this.bluetoothAdapter = bluetoothAdapter;
     }
 
     public boolean isBluetoothEnabled() {
         return bluetoothAdapter != null && bluetoothAdapter.isEnabled();
     }
 
+    /** Bytes per write while sending a job; set from the connected model's profile. */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(64, chunkSize);
+    }
+
+    public void addStatusListener(StatusListener listener) {
+        statusListeners.addIfAbsent(listener);
+    }
+
+    public void removeStatusListener(StatusListener listener) {
+        statusListeners.remove(listener);
+    }
+
     public void pairDevice(BluetoothDevice device) {
         // Permission guard for API 31+; caller should have checked but we fail safe here.
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
@@ -53,6 +107,12 @@ public class BluetoothConnectionManager {
             bluetoothSocket = device.createRfcommSocketToServiceRecord(MY_UUID);
             bluetoothSocket.connect();
             outputStream = bluetoothSocket.getOutputStream();
+            inputStream = bluetoothSocket.getInputStream();
+            synchronized (statusLock) {
+                statusParser.clearPending();
+                status = PrinterStatus.UNKNOWN;
+            }
+            startStatusReader(inputStream);
             Log.d(TAG, "Connected to device: " + device.getName());
         } catch (IOException e) {
             Log.e(TAG, "Could not connect to device", e);
@@ -67,11 +127,107 @@ public class BluetoothConnectionManager {
         return bluetoothSocket != null && bluetoothSocket.isConnected();
     }
 
+    /** Last state reported by the printer, without asking it again. */
+    public PrinterStatus getLastStatus() {
+        synchronized (statusLock) {
+            return status;
+        }
+    }
+
+    /**
+     * Asks the printer for its paper, cover and error state with DLE EOT real-time queries and waits
+     * briefly for the replies. Printers that don't answer leave the last known status in place.
+     *
+     * Must not be called while a job is being written: the query bytes would end up inside raster data.
+     */
+    public PrinterStatus queryStatus() throws IOException {
+        synchronized (writeLock) {
+            OutputStream out = outputStream;
+            if (out == null) throw new IOException("Not connected");
+
+            synchronized (statusLock) {
+                statusParser.clearPending();
+                statusParser.expectReply(PrinterStatusParser.QUERY_PAPER_SENSOR);
+                statusParser.expectReply(PrinterStatusParser.QUERY_OFFLINE_CAUSE);
+                statusParser.expectReply(PrinterStatusParser.QUERY_ERROR_CAUSE);
+            }
+            out.write(STATUS_QUERY);
+            out.flush();
+
+            long deadline = SystemClock.uptimeMillis() + STATUS_QUERY_TIMEOUT_MS;
+            synchronized (statusLock) {
+                while (statusParser.pendingReplies() > 0) {
+                    long left = deadline - SystemClock.uptimeMillis();
+                    if (left <= 0) break;
+                    try {
+                        statusLock.wait(left);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for printer status");
+                    }
+                }
+                if (statusParser.pendingReplies() > 0) {
+                    Log.d(TAG, "Printer did not answer all status queries");
+                    statusParser.clearPending();
+                }
+                return status;
+            }
+        }
+    }
+
+    /**
+     * Sends a complete ESC/POS job. The printer is asked for its status first so we fail fast
+     * instead of streaming into a printer without paper; while the job runs, unsolicited status
+     * reports abort it (paper out, cover open) or pause it until the head has cooled down.
+     *
+     * @throws PrinterStatusException if the printer's state stopped the job.
+     */
+    public void sendJob(byte[] data) throws IOException {
+        sendJob(data, null);
+    }
+
+    /** Same as {@link #sendJob(byte[])}, reporting progress to {@code listener} (may be null). */
+    public void sendJob(byte[] data, TransferListener listener) throws IOException {
+        sendJob(ByteBuffer.wrap(data), listener);
+    }
+
+    /**
+     * Sends the remaining bytes of {@code data}, e.g. a memory-mapped spool file, without copying
+     * more than one chunk at a time onto the heap.
+     */
+    public void sendJob(ByteBuffer data, TransferListener listener) throws IOException {
+        synchronized (writeLock) {
+            OutputStream out = outputStream;
+            if (out == null) throw new IOException("Not connected");
+
+            awaitReadyBeforeJob();
+
+            int total = data.remaining();
+            int sent = 0;
+            int chunkLimit = chunkSize;
+            byte[] chunk = data.hasArray() ? null : new byte[Math.min(chunkLimit, Math.max(1, total))];
+            while (data.hasRemaining()) {
+                awaitReadyDuringJob();
+                int n = Math.min(chunkLimit, data.remaining());
+                if (chunk == null) {
+                    out.write(data.array(), data.arrayOffset() + data.position(), n);
+                    data.position(data.position() + n);
+                } else {
+                    data.get(chunk, 0, n);
+                    out.write(chunk, 0, n);
+                }
+                sent += n;
+                if (listener != null) listener.onProgress(sent, total);
+            }
+            out.flush();
+            Log.d(TAG, "Job sent (" + total + " bytes)");
+        }
+    }
+
     public void sendImage(byte[] imageData) {
         if (outputStream != null) {
             try {
-                outputStream.write(imageData);
-                outputStream.flush();
+                sendJob(imageData);
                 Log.d(TAG, "Image data sent");
             } catch (IOException e) {
                 Log.e(TAG, "Error sending image data", e);
@@ -81,11 +237,98 @@ public class BluetoothConnectionManager {
         }
     }
 
+    private void awaitReadyBeforeJob() throws IOException {
+        long deadline = SystemClock.uptimeMillis() + OVERHEAT_MAX_WAIT_MS;
+        PrinterStatus s = queryStatus();
+        while (true) {
+            if (s.isBlocking()) throw new PrinterStatusException("Printer not ready", s);
+            if (!s.overheated) return;
+            if (SystemClock.uptimeMillis() >= deadline) {
+                throw new PrinterStatusException("Printer did not cool down", s);
+            }
+            Log.w(TAG, "Printer overheated; waiting before starting the job");
+            try {
+                Thread.sleep(OVERHEAT_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for printer to cool down");
+            }
+            // Between jobs it's safe to ask again.
+            s = queryStatus();
+        }
+    }
+
+    private void awaitReadyDuringJob() throws IOException {
+        synchronized (statusLock) {
+            long deadline = 0L;
+            while (true) {
+                if (status.isBlocking()) throw new PrinterStatusException("Print aborted", status);
+                if (!status.overheated) return;
+
+                // Mid-job we can't query (the bytes would be taken as raster data), so wait for the
+                // printer to report on its own that it cooled down.
+                long now = SystemClock.uptimeMillis();
+                if (deadline == 0L) {
+                    deadline = now + OVERHEAT_MAX_WAIT_MS;
+                    Log.w(TAG, "Printer overheated; pausing job");
+                }
+                long left = deadline - now;
+                if (left <= 0) throw new PrinterStatusException("Printer did not cool down", status);
+                try {
+                    statusLock.wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for printer to cool down");
+                }
+            }
+        }
+    }
+
+    private void startStatusReader(InputStream in) {
+        Thread reader = new Thread(() -> {
+            byte[] buf = new byte[64];
+            try {
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    for (int i = 0; i < n; i++) {
+                        onStatusByte(buf[i]);
+                    }
+                }
+            } catch (IOException e) {
+                // Expected when the socket is closed.
+                Log.d(TAG, "Status reader stopped: " + e.getMessage());
+            }
+        }, "printer-status-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void onStatusByte(byte b) {
+        PrinterStatus updated;
+        boolean changed;
+        synchronized (statusLock) {
+            updated = statusParser.feed(b, status);
+            if (updated == null) return;
+            changed = !updated.sameFlags(status);
+            status = updated;
+            statusLock.notifyAll();
+        }
+        if (changed) {
+            Log.d(TAG, "Printer status: " + updated);
+            for (StatusListener listener : statusListeners) {
+                listener.onStatusChanged(updated);
+            }
+        }
+    }
+
     public void closeConnection() {
         try {
             if (outputStream != null) {
                 outputStream.close();
             }
+            if (inputStream != null) {
+                inputStream.close();
+            }
             if (bluetoothSocket != null) {
                 bluetoothSocket.close();
             }
@@ -93,7 +336,13 @@ public class BluetoothConnectionManager {
             Log.e(TAG, "Error closing connection", e);
         } finally {
             outputStream = null;
+            inputStream = null;
             bluetoothSocket = null;
+            synchronized (statusLock) {
+                statusParser.clearPending();
+                status = PrinterStatus.UNKNOWN;
+                statusLock.notifyAll();
+            }
         }
     }
-}
\ No newline at end of file
+}
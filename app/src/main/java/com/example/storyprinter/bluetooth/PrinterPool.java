@@ -0,0 +1,229 @@
+package com.example.storyprinter.bluetooth;
+
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
+
+import com.example.storyprinter.util.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Connections to several printers at once, one {@link BluetoothConnectionManager} (and socket)
+ * per device, keyed by Bluetooth address.
+ *
+ * A printer stays in the pool until {@link #disconnect(String)}, even if its link drops, so work
+ * meant for it can wait for a reconnect.
+ */
+public final class PrinterPool {
+
+    private static final String TAG = "PrinterPool";
+
+    /** Notified when printers are added to or removed from the pool, or one of them reconnects. */
+    public interface Listener {
+        void onPrintersChanged();
+    }
+
+    /** Status reports from any printer in the pool, on that printer's reader thread. */
+    public interface StatusListener {
+        void onStatusChanged(Printer printer, PrinterStatus status);
+    }
+
+    public static final class Printer {
+        public final String address;
+        public final String name;
+        public final BluetoothConnectionManager connection;
+        private final BluetoothConnectionManager.StatusListener forwarder;
+
+        Printer(String address, String name, BluetoothConnectionManager connection,
+                BluetoothConnectionManager.StatusListener forwarder) {
+            this.address = address;
+            this.name = name;
+            this.connection = connection;
+            this.forwarder = forwarder;
+        }
+
+        public boolean isConnected() {
+            return connection.isConnected();
+        }
+
+        /** Name for status lines, falling back to the address. */
+        public String displayName() {
+            return name != null && !name.isEmpty() ? name : address;
+        }
+    }
+
+    private final Context context;
+    private final Logger log;
+    private final Map<String, Printer> printers = new LinkedHashMap<>(); // guarded by this
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<StatusListener> statusListeners = new CopyOnWriteArrayList<>();
+
+    public PrinterPool(Context context) {
+        this(context.getApplicationContext(), Logger.ANDROID);
+    }
+
+    /** A pool whose printers are only {@link #add}ed, over connections made elsewhere. */
+    public PrinterPool(Logger log) {
+        this(null, log);
+    }
+
+    private PrinterPool(Context context, Logger log) {
+        this.context = context;
+        this.log = log;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void addStatusListener(StatusListener listener) {
+        statusListeners.addIfAbsent(listener);
+    }
+
+    public void removeStatusListener(StatusListener listener) {
+        statusListeners.remove(listener);
+    }
+
+    /**
+     * Connects to {@code device}, adding it to the pool or reconnecting it if it is already there.
+     * A printer that is still connected is returned as is, so a job it is printing isn't cut off.
+     * Blocks while the socket connects, so call off the main thread.
+     *
+     * @return the pool entry, or null if the connection failed (the pool is left unchanged).
+     */
+    public Printer connect(BluetoothDevice device) {
+        String address = device.getAddress();
+        Printer printer;
+        synchronized (this) {
+            printer = printers.get(address);
+        }
+        if (printer != null) {
+            boolean reconnected = false;
+            // One reconnect at a time: pairing again closes the socket another caller just opened.
+            synchronized (printer) {
+                if (!printer.isConnected()) {
+                    printer.connection.pairDevice(device);
+                    reconnected = printer.isConnected();
+                }
+            }
+            if (reconnected) {
+                log.d(TAG, "Reconnected printer " + address);
+                notifyChanged();
+            }
+            return printer.isConnected() ? printer : null;
+        }
+
+        printer = newPrinter(address, safeName(device), new BluetoothConnectionManager(context));
+        printer.connection.pairDevice(device);
+        if (!printer.isConnected()) {
+            close(printer);
+            return null;
+        }
+        printer = register(printer);
+        return printer.isConnected() ? printer : null;
+    }
+
+    /**
+     * Adds a printer reached over {@code connection}. If the pool already has a printer at
+     * {@code address}, that one is kept and returned, and {@code connection} is closed.
+     */
+    public Printer add(String address, String name, BluetoothConnectionManager connection) {
+        return register(newPrinter(address, name, connection));
+    }
+
+    private Printer newPrinter(String address, String name, BluetoothConnectionManager connection) {
+        Printer[] self = new Printer[1];
+        BluetoothConnectionManager.StatusListener forwarder = status -> {
+            for (StatusListener l : statusListeners) l.onStatusChanged(self[0], status);
+        };
+        self[0] = new Printer(address, name, connection, forwarder);
+        connection.addStatusListener(forwarder);
+        return self[0];
+    }
+
+    private Printer register(Printer printer) {
+        Printer existing;
+        synchronized (this) {
+            existing = printers.putIfAbsent(printer.address, printer);
+        }
+        if (existing != null) {
+            // Another caller connected the same printer meanwhile; keep theirs.
+            close(printer);
+            return existing;
+        }
+        log.d(TAG, "Added printer " + printer.address);
+        notifyChanged();
+        return printer;
+    }
+
+    /** Closes the connection to one printer and removes it from the pool. */
+    public void disconnect(String address) {
+        Printer printer;
+        synchronized (this) {
+            printer = printers.remove(address);
+        }
+        if (printer == null) return;
+        close(printer);
+        notifyChanged();
+    }
+
+    public void disconnectAll() {
+        List<Printer> removed;
+        synchronized (this) {
+            removed = new ArrayList<>(printers.values());
+            printers.clear();
+        }
+        if (removed.isEmpty()) return;
+        for (Printer p : removed) close(p);
+        notifyChanged();
+    }
+
+    public synchronized Printer get(String address) {
+        return printers.get(address);
+    }
+
+    /** Every printer in the pool, connected or not, in the order they were added. */
+    public synchronized List<Printer> getPrinters() {
+        return new ArrayList<>(printers.values());
+    }
+
+    public synchronized List<Printer> getConnectedPrinters() {
+        List<Printer> connected = new ArrayList<>();
+        for (Printer p : printers.values()) {
+            if (p.isConnected()) connected.add(p);
+        }
+        return connected;
+    }
+
+    public synchronized boolean isAnyConnected() {
+        for (Printer p : printers.values()) {
+            if (p.isConnected()) return true;
+        }
+        return false;
+    }
+
+    private void close(Printer printer) {
+        printer.connection.removeStatusListener(printer.forwarder);
+        printer.connection.closeConnection();
+    }
+
+    private void notifyChanged() {
+        for (Listener l : listeners) l.onPrintersChanged();
+    }
+
+    private static String safeName(BluetoothDevice device) {
+        try {
+            return device.getName();
+        } catch (SecurityException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.storyprinter.bluetooth;
+
+/**
+ * Immutable snapshot of what the printer last told us about itself.
+ *
+ * Filled from ESC/POS real-time status replies (DLE EOT n) and from the unsolicited
+ * notifications Phomemo firmware pushes over the same SPP channel.
+ */
+public final class PrinterStatus {
+
+    /** Nothing reported yet; treated as "probably fine" so silent printers keep working. */
+    public static final PrinterStatus UNKNOWN = new PrinterStatus(false, false, false, false, 0L);
+
+    public final boolean paperOut;
+    public final boolean coverOpen;
+    public final boolean overheated;
+    public final boolean error;
+    /** {@code SystemClock.uptimeMillis()} of the last report, 0 if the printer never answered. */
+    public final long reportedAtUptimeMs;
+
+    PrinterStatus(boolean paperOut, boolean coverOpen, boolean overheated, boolean error, long reportedAtUptimeMs) {
+        this.paperOut = paperOut;
+        this.coverOpen = coverOpen;
+        this.overheated = overheated;
+        this.error = error;
+        this.reportedAtUptimeMs = reportedAtUptimeMs;
+    }
+
+    public boolean isKnown() {
+        return reportedAtUptimeMs != 0L;
+    }
+
+    /** True when a job must be aborted (waiting will not fix it without the user). */
+    public boolean isBlocking() {
+        return paperOut || coverOpen || error;
+    }
+
+    PrinterStatus withPaperOut(boolean v, long nowUptimeMs) {
+        return new PrinterStatus(v, coverOpen, overheated, error, nowUptimeMs);
+    }
+
+    PrinterStatus withCoverOpen(boolean v, long nowUptimeMs) {
+        return new PrinterStatus(paperOut, v, overheated, error, nowUptimeMs);
+    }
+
+    PrinterStatus withOverheated(boolean v, long nowUptimeMs) {
+        return new PrinterStatus(paperOut, coverOpen, v, error, nowUptimeMs);
+    }
+
+    PrinterStatus withError(boolean v, long nowUptimeMs) {
+        return new PrinterStatus(paperOut, coverOpen, overheated, v, nowUptimeMs);
+    }
+
+    boolean sameFlags(PrinterStatus other) {
+        return other != null && paperOut == other.paperOut && coverOpen == other.coverOpen
+                && overheated == other.overheated && error == other.error;
+    }
+
+    /** Short human-readable summary for status lines. */
+    public String describe() {
+        if (paperOut) return "Out of paper";
+        if (coverOpen) return "Cover open";
+        if (overheated) return "Print head overheated";
+        if (error) return "Printer error";
+        return isKnown() ? "Ready" : "Unknown";
+    }
+
+    @Override
+    public String toString() {
+        return "PrinterStatus{paperOut=" + paperOut + ", coverOpen=" + coverOpen
+                + ", overheated=" + overheated + ", error=" + error + "}";
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.storyprinter.bluetooth;
+
+import java.io.IOException;
+
+/** Thrown when a print job is refused or aborted because of the printer's reported state. */
+public class PrinterStatusException extends IOException {
+    public final PrinterStatus status;
+
+    public PrinterStatusException(String message, PrinterStatus status) {
+        super(message + ": " + status.describe());
+        this.status = status;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.storyprinter.bluetooth;
+
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+import java.util.function.LongSupplier;
+
+/**
+ * Turns the printer's back-channel byte stream into {@link PrinterStatus} updates.
+ *
+ * Two kinds of traffic are understood:
+ * - Replies to DLE EOT n real-time queries: a single byte of the form 0xx1x010. Replies come back
+ *   in the order the queries were sent, so we keep a FIFO of outstanding query types.
+ * - Unsolicited Phomemo notifications: three bytes, 0x1A type value.
+ *
+ * Anything else is ignored. Not thread-safe; only the connection's reader thread feeds it.
+ */
+final class PrinterStatusParser {
+
+    static final int QUERY_PRINTER = 1;
+    static final int QUERY_OFFLINE_CAUSE = 2;
+    static final int QUERY_ERROR_CAUSE = 3;
+    static final int QUERY_PAPER_SENSOR = 4;
+
+    private static final int PHOMEMO_PREFIX = 0x1A;
+    // Notification types observed on T02/M02 firmware (type byte, then value byte).
+    private static final int PHOMEMO_HEAT = 0x03;   // 0xA9 overheated, 0xA8 normal
+    private static final int PHOMEMO_COVER = 0x05;  // 0x98 open, 0x99 closed
+    private static final int PHOMEMO_PAPER = 0x06;  // 0x88 no paper, 0x89 paper loaded
+
+    private final ArrayDeque<Integer> pendingQueries = new ArrayDeque<>();
+    private final LongSupplier uptimeClock;
+
+    // 0 = idle, 1 = saw 0x1A, 2 = saw 0x1A + type
+    private int vendorState = 0;
+    private int vendorType = 0;
+
+    PrinterStatusParser() {
+        this(SystemClock::uptimeMillis);
+    }
+
+    PrinterStatusParser(LongSupplier uptimeClock) {
+        this.uptimeClock = uptimeClock;
+    }
+
+    void expectReply(int queryType) {
+        pendingQueries.addLast(queryType);
+    }
+
+    int pendingReplies() {
+        return pendingQueries.size();
+    }
+
+    void clearPending() {
+        pendingQueries.clear();
+    }
+
+    /** Feeds one byte; returns the updated status, or null if this byte didn't change anything. */
+    PrinterStatus feed(int b, PrinterStatus current) {
+        b &= 0xFF;
+
+        if (vendorState == 1) {
+            vendorType = b;
+            vendorState = 2;
+            return null;
+        }
+        if (vendorState == 2) {
+            vendorState = 0;
+            return applyVendor(vendorType, b, current, uptimeClock.getAsLong());
+        }
+        // DLE EOT replies always have bits 1 and 4 set and bits 0 and 7 clear. 0x1A fits that
+        // pattern too, so an outstanding query wins over the vendor prefix.
+        if ((b & 0x93) == 0x12 && !pendingQueries.isEmpty()) {
+            return applyRealtime(pendingQueries.removeFirst(), b, current, uptimeClock.getAsLong());
+        }
+        if (b == PHOMEMO_PREFIX) {
+            vendorState = 1;
+        }
+        return null;
+    }
+
+    private static PrinterStatus applyRealtime(int query, int b, PrinterStatus current, long now) {
+        switch (query) {
+            case QUERY_OFFLINE_CAUSE:
+                // bit 2: cover open, bit 5: stopped on paper end, bit 6: error.
+                // Sent after the paper sensor query, so paper end only adds to that answer.
+                return current.withCoverOpen((b & 0x04) != 0, now)
+                        .withPaperOut(current.paperOut || (b & 0x20) != 0, now)
+                        .withError((b & 0x40) != 0, now);
+            case QUERY_ERROR_CAUSE:
+                // bit 5: unrecoverable error, bit 6: auto-recoverable (head temperature on thermal printers)
+                return current.withError(current.error || (b & 0x20) != 0, now)
+                        .withOverheated((b & 0x40) != 0, now);
+            case QUERY_PAPER_SENSOR:
+                // bits 5+6: paper end sensor
+                return current.withPaperOut((b & 0x60) != 0, now);
+            case QUERY_PRINTER:
+            default:
+                // Only confirms the printer is alive; bit 3 (offline) is covered by the other queries.
+                return current.withError(current.error, now);
+        }
+    }
+
+    private static PrinterStatus applyVendor(int type, int value, PrinterStatus current, long now) {
+        switch (type) {
+            case PHOMEMO_HEAT:
+                if (value == 0xA9) return current.withOverheated(true, now);
+                if (value == 0xA8) return current.withOverheated(false, now);
+                return null;
+            case PHOMEMO_COVER:
+                if (value == 0x98) return current.withCoverOpen(true, now);
+                if (value == 0x99) return current.withCoverOpen(false, now);
+                return null;
+            case PHOMEMO_PAPER:
+                if (value == 0x88) return current.withPaperOut(true, now);
+                if (value == 0x89) return current.withPaperOut(false, now);
+                return null;
+            default:
+                return null;
+        }
+    }
+}
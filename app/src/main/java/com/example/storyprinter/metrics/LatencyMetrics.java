@@ -0,0 +1,40 @@
+package com.example.storyprinter.metrics;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Running latency figures kept in one preferences file: for each key the last sample, the sample
+ * count and their total (so the average), stored as {@code <key>_last_ms}, {@code <key>_count} and
+ * {@code <key>_total_ms}. Each sample is also logged under {@code tag}.
+ */
+public final class LatencyMetrics {
+
+    private final String tag;
+    private final String prefsName;
+
+    public LatencyMetrics(@NonNull String tag, @NonNull String prefsName) {
+        this.tag = tag;
+        this.prefsName = prefsName;
+    }
+
+    /**
+     * Adds a sample under {@code key}. {@code details} is appended to the log line as is, e.g.
+     * {@code " page=3"}.
+     */
+    public synchronized void record(@NonNull Context context, @NonNull String key, long millis,
+                                    @NonNull String details) {
+        SharedPreferences sp = context.getSharedPreferences(prefsName, Context.MODE_PRIVATE);
+        long count = sp.getLong(key + "_count", 0) + 1;
+        long total = sp.getLong(key + "_total_ms", 0) + millis;
+        sp.edit()
+                .putLong(key + "_last_ms", millis)
+                .putLong(key + "_count", count)
+                .putLong(key + "_total_ms", total)
+                .apply();
+        Log.i(tag, key + "_ms=" + millis + details + " avg_ms=" + (total / count) + " n=" + count);
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.storyprinter.openai;
+
+import androidx.annotation.NonNull;
+
+/**
+ * An image attached to a request: either a file already uploaded with
+ * {@link OpenAiClient#uploadImage}, referenced by id, or JPEG bytes sent inline.
+ */
+public final class InputImage {
+    /** Set when the image was uploaded; {@link #jpeg} is null then. */
+    public final String fileId;
+    /** Set when the image is sent inline; {@link #fileId} is null then. */
+    public final byte[] jpeg;
+
+    private InputImage(String fileId, byte[] jpeg) {
+        this.fileId = fileId;
+        this.jpeg = jpeg;
+    }
+
+    @NonNull
+    public static InputImage ofFileId(@NonNull String fileId) {
+        return new InputImage(fileId, null);
+    }
+
+    @NonNull
+    public static InputImage ofJpeg(@NonNull byte[] jpeg) {
+        return new InputImage(null, jpeg);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.storyprinter.openai;
+
+import org.json.JSONObject;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * A JSON request body written straight to the connection. The JSON itself stays small: an
+ * attached image is left out of the tree as {@link #IMAGE_PLACEHOLDER} and base64-encoded into
+ * the stream as the body is written, so a large request never exists as one string.
+ */
+final class JsonBody extends RequestBody {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    /** Put this as the "image_url" value in the payload where the image belongs. */
+    static final String IMAGE_PLACEHOLDER = "reference-image";
+
+    private static final String IMAGE_FIELD = "\"image_url\":\"" + IMAGE_PLACEHOLDER + "\"";
+    private static final int LOG_EDGE_CHARS = 500;
+    private static final byte[] DATA_URL_PREFIX = "\"image_url\":\"data:image/jpeg;base64,".getBytes(StandardCharsets.UTF_8);
+
+    /** The payload's "model", or null; rate limits are per model (see {@link RetryInterceptor}). */
+    final String model;
+
+    private final byte[] head;
+    private final byte[] tail;
+    private final byte[] jpeg;
+
+    /** {@code image} may be null, or uploaded, when the payload has no placeholder. */
+    JsonBody(JSONObject payload, InputImage image) {
+        model = payload.optString("model", null);
+        byte[] jpeg = image != null ? image.jpeg : null;
+        String json = payload.toString();
+        int at = jpeg != null ? json.indexOf(IMAGE_FIELD) : -1;
+        if (at < 0) {
+            head = json.getBytes(StandardCharsets.UTF_8);
+            tail = new byte[0];
+            this.jpeg = null;
+        } else {
+            head = json.substring(0, at).getBytes(StandardCharsets.UTF_8);
+            tail = json.substring(at + IMAGE_FIELD.length() - 1).getBytes(StandardCharsets.UTF_8); // from the closing quote
+            this.jpeg = jpeg;
+        }
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public long contentLength() {
+        if (jpeg == null) return head.length;
+        return head.length + DATA_URL_PREFIX.length + 4L * ((jpeg.length + 2) / 3) + tail.length;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        sink.write(head);
+        if (jpeg != null) {
+            sink.write(DATA_URL_PREFIX);
+            // Closing the encoder writes its padding; the sink itself stays open.
+            OutputStream keepOpen = new FilterOutputStream(sink.outputStream()) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+            try (OutputStream encoder = Base64.getEncoder().wrap(keepOpen)) {
+                encoder.write(jpeg);
+            }
+            sink.write(tail);
+        }
+    }
+
+    /**
+     * The JSON for a debug log: the image is left as its size, and the text around it is cut to
+     * its first and last {@value #LOG_EDGE_CHARS} characters. Not valid JSON once cut.
+     */
+    String toLogString() {
+        return clip(new String(head, StandardCharsets.UTF_8))
+                + (jpeg != null ? "\"image_url\":\"<" + jpeg.length + "-byte jpeg>" : "")
+                + clip(new String(tail, StandardCharsets.UTF_8));
+    }
+
+    private static String clip(String s) {
+        if (s.length() <= 2 * LOG_EDGE_CHARS) return s;
+        return s.substring(0, LOG_EDGE_CHARS) + "...<" + (s.length() - 2 * LOG_EDGE_CHARS) + " chars>..."
+                + s.substring(s.length() - LOG_EDGE_CHARS);
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.storyprinter.openai;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pulls a few fields out of a JSON document as it streams in, without building the document or
+ * holding it as a string. Short values are collected by their dotted object path (array levels
+ * don't count, so "output.type" matches every element's type); one long base64 string value can
+ * be decoded straight from the stream instead.
+ *
+ * Used for image responses, whose multi-megabyte base64 image would otherwise be copied as a
+ * body string, a JSON tree, an extracted string and a decoded byte array.
+ */
+final class JsonStreamScanner {
+
+    /** Receives the decoded bytes of the base64 field; need not read them all. */
+    interface Base64Consumer {
+        void accept(InputStream decoded) throws IOException;
+    }
+
+    // Collected values are cut off after this many characters; they are ids, types and messages.
+    private static final int MAX_VALUE_CHARS = 4096;
+
+    private final InputStream in;
+    private final Set<String> paths;
+    private final String base64Key;
+    private final Base64Consumer consumer;
+    private final Map<String, String> values = new HashMap<>();
+    private boolean consumed;
+    private int peeked = -2; // -2: nothing peeked
+
+    private JsonStreamScanner(InputStream in, Set<String> paths, String base64Key, Base64Consumer consumer) {
+        this.in = in;
+        this.paths = paths;
+        this.base64Key = base64Key;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Reads one JSON value from {@code in}, returning the first value found at each of
+     * {@code paths} (as text), and hands the first string value of a {@code base64Key} field at
+     * any depth to {@code consumer} (pass null to not look for one).
+     */
+    static Map<String, String> scan(InputStream in, Set<String> paths, String base64Key, Base64Consumer consumer)
+            throws IOException {
+        JsonStreamScanner scanner = new JsonStreamScanner(in, paths, base64Key, consumer);
+        scanner.value("", null);
+        return scanner.values;
+    }
+
+    private void value(String path, String key) throws IOException {
+        int c = nextNonSpace();
+        if (c == '{') {
+            object(path);
+        } else if (c == '[') {
+            array(path, key);
+        } else if (c == '"') {
+            if (!consumed && key != null && key.equals(base64Key)) {
+                consumed = true;
+                StringStream raw = new StringStream();
+                consumer.accept(Base64.getMimeDecoder().wrap(raw));
+                raw.drain();
+            } else if (paths.contains(path)) {
+                collect(path, readString());
+            } else {
+                skipString();
+            }
+        } else if (c == -1) {
+            throw new EOFException("Truncated JSON");
+        } else {
+            StringBuilder scalar = new StringBuilder();
+            while (c != -1 && c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+                scalar.append((char) c);
+                c = read();
+            }
+            peeked = c;
+            if (paths.contains(path)) collect(path, scalar.toString());
+        }
+    }
+
+    private void object(String path) throws IOException {
+        while (true) {
+            int c = nextNonSpace();
+            if (c == '}') return;
+            if (c == ',') continue;
+            if (c != '"') throw new IOException("Malformed JSON: expected a field name");
+            String name = readString();
+            if (nextNonSpace() != ':') throw new IOException("Malformed JSON: expected ':' after \"" + name + "\"");
+            value(path.isEmpty() ? name : path + "." + name, name);
+        }
+    }
+
+    private void array(String path, String key) throws IOException {
+        while (true) {
+            int c = nextNonSpace();
+            if (c == ']') return;
+            if (c == ',') continue;
+            if (c == -1) throw new EOFException("Truncated JSON");
+            peeked = c;
+            value(path, key);
+        }
+    }
+
+    private void collect(String path, String value) {
+        if (!values.containsKey(path)) values.put(path, value);
+    }
+
+    /** Rest of a string whose opening quote was read, cut off at {@link #MAX_VALUE_CHARS}. */
+    private String readString() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        ByteArrayOutputStream utf8 = new ByteArrayOutputStream();
+        while (true) {
+            int c = read();
+            if (c == -1) throw new EOFException("Truncated JSON string");
+            if (c == '"') break;
+            if (c == '\\') {
+                int e = read();
+                char decoded;
+                switch (e) {
+                    case 'n': decoded = '\n'; break;
+                    case 't': decoded = '\t'; break;
+                    case 'r': decoded = '\r'; break;
+                    case 'b': decoded = '\b'; break;
+                    case 'f': decoded = '\f'; break;
+                    case 'u': decoded = (char) hex4(); break;
+                    case -1: throw new EOFException("Truncated JSON string");
+                    default: decoded = (char) e; // \" \\ \/
+                }
+                flush(utf8, sb);
+                if (sb.length() < MAX_VALUE_CHARS) sb.append(decoded);
+            } else if (sb.length() + utf8.size() < MAX_VALUE_CHARS) {
+                utf8.write(c);
+            }
+        }
+        flush(utf8, sb);
+        return sb.toString();
+    }
+
+    private static void flush(ByteArrayOutputStream utf8, StringBuilder sb) {
+        if (utf8.size() == 0) return;
+        sb.append(new String(utf8.toByteArray(), StandardCharsets.UTF_8));
+        utf8.reset();
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == -1) throw new EOFException("Truncated JSON string");
+            if (c == '"') return;
+            if (c == '\\') read();
+        }
+    }
+
+    private int hex4() throws IOException {
+        int v = 0;
+        for (int i = 0; i < 4; i++) {
+            int d = Character.digit(read(), 16);
+            if (d < 0) throw new IOException("Malformed JSON: bad \\u escape");
+            v = v * 16 + d;
+        }
+        return v;
+    }
+
+    private int nextNonSpace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != -1 && Character.isWhitespace(c));
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (peeked != -2) {
+            int c = peeked;
+            peeked = -2;
+            return c;
+        }
+        return in.read();
+    }
+
+    /** The raw characters of a string value, up to its closing quote; escapes are dropped. */
+    private final class StringStream extends InputStream {
+        private boolean ended;
+
+        @Override
+        public int read() throws IOException {
+            while (!ended) {
+                int c = JsonStreamScanner.this.read();
+                if (c == -1) throw new EOFException("Truncated JSON string");
+                if (c == '"') {
+                    ended = true;
+                    break;
+                }
+                if (c != '\\') return c;
+                // Base64 has no characters that need escaping except an optional "\/"; line
+                // breaks ("\n") and anything else escaped are not part of the data.
+                int e = JsonStreamScanner.this.read();
+                if (e == '/') return '/';
+                if (e == 'u') hex4();
+                if (e == -1) throw new EOFException("Truncated JSON string");
+            }
+            return -1;
+        }
+
+        void drain() throws IOException {
+            while (read() != -1) {
+                // skip what the consumer didn't need
+            }
+        }
+    }
+}
@@ -16,10 +16,19 @@ public final class ModelPreferences {
     private static final String KEY_TEXT_MODEL = "text_model";
     private static final String KEY_IMAGE_ORCHESTRATION_MODEL = "image_orchestration_model";
     private static final String KEY_IMAGE_TOOL_MODEL = "image_tool_model";
+    private static final String KEY_IMAGE_BACKEND = "image_backend"; // see IMAGE_BACKEND_*
+    private static final String KEY_IMAGE_HEDGE_SECONDS = "image_hedge_seconds"; // 0 = off
+    private static final String KEY_IMAGE_HEDGE_MODEL = "image_hedge_model"; // empty = same model
 
     public static final String DEFAULT_TEXT_MODEL = "gpt-4.1-mini";
     public static final String DEFAULT_IMAGE_ORCHESTRATION_MODEL = "gpt-5-mini";
     public static final String DEFAULT_IMAGE_TOOL_MODEL = "gpt-image-1-mini";
+    public static final int DEFAULT_IMAGE_HEDGE_SECONDS = 0;
+
+    /** Images drawn by the image_generation tool of the orchestration model (Responses API). */
+    public static final int IMAGE_BACKEND_RESPONSES = 0;
+    /** Images drawn by the rendering model directly (Images API), without orchestration. */
+    public static final int IMAGE_BACKEND_IMAGES_API = 1;
 
     private ModelPreferences() {
         // no instances
@@ -66,4 +75,57 @@ public final class ModelPreferences {
                 .putString(KEY_IMAGE_TOOL_MODEL, model.trim())
                 .apply();
     }
+
+    /** One of the {@code IMAGE_BACKEND_*} constants. */
+    public static int getImageBackend(@NonNull Context context) {
+        SharedPreferences sp = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        int backend = sp.getInt(KEY_IMAGE_BACKEND, IMAGE_BACKEND_RESPONSES);
+        return backend == IMAGE_BACKEND_IMAGES_API ? IMAGE_BACKEND_IMAGES_API : IMAGE_BACKEND_RESPONSES;
+    }
+
+    public static void setImageBackend(@NonNull Context context, int backend) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putInt(KEY_IMAGE_BACKEND, backend)
+                .apply();
+    }
+
+    /**
+     * Seconds an image may take before a backup request is raced against it, or 0 to never
+     * send one.
+     */
+    public static int getImageHedgeSeconds(@NonNull Context context) {
+        SharedPreferences sp = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        return Math.max(0, sp.getInt(KEY_IMAGE_HEDGE_SECONDS, DEFAULT_IMAGE_HEDGE_SECONDS));
+    }
+
+    public static void setImageHedgeSeconds(@NonNull Context context, int seconds) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putInt(KEY_IMAGE_HEDGE_SECONDS, Math.max(0, seconds))
+                .apply();
+    }
+
+    /** Rendering model for the backup request; the regular one if none was chosen. */
+    @NonNull
+    public static String getImageHedgeModel(@NonNull Context context) {
+        SharedPreferences sp = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String v = sp.getString(KEY_IMAGE_HEDGE_MODEL, "");
+        return v == null || v.trim().isEmpty() ? getImageToolModel(context) : v.trim();
+    }
+
+    /** Pass an empty string to use the regular rendering model. */
+    public static void setImageHedgeModel(@NonNull Context context, @NonNull String model) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString(KEY_IMAGE_HEDGE_MODEL, model.trim())
+                .apply();
+    }
+
+    /** Whether a backup rendering model was chosen. */
+    public static boolean hasImageHedgeModel(@NonNull Context context) {
+        SharedPreferences sp = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String v = sp.getString(KEY_IMAGE_HEDGE_MODEL, "");
+        return v != null && !v.trim().isEmpty();
+    }
 }
@@ -1,14 +1,40 @@
 package com.example.storyprinter.openai;
 
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.util.Log;
 
+import com.example.storyprinter.BuildConfig;
+import com.example.storyprinter.util.Logger;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
-
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.MediaType;
+import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
@@ -20,7 +46,16 @@ import okhttp3.Response;
  * Uses the Responses endpoint under /v1/responses.
  */
 public final class OpenAiClient {
-    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    // Fields kept from image responses; the image itself is decoded while the body streams in.
+    private static final Set<String> IMAGE_RESPONSE_FIELDS =
+            new HashSet<>(Arrays.asList("id", "status", "error.message"));
+
+    // Starts backup image requests; see generateImageHedgedAsync.
+    private static final ScheduledExecutorService HEDGE_TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "openai-hedge");
+        t.setDaemon(true);
+        return t;
+    });
 
     private final OkHttpClient http;
     private final String apiKey;
@@ -30,6 +65,91 @@ public final class OpenAiClient {
         this.apiKey = apiKey;
     }
 
+    /**
+     * Opens a connection to the API host in the background and leaves it in {@code http}'s
+     * pool for the next request. The probe is unauthenticated; only the connection matters.
+     */
+    public static void preconnect(OkHttpClient http) {
+        Request req = new Request.Builder()
+                .url("https://api.openai.com/v1/models")
+                .head()
+                .build();
+        long startMs = System.currentTimeMillis();
+        http.newCall(req).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.w("OpenAiClient", "Pre-connect failed", e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+                Log.i("OpenAiClient", "Pre-connected in " + (System.currentTimeMillis() - startMs) + " ms");
+            }
+        });
+    }
+
+    /** Builds a request; failures end up in the returned future. */
+    private interface RequestFactory {
+        Request create() throws IOException;
+    }
+
+    /** Reads the result out of a response; runs on OkHttp's thread. */
+    private interface ResponseParser<T> {
+        T parse(Response resp) throws IOException;
+    }
+
+    /**
+     * Sends a request without blocking. Cancelling the returned future cancels the HTTP call,
+     * which also stops a response that is still streaming in.
+     */
+    private <T> CompletableFuture<T> enqueue(RequestFactory factory, ResponseParser<T> parser) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Request req;
+        try {
+            req = factory.create();
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        Call call = http.newCall(req);
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) call.cancel();
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call c, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call c, Response response) {
+                try (Response resp = response) {
+                    future.complete(parser.parse(resp));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    /** Waits for {@code future}, cancelling it if the waiting thread is interrupted. */
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for OpenAI");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
     /** Result of a Responses API call: output text plus response id for chaining. */
     public static final class ResponseResult {
         public final String responseId;
@@ -41,27 +161,261 @@ public final class OpenAiClient {
         }
     }
 
-    /** Result of an image generation call: base64 PNG (or other) plus response id for chaining. */
+    /** Result of an image generation call: the decoded image plus response id for chaining. */
     public static final class ImageResult {
         public final String responseId;
-        public final String imageBase64;
+        public final Bitmap image;
 
-        public ImageResult(String responseId, String imageBase64) {
+        public ImageResult(String responseId, Bitmap image) {
             this.responseId = responseId;
-            this.imageBase64 = imageBase64;
+            this.image = image;
         }
     }
 
+    /** Receives partial frames of an image as it is generated; called on the thread reading the response. */
+    public interface ImageListener {
+        /** {@code image} is partial frame {@code index}, counting from 0. */
+        void onPartialImage(int index, Bitmap image);
+    }
+
+    /** Receives story text as it streams in; called on the thread reading the response. */
+    public interface TextListener {
+        /** {@code delta} was just appended; {@code textSoFar} is everything received until now. */
+        void onTextDelta(String delta, String textSoFar);
+    }
+
     /**
      * Calls the Responses API and returns both `response_id` and assistant output text.
      * For multi-turn conversations, pass the previous response id (or null for the first turn).
-     * The provided base64 should NOT include the data-url prefix.
+     * The optional reference image is sent by file id, or inline as it is written out.
      */
     public ResponseResult createResponse(
             String model,
             double temperature,
             String input,
-            String referenceImageBase64,
+            InputImage reference,
+            String previousResponseId
+    ) throws IOException {
+        return await(createResponseAsync(model, temperature, input, reference, previousResponseId));
+    }
+
+    /** {@link #createResponse} without blocking; cancelling the future cancels the request. */
+    public CompletableFuture<ResponseResult> createResponseAsync(
+            String model,
+            double temperature,
+            String input,
+            InputImage reference,
+            String previousResponseId
+    ) {
+        long startMs = System.currentTimeMillis();
+        return enqueue(() -> {
+            JSONObject payload = textPayload(model, temperature, input, reference, previousResponseId);
+
+            Request req = new Request.Builder()
+                    .url("https://api.openai.com/v1/responses")
+                    .addHeader("Authorization", "Bearer " + apiKey)
+                    .addHeader("Content-Type", "application/json")
+                    .post(new JsonBody(payload, reference))
+                    .build();
+            return req;
+        }, resp -> {
+            long elapsedMs = System.currentTimeMillis() - startMs;
+            String body = resp.body() != null ? resp.body().string() : "";
+            Log.i("OpenAiClient", "createResponse [" + model + "] completed in " + elapsedMs + " ms (HTTP " + resp.code() + ", body " + body.length() + " chars)");
+            if (!resp.isSuccessful()) {
+                throw new IOException("OpenAI error: HTTP " + resp.code() + "\n" + body);
+            }
+
+            try {
+                JSONObject json = new JSONObject(body);
+
+                String responseId = json.optString("id", "");
+
+                // Preferred: response.output_text() equivalent: collect output[].content[].type == output_text.
+                JSONArray output = json.optJSONArray("output");
+                String text = extractOutputText(output);
+                if (text.isEmpty()) {
+                    // Fallback: some SDKs expose `output_text` at top-level (not guaranteed)
+                    text = json.optString("output_text", "").trim();
+                }
+
+                if (text.isEmpty()) {
+                    throw new IOException("OpenAI response contained no output_text: " + body);
+                }
+
+                return new ResponseResult(responseId, text);
+            } catch (JSONException e) {
+                throw new IOException("Failed to parse OpenAI response\n" + body, e);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #createResponse}, but with `stream: true`: the server-sent events are parsed as
+     * they arrive and each text delta goes to {@code listener}, so the first words can be shown
+     * long before the whole answer is done. Returns the same result once the response completes.
+     */
+    public ResponseResult createResponseStreaming(
+            String model,
+            double temperature,
+            String input,
+            InputImage reference,
+            String previousResponseId,
+            TextListener listener
+    ) throws IOException {
+        return await(createResponseStreamingAsync(model, temperature, input, reference, previousResponseId, listener));
+    }
+
+    /** {@link #createResponseStreaming} without blocking; cancelling the future cancels the request. */
+    public CompletableFuture<ResponseResult> createResponseStreamingAsync(
+            String model,
+            double temperature,
+            String input,
+            InputImage reference,
+            String previousResponseId,
+            TextListener listener
+    ) {
+        long startMs = System.currentTimeMillis();
+        return enqueue(() -> {
+            JSONObject payload = textPayload(model, temperature, input, reference, previousResponseId);
+            try {
+                payload.put("stream", true);
+            } catch (JSONException e) {
+                throw new IOException("Failed to build JSON payload", e);
+            }
+
+            Request req = new Request.Builder()
+                    .url("https://api.openai.com/v1/responses")
+                    .addHeader("Authorization", "Bearer " + apiKey)
+                    .addHeader("Content-Type", "application/json")
+                    .addHeader("Accept", "text/event-stream")
+                    .post(new JsonBody(payload, reference))
+                    .build();
+            return req;
+        }, resp -> {
+            if (!resp.isSuccessful()) {
+                String body = resp.body() != null ? resp.body().string() : "";
+                throw new IOException("OpenAI error: HTTP " + resp.code() + "\n" + body);
+            }
+            if (resp.body() == null) throw new IOException("OpenAI response had no body");
+
+            StringBuilder text = new StringBuilder();
+            String[] responseId = {""};
+            String[] completedText = {null};
+            long[] firstDeltaMs = {-1};
+            ServerSentEvents.read(resp.body().byteStream(), (type, event) -> {
+                if ("response.output_text.delta".equals(type)) {
+                    String delta = event.optString("delta", "");
+                    if (!delta.isEmpty()) {
+                        if (firstDeltaMs[0] < 0) firstDeltaMs[0] = System.currentTimeMillis() - startMs;
+                        text.append(delta);
+                        if (listener != null) listener.onTextDelta(delta, text.toString());
+                    }
+                } else if ("response.created".equals(type)) {
+                    JSONObject response = event.optJSONObject("response");
+                    if (response != null) responseId[0] = response.optString("id", responseId[0]);
+                } else if ("response.completed".equals(type)) {
+                    JSONObject response = event.optJSONObject("response");
+                    if (response != null) {
+                        responseId[0] = response.optString("id", responseId[0]);
+                        completedText[0] = extractOutputText(response.optJSONArray("output"));
+                    }
+                    return false;
+                }
+                return true;
+            });
+
+            Log.i("OpenAiClient", "createResponseStreaming [" + model + "] first text after " + firstDeltaMs[0]
+                    + " ms, completed in " + (System.currentTimeMillis() - startMs) + " ms");
+
+            String result = completedText[0] != null && !completedText[0].isEmpty()
+                    ? completedText[0]
+                    : text.toString().trim();
+            if (result.isEmpty()) {
+                throw new IOException("OpenAI stream contained no output_text");
+            }
+            return new ResponseResult(responseId[0], result);
+        });
+    }
+
+    /**
+     * Uploads a JPEG to the Files endpoint for use as an input image, returning its file id.
+     * Requests can then refer to it with {@link InputImage#ofFileId} instead of sending it again.
+     */
+    public String uploadImage(byte[] jpeg, String filename) throws IOException {
+        return await(uploadImageAsync(jpeg, filename));
+    }
+
+    /** {@link #uploadImage} without blocking; cancelling the future cancels the request. */
+    public CompletableFuture<String> uploadImageAsync(byte[] jpeg, String filename) {
+        long startMs = System.currentTimeMillis();
+        return enqueue(() -> {
+            RequestBody body = new MultipartBody.Builder()
+                    .setType(MultipartBody.FORM)
+                    .addFormDataPart("purpose", "vision")
+                    .addFormDataPart("file", filename, RequestBody.create(jpeg, MediaType.get("image/jpeg")))
+                    .build();
+            Request req = new Request.Builder()
+                    .url("https://api.openai.com/v1/files")
+                    .addHeader("Authorization", "Bearer " + apiKey)
+                    .post(body)
+                    .build();
+            return req;
+        }, resp -> {
+            String responseBody = resp.body() != null ? resp.body().string() : "";
+            Log.i("OpenAiClient", "uploadImage (" + jpeg.length + " bytes) completed in " + (System.currentTimeMillis() - startMs) + " ms (HTTP " + resp.code() + ")");
+            if (!resp.isSuccessful()) {
+                throw new IOException("OpenAI error: HTTP " + resp.code() + "\n" + responseBody);
+            }
+            try {
+                String id = new JSONObject(responseBody).optString("id", "");
+                if (id.isEmpty()) throw new IOException("OpenAI upload returned no file id: " + responseBody);
+                return id;
+            } catch (JSONException e) {
+                throw new IOException("Failed to parse OpenAI response\n" + responseBody, e);
+            }
+        });
+    }
+
+    /** Deletes an uploaded file, e.g. a reference image the story no longer uses. */
+    public void deleteFile(String fileId) throws IOException {
+        await(deleteFileAsync(fileId));
+    }
+
+    /** {@link #deleteFile} without blocking. */
+    public CompletableFuture<Void> deleteFileAsync(String fileId) {
+        return enqueue(() -> new Request.Builder()
+                .url("https://api.openai.com/v1/files/" + fileId)
+                .addHeader("Authorization", "Bearer " + apiKey)
+                .delete()
+                .build(), resp -> {
+            // Already gone is as good as deleted.
+            if (!resp.isSuccessful() && resp.code() != 404) {
+                String responseBody = resp.body() != null ? resp.body().string() : "";
+                throw new IOException("OpenAI error: HTTP " + resp.code() + "\n" + responseBody);
+            }
+            Log.i("OpenAiClient", "deleteFile " + fileId + " (HTTP " + resp.code() + ")");
+            return null;
+        });
+    }
+
+    private static JSONObject inputImagePart(InputImage image) throws JSONException {
+        JSONObject part = new JSONObject();
+        part.put("type", "input_image");
+        if (image.fileId != null) {
+            part.put("file_id", image.fileId);
+        } else {
+            // Sent as a jpeg data-url, encoded into the body as it is written.
+            part.put("image_url", JsonBody.IMAGE_PLACEHOLDER);
+        }
+        return part;
+    }
+
+    private static JSONObject textPayload(
+            String model,
+            double temperature,
+            String input,
+            InputImage reference,
             String previousResponseId
     ) throws IOException {
         JSONObject payload = new JSONObject();
@@ -79,12 +433,8 @@ public final class OpenAiClient {
             inputText.put("type", "input_text");
             inputText.put("text", input);
 
-            if (referenceImageBase64 != null && !referenceImageBase64.trim().isEmpty()) {
-                JSONObject inputImage = new JSONObject();
-                inputImage.put("type", "input_image");
-                // Default to jpeg data-url; the API accepts data URLs.
-                inputImage.put("image_url", "data:image/jpeg;base64," + referenceImageBase64.trim());
-                contentArray.put(inputImage);
+            if (reference != null) {
+                contentArray.put(inputImagePart(reference));
             }
             contentArray.put(inputText);
 
@@ -98,57 +448,419 @@ public final class OpenAiClient {
         } catch (JSONException e) {
             throw new IOException("Failed to build JSON payload", e);
         }
+        return payload;
+    }
 
-        Request req = new Request.Builder()
-                .url("https://api.openai.com/v1/responses")
-                .addHeader("Authorization", "Bearer " + apiKey)
-                .addHeader("Content-Type", "application/json")
-                .post(RequestBody.create(payload.toString(), JSON))
-                .build();
+    /**
+     * Generates an image via the Responses API (image_generation tool), optionally conditioned on a single
+     * reference image, sent by file id or inline.
+     */
+    public ImageResult generateImage(
+            String model,
+            String imageToolModel,
+            String prompt,
+            InputImage reference,
+            String previousResponseId
+    ) throws IOException {
+        return await(generateImageAsync(model, imageToolModel, prompt, reference, previousResponseId));
+    }
 
+    /** {@link #generateImage} without blocking; cancelling the future cancels the request. */
+    public CompletableFuture<ImageResult> generateImageAsync(
+            String model,
+            String imageToolModel,
+            String prompt,
+            InputImage reference,
+            String previousResponseId
+    ) {
         long startMs = System.currentTimeMillis();
-        try (Response resp = http.newCall(req).execute()) {
-            long elapsedMs = System.currentTimeMillis() - startMs;
-            String body = resp.body() != null ? resp.body().string() : "";
-            Log.i("OpenAiClient", "createResponse [" + model + "] completed in " + elapsedMs + " ms (HTTP " + resp.code() + ", body " + body.length() + " chars)");
+        return enqueue(() -> {
+            JSONObject payload = imagePayload(model, imageToolModel, prompt, reference, previousResponseId, 0);
+
+            JsonBody requestBody = new JsonBody(payload, reference);
+            Request req = new Request.Builder()
+                    .url("https://api.openai.com/v1/responses")
+                    .addHeader("Authorization", "Bearer " + apiKey)
+                    .addHeader("Content-Type", "application/json")
+                    .post(requestBody)
+                    .build();
+
+            // Print out the curl command for debugging purposes (the reference image is left out).
+            // Only built when someone is reading it: the payload carries the whole story so far.
+            if (BuildConfig.DEBUG && Log.isLoggable("OpenAiClient", Log.DEBUG)) {
+                String curlCommand = "curl -X POST https://api.openai.com/v1/responses \\\n" +
+                        "  -H \"Authorization: Bearer REDACTED\" \\\n" +
+                        "  -H \"Content-Type: application/json\" \\\n" +
+                        "  -d '" + requestBody.toLogString().replace("'", "\\'") + "'";
+                Log.d("OpenAiClient", "Curl command:\n" + curlCommand);
+            }
+            return req;
+        }, resp -> {
             if (!resp.isSuccessful()) {
+                String body = resp.body() != null ? resp.body().string() : "";
+                Log.i("OpenAiClient", "generateImage [" + model + "] failed after " + (System.currentTimeMillis() - startMs) + " ms (HTTP " + resp.code() + ")");
                 throw new IOException("OpenAI error: HTTP " + resp.code() + "\n" + body);
             }
+            if (resp.body() == null) throw new IOException("OpenAI response had no body");
+
+            // The image_generation_call result is decoded straight from the body as it arrives,
+            // never held as a string.
+            Bitmap[] image = {null};
+            Map<String, String> fields = JsonStreamScanner.scan(resp.body().byteStream(), IMAGE_RESPONSE_FIELDS,
+                    "result", decoded -> image[0] = BitmapFactory.decodeStream(decoded));
+            Log.i("OpenAiClient", "generateImage [" + model + "] completed in " + (System.currentTimeMillis() - startMs) + " ms (HTTP " + resp.code() + ")");
+
+            if (image[0] == null) {
+                String error = fields.get("error.message");
+                if (error != null) {
+                    throw new IOException("OpenAI image generation error: " + error);
+                }
+                String status = fields.get("status");
+                throw new IOException("OpenAI response contained no image_generation_call result"
+                        + (status == null || status.isEmpty() ? "" : (" (status=" + status + ")")));
+            }
+            return new ImageResult(fields.containsKey("id") ? fields.get("id") : "", image[0]);
+        });
+    }
+
+    /**
+     * Like {@link #generateImage}, but streamed: the image_generation tool is asked for
+     * {@code partialImages} (1..3) partial frames, and each one goes to {@code listener} as soon
+     * as it arrives, before the final image is returned.
+     */
+    public ImageResult generateImageStreaming(
+            String model,
+            String imageToolModel,
+            String prompt,
+            InputImage reference,
+            String previousResponseId,
+            int partialImages,
+            ImageListener listener
+    ) throws IOException {
+        return await(generateImageStreamingAsync(model, imageToolModel, prompt, reference, previousResponseId, partialImages, listener));
+    }
 
+    /** {@link #generateImageStreaming} without blocking; cancelling the future cancels the request. */
+    public CompletableFuture<ImageResult> generateImageStreamingAsync(
+            String model,
+            String imageToolModel,
+            String prompt,
+            InputImage reference,
+            String previousResponseId,
+            int partialImages,
+            ImageListener listener
+    ) {
+        long startMs = System.currentTimeMillis();
+        return enqueue(() -> {
+            JSONObject payload = imagePayload(model, imageToolModel, prompt, reference, previousResponseId,
+                    partialImages);
             try {
-                JSONObject json = new JSONObject(body);
+                payload.put("stream", true);
+            } catch (JSONException e) {
+                throw new IOException("Failed to build JSON payload", e);
+            }
 
-                String responseId = json.optString("id", "");
+            Request req = new Request.Builder()
+                    .url("https://api.openai.com/v1/responses")
+                    .addHeader("Authorization", "Bearer " + apiKey)
+                    .addHeader("Content-Type", "application/json")
+                    .addHeader("Accept", "text/event-stream")
+                    .post(new JsonBody(payload, reference))
+                    .build();
+            return req;
+        }, resp -> {
+            if (!resp.isSuccessful()) {
+                String body = resp.body() != null ? resp.body().string() : "";
+                throw new IOException("OpenAI error: HTTP " + resp.code() + "\n" + body);
+            }
+            if (resp.body() == null) throw new IOException("OpenAI response had no body");
+
+            String[] responseId = {""};
+            Bitmap[] image = {null};
+            int[] partials = {0};
+            long[] firstPartialMs = {-1};
+            ServerSentEvents.read(resp.body().byteStream(), new ServerSentEvents.Handler() {
+                @Override
+                public boolean onEvent(String type, JSONObject event) {
+                    if ("response.created".equals(type)) {
+                        JSONObject response = event.optJSONObject("response");
+                        if (response != null) responseId[0] = response.optString("id", responseId[0]);
+                    }
+                    return true;
+                }
 
-                // Preferred: response.output_text() equivalent: collect output[].content[].type == output_text.
-                JSONArray output = json.optJSONArray("output");
-                String text = extractOutputText(output);
-                if (text.isEmpty()) {
-                    // Fallback: some SDKs expose `output_text` at top-level (not guaranteed)
-                    text = json.optString("output_text", "").trim();
+                // Events carrying an image are scanned as they stream in, and the image decoded
+                // straight from the stream.
+                @Override
+                public boolean isLarge(String eventName) {
+                    return "response.image_generation_call.partial_image".equals(eventName)
+                            || "response.output_item.done".equals(eventName)
+                            || "response.completed".equals(eventName);
                 }
 
-                if (text.isEmpty()) {
-                    throw new IOException("OpenAI response contained no output_text: " + body);
+                @Override
+                public boolean onLargeEvent(String eventName, InputStream data) throws IOException {
+                    if ("response.image_generation_call.partial_image".equals(eventName)) {
+                        JsonStreamScanner.scan(data, Collections.emptySet(), "partial_image_b64", decoded -> {
+                            Bitmap partial = BitmapFactory.decodeStream(decoded);
+                            if (partial == null) return;
+                            if (firstPartialMs[0] < 0) firstPartialMs[0] = System.currentTimeMillis() - startMs;
+                            if (listener != null) listener.onPartialImage(partials[0]++, partial);
+                        });
+                        return true;
+                    }
+                    if ("response.output_item.done".equals(eventName)) {
+                        // The finished image arrives here; the completed event repeats it.
+                        JsonStreamScanner.scan(data, Collections.emptySet(), "result",
+                                decoded -> image[0] = BitmapFactory.decodeStream(decoded));
+                        return true;
+                    }
+                    Map<String, String> fields = JsonStreamScanner.scan(data,
+                            Collections.singleton("response.id"), image[0] == null ? "result" : null,
+                            decoded -> image[0] = BitmapFactory.decodeStream(decoded));
+                    if (fields.containsKey("response.id")) responseId[0] = fields.get("response.id");
+                    return false;
                 }
+            });
 
-                return new ResponseResult(responseId, text);
+            Log.i("OpenAiClient", "generateImageStreaming [" + model + "] first partial after " + firstPartialMs[0]
+                    + " ms, completed in " + (System.currentTimeMillis() - startMs) + " ms");
+            if (image[0] == null) {
+                throw new IOException("OpenAI stream contained no image_generation_call result");
+            }
+            return new ImageResult(responseId[0], image[0]);
+        });
+    }
+
+    /**
+     * Generates an image with the Images API directly, skipping the orchestration model: the
+     * description goes straight to {@code imageModel}, so drawing starts without a reasoning
+     * step first. With a {@code referenceJpeg} the edits endpoint draws from it instead. The API
+     * keeps no conversation, so the result has no response id to chain the next page to.
+     * Streams {@code partialImages} partial frames to {@code listener} like
+     * {@link #generateImageStreaming}.
+     */
+    public CompletableFuture<ImageResult> generateImageDirectAsync(
+            String imageModel,
+            String prompt,
+            byte[] referenceJpeg,
+            int partialImages,
+            ImageListener listener
+    ) {
+        long startMs = System.currentTimeMillis();
+        boolean edit = referenceJpeg != null && referenceJpeg.length > 0;
+        String eventPrefix = edit ? "image_edit." : "image_generation.";
+        return enqueue(() -> {
+            String text = "Generate an image based on the following description:\n\n" + prompt;
+            JSONObject payload;
+            try {
+                payload = directImagePayload(imageModel, text, partialImages, edit);
             } catch (JSONException e) {
-                throw new IOException("Failed to parse OpenAI response\n" + body, e);
+                throw new IOException("Failed to build JSON payload", e);
             }
-        }
+            RequestBody body;
+            if (edit) {
+                // The edits endpoint takes the image as an upload, so every field goes in a form.
+                MultipartBody.Builder form = new MultipartBody.Builder()
+                        .setType(MultipartBody.FORM)
+                        .addFormDataPart("image", "reference.jpg", RequestBody.create(referenceJpeg, MediaType.get("image/jpeg")));
+                for (Iterator<String> keys = payload.keys(); keys.hasNext(); ) {
+                    String key = keys.next();
+                    form.addFormDataPart(key, String.valueOf(payload.opt(key)));
+                }
+                body = form.build();
+            } else {
+                body = new JsonBody(payload, null);
+            }
+
+            Request req = new Request.Builder()
+                    .url(edit ? "https://api.openai.com/v1/images/edits" : "https://api.openai.com/v1/images/generations")
+                    .addHeader("Authorization", "Bearer " + apiKey)
+                    .addHeader("Accept", "text/event-stream")
+                    .post(body)
+                    .build();
+            return req;
+        }, resp -> {
+            if (!resp.isSuccessful()) {
+                String responseBody = resp.body() != null ? resp.body().string() : "";
+                throw new IOException("OpenAI error: HTTP " + resp.code() + "\n" + responseBody);
+            }
+            if (resp.body() == null) throw new IOException("OpenAI response had no body");
+
+            Bitmap[] image = {null};
+            int[] partials = {0};
+            long[] firstPartialMs = {-1};
+            ServerSentEvents.read(resp.body().byteStream(), new ServerSentEvents.Handler() {
+                // Only reached for image events without an "event:" line, which are parsed whole.
+                @Override
+                public boolean onEvent(String type, JSONObject event) {
+                    if (!isLarge(type)) return true;
+                    byte[] jpeg = Base64.getDecoder().decode(event.optString("b64_json", ""));
+                    return onImage(type, BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length));
+                }
+
+                @Override
+                public boolean isLarge(String eventName) {
+                    return (eventPrefix + "partial_image").equals(eventName)
+                            || (eventPrefix + "completed").equals(eventName);
+                }
+
+                @Override
+                public boolean onLargeEvent(String eventName, InputStream data) throws IOException {
+                    Bitmap[] decoded = {null};
+                    JsonStreamScanner.scan(data, Collections.emptySet(), "b64_json",
+                            in -> decoded[0] = BitmapFactory.decodeStream(in));
+                    return onImage(eventName, decoded[0]);
+                }
+
+                private boolean onImage(String type, Bitmap decoded) {
+                    if ((eventPrefix + "completed").equals(type)) {
+                        image[0] = decoded;
+                        return false;
+                    }
+                    if (decoded == null) return true;
+                    if (firstPartialMs[0] < 0) firstPartialMs[0] = System.currentTimeMillis() - startMs;
+                    if (listener != null) listener.onPartialImage(partials[0]++, decoded);
+                    return true;
+                }
+            });
+
+            Log.i("OpenAiClient", "generateImageDirect [" + imageModel + (edit ? ", edit" : "") + "] first partial after "
+                    + firstPartialMs[0] + " ms, completed in " + (System.currentTimeMillis() - startMs) + " ms");
+            if (image[0] == null) {
+                throw new IOException("OpenAI image stream contained no image");
+            }
+            return new ImageResult("", image[0]);
+        });
+    }
+
+    /** Images API request with the same image settings as the tool in {@link #imagePayload}. */
+    private static JSONObject directImagePayload(String imageModel, String prompt, int partialImages, boolean edit)
+            throws JSONException {
+        JSONObject payload = new JSONObject();
+        payload.put("model", imageModel);
+        payload.put("prompt", prompt);
+        payload.put("size", "1024x1536");
+        payload.put("quality", "low");
+        payload.put("output_format", "jpeg");
+        payload.put("output_compression", 100);
+        if (!edit) payload.put("moderation", "low"); // not accepted by the edits endpoint
+        payload.put("stream", true);
+        if (partialImages > 0) payload.put("partial_images", partialImages);
+        return payload;
+    }
+
+    /** Starts one image request on {@code imageToolModel}; see {@link #generateImageHedgedAsync}. */
+    public interface ImageAttempt {
+        CompletableFuture<ImageResult> start(String imageToolModel, ImageListener listener);
     }
 
     /**
-     * Generates an image via the Responses API (image_generation tool), optionally conditioned on a single
-     * base64-encoded reference image (JPEG/PNG). The provided base64 should NOT include the data-url prefix.
+     * Runs {@code attempt} with a latency budget: if no image has arrived after
+     * {@code hedgeAfterMs}, it is started again, on {@code backupToolModel} when one is given
+     * (e.g. a faster model), and whichever finishes first wins; the other is cancelled. Only if
+     * both fail does the result fail. Partial frames are passed on only when they are further
+     * along than any shown so far, so the preview never steps back. {@code hedgeAfterMs <= 0}
+     * sends a single request.
      */
-    public ImageResult generateImage(
+    public static CompletableFuture<ImageResult> generateImageHedgedAsync(
+            String imageToolModel,
+            String backupToolModel,
+            long hedgeAfterMs,
+            ImageListener listener,
+            ImageAttempt attempt
+    ) {
+        return generateImageHedgedAsync(imageToolModel, backupToolModel, hedgeAfterMs, listener, attempt,
+                HEDGE_TIMER, Logger.ANDROID);
+    }
+
+    static CompletableFuture<ImageResult> generateImageHedgedAsync(
+            String imageToolModel,
+            String backupToolModel,
+            long hedgeAfterMs,
+            ImageListener listener,
+            ImageAttempt attempt,
+            ScheduledExecutorService timerExecutor,
+            Logger log
+    ) {
+        AtomicInteger shownPartial = new AtomicInteger(-1);
+        ImageListener furthest = listener == null ? null : (index, image) -> {
+            if (shownPartial.getAndAccumulate(index, Math::max) < index) listener.onPartialImage(index, image);
+        };
+        CompletableFuture<ImageResult> primary = attempt.start(imageToolModel, furthest);
+        if (hedgeAfterMs <= 0) return primary;
+
+        String backupModel = backupToolModel != null && !backupToolModel.trim().isEmpty()
+                ? backupToolModel.trim() : imageToolModel;
+        CompletableFuture<ImageResult> winner = new CompletableFuture<>();
+        Hedge hedge = new Hedge(winner, log);
+        hedge.add(primary, imageToolModel);
+        ScheduledFuture<?> timer = timerExecutor.schedule(() -> {
+            if (winner.isDone()) return;
+            log.i("OpenAiClient", "generateImage [" + imageToolModel + "] still running after " + hedgeAfterMs
+                    + " ms, hedging on " + backupModel);
+            hedge.add(attempt.start(backupModel, furthest), backupModel + " (backup)");
+        }, hedgeAfterMs, TimeUnit.MILLISECONDS);
+        winner.whenComplete((result, error) -> {
+            timer.cancel(false);
+            hedge.cancelAll();
+        });
+        return winner;
+    }
+
+    /** The attempts racing for one hedged image. */
+    private static final class Hedge {
+        private final CompletableFuture<ImageResult> winner;
+        private final Logger log;
+        private final List<CompletableFuture<ImageResult>> attempts = new ArrayList<>();
+        private int running;
+        private Throwable firstError;
+
+        Hedge(CompletableFuture<ImageResult> winner, Logger log) {
+            this.winner = winner;
+            this.log = log;
+        }
+
+        void add(CompletableFuture<ImageResult> attempt, String label) {
+            synchronized (this) {
+                if (!winner.isDone()) {
+                    attempts.add(attempt);
+                    running++;
+                }
+            }
+            if (winner.isDone()) {
+                attempt.cancel(true);
+                return;
+            }
+            attempt.whenComplete((result, error) -> {
+                if (error == null) {
+                    if (winner.complete(result)) log.i("OpenAiClient", "generateImage won by " + label);
+                    return;
+                }
+                synchronized (this) {
+                    if (firstError == null) firstError = error;
+                    if (--running > 0) return;
+                }
+                winner.completeExceptionally(firstError);
+            });
+        }
+
+        void cancelAll() {
+            List<CompletableFuture<ImageResult>> all;
+            synchronized (this) {
+                all = new ArrayList<>(attempts);
+            }
+            for (CompletableFuture<ImageResult> attempt : all) attempt.cancel(true);
+        }
+    }
+
+    private static JSONObject imagePayload(
             String model,
             String imageToolModel,
             String prompt,
-            String referenceImageBase64,
-            String previousResponseId
+            InputImage reference,
+            String previousResponseId,
+            int partialImages
     ) throws IOException {
         JSONObject payload = new JSONObject();
         try {
@@ -164,12 +876,8 @@ public final class OpenAiClient {
             inputText.put("type", "input_text");
             inputText.put("text", "Generate an image based on the following description:\n\n" + prompt);
 
-            if (referenceImageBase64 != null && !referenceImageBase64.trim().isEmpty()) {
-                JSONObject inputImage = new JSONObject();
-                inputImage.put("type", "input_image");
-                // Default to jpeg data-url; the API accepts data URLs.
-                inputImage.put("image_url", "data:image/jpeg;base64," + referenceImageBase64.trim());
-                contentArray.put(inputImage);
+            if (reference != null) {
+                contentArray.put(inputImagePart(reference));
             }
             contentArray.put(inputText);
 
@@ -187,6 +895,7 @@ public final class OpenAiClient {
             tool.put("output_format", "jpeg");
             tool.put("output_compression", 100);
             tool.put("moderation", "low");
+            if (partialImages > 0) tool.put("partial_images", partialImages);
             tools.put(tool);
             payload.put("tools", tools);
 
@@ -196,55 +905,7 @@ public final class OpenAiClient {
         } catch (JSONException e) {
             throw new IOException("Failed to build JSON payload", e);
         }
-
-        Request req = new Request.Builder()
-                .url("https://api.openai.com/v1/responses")
-                .addHeader("Authorization", "Bearer " + apiKey)
-                .addHeader("Content-Type", "application/json")
-                .post(RequestBody.create(payload.toString(), JSON))
-                .build();
-
-        // Print out the curl command for debugging purposes
-        String curlCommand = "curl -X POST https://api.openai.com/v1/responses \\\n" +
-                "  -H \"Authorization: Bearer " + apiKey + "\" \\\n" +
-                "  -H \"Content-Type: application/json\" \\\n" +
-                "  -d '" + payload.toString().replace("'", "\\'") + "'";
-        Log.d("OpenAiClient", "Curl command:\n" + curlCommand.replace(apiKey, "REDACTED"));
-
-        long startMs = System.currentTimeMillis();
-        try (Response resp = http.newCall(req).execute()) {
-            long elapsedMs = System.currentTimeMillis() - startMs;
-            String body = resp.body() != null ? resp.body().string() : "";
-            Log.i("OpenAiClient", "generateImage [" + model + "] completed in " + elapsedMs + " ms (HTTP " + resp.code() + ", body " + body.length() + " chars)");
-            if (!resp.isSuccessful()) {
-                throw new IOException("OpenAI error: HTTP " + resp.code() + "\n" + body);
-            }
-
-            try {
-                JSONObject json = new JSONObject(body);
-                String responseId = json.optString("id", "");
-
-                // Find image_generation_call outputs and return the first result.
-                JSONArray output = json.optJSONArray("output");
-                String imageBase64 = extractImageBase64(output);
-                if (imageBase64.isEmpty()) {
-                    String status = json.optString("status", "");
-                    JSONObject err = json.optJSONObject("error");
-                    if (err != null) {
-                        throw new IOException("OpenAI image generation error: " + err + "\n" + body);
-                    }
-                    throw new IOException(
-                            "OpenAI response contained no image_generation_call result" +
-                                    (status.isEmpty() ? "" : (" (status=" + status + ")")) +
-                                    ": \n" + body
-                    );
-                }
-
-                return new ImageResult(responseId, imageBase64);
-            } catch (JSONException e) {
-                throw new IOException("Failed to parse OpenAI response\n" + body, e);
-            }
-        }
+        return payload;
     }
 
     private static String extractOutputText(JSONArray output) {
@@ -275,24 +936,6 @@ public final class OpenAiClient {
         return sb.toString().trim();
     }
 
-    private static String extractImageBase64(JSONArray output) {
-        if (output == null || output.length() == 0) return "";
-
-        for (int i = 0; i < output.length(); i++) {
-            JSONObject item = output.optJSONObject(i);
-            if (item == null) continue;
-
-            // Per docs/example: output item type "image_generation_call" has "result" as base64.
-            if (!"image_generation_call".equals(item.optString("type"))) continue;
-
-            String result = item.optString("result", "");
-            if (!result.trim().isEmpty()) {
-                return result.trim();
-            }
-        }
-        return "";
-    }
-
     /**
      * Backwards-compatible shim used earlier in this project.
      *
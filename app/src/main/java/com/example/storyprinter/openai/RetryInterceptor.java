@@ -0,0 +1,262 @@
+package com.example.storyprinter.openai;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Keeps API calls under the account's rate limits and rides out transient failures.
+ *
+ * Authenticated requests first take a token from a client-side {@link TokenBucket}, whose rate
+ * follows the {@code x-ratelimit-*} headers the API returns; when those report a limit used up,
+ * requests wait for its reset instead of piling into 429s. The API limits each model separately,
+ * so there is a bucket per model (per endpoint for requests whose model isn't known here).
+ * A 429 is retried with jittered exponential backoff, or after {@code Retry-After} when the server
+ * gives one; a 429 for {@code insufficient_quota} is returned at once, as no wait makes an account
+ * with no credit work. A POST that fails any other way (408, 409, 5xx) may already have generated,
+ * and been billed, on the server, so it is only repeated when the response carries
+ * {@code x-should-retry: true}. Idempotent requests are also retried on 408, 409 and 5xx unless
+ * {@code x-should-retry: false}. Timeouts and failed connections are left to OkHttp, which only
+ * repeats a request it hadn't started sending.
+ *
+ * Install one instance on the shared client so all calls draw from the same budgets.
+ */
+public final class RetryInterceptor implements Interceptor {
+
+    private static final String TAG = "RetryInterceptor";
+
+    private static final int MAX_RETRIES = 3;
+    private static final long INITIAL_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 8_000;
+    // A longer Retry-After fails the call instead; nobody watches a spinner for minutes.
+    private static final long MAX_RETRY_AFTER_MS = 60_000;
+    // Cancellation is checked at least this often while waiting.
+    private static final long WAIT_SLICE_MS = 250;
+
+    // Until the API reports the real limit; the burst is this many seconds' worth of requests.
+    private static final int DEFAULT_REQUESTS_PER_MINUTE = 60;
+    private static final int BURST_SECONDS = 10;
+
+    // Error bodies are small; this is only read to tell quota errors from rate limits.
+    private static final long MAX_ERROR_PEEK_BYTES = 16 * 1024;
+    private static final String INSUFFICIENT_QUOTA = "insufficient_quota";
+
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    /** One model's budget and the limit it was last set to. */
+    private static final class Limit {
+        final TokenBucket bucket = new TokenBucket(
+                DEFAULT_REQUESTS_PER_MINUTE / 60.0, burstFor(DEFAULT_REQUESTS_PER_MINUTE));
+        int requestsPerMinute = DEFAULT_REQUESTS_PER_MINUTE; // guarded by this
+    }
+
+    private final ConcurrentHashMap<String, Limit> limits = new ConcurrentHashMap<>();
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        // Unauthenticated probes (pre-connect) don't count against the key's limits.
+        Limit limit = request.header("Authorization") != null
+                ? limits.computeIfAbsent(limitKey(request), key -> new Limit())
+                : null;
+
+        for (int attempt = 0; ; attempt++) {
+            if (limit != null) acquire(chain, limit.bucket);
+            Response response = chain.proceed(request);
+            if (limit != null) observeLimits(response, limit);
+
+            if (response.isSuccessful() || attempt >= MAX_RETRIES || !isRetryable(request, response)) {
+                return response;
+            }
+            long delayMs = retryAfterMs(response);
+            if (delayMs > MAX_RETRY_AFTER_MS) return response;
+            if (delayMs < 0) delayMs = backoffMs(attempt);
+            // Everyone else on this model should hold off too, or they'd hit the same limit meanwhile.
+            if (response.code() == 429 && limit != null) limit.bucket.pauseFor(delayMs);
+            response.close();
+
+            Log.w(TAG, "HTTP " + response.code() + " from " + request.url().encodedPath()
+                    + ", retry " + (attempt + 1) + "/" + MAX_RETRIES + " in " + delayMs + " ms");
+            sleep(chain, delayMs);
+        }
+    }
+
+    /** The model a request is billed to, or its path when the body doesn't say. */
+    static String limitKey(Request request) {
+        if (request.body() instanceof JsonBody) {
+            String model = ((JsonBody) request.body()).model;
+            if (model != null && !model.isEmpty()) return model;
+        }
+        return request.url().encodedPath();
+    }
+
+    private static void acquire(Chain chain, TokenBucket bucket) throws IOException {
+        long waitMs;
+        while ((waitMs = bucket.tryAcquire()) > 0) {
+            sleep(chain, waitMs);
+        }
+    }
+
+    private static boolean isRetryable(Request request, Response response) {
+        int code = response.code();
+        return isRetryable(request.method(), code, response.header("x-should-retry"),
+                code == 429 && isQuotaExhausted(response));
+    }
+
+    /** Whether a failed {@code method} call that got {@code code} and {@code x-should-retry} may be repeated. */
+    static boolean isRetryable(String method, int code, String shouldRetry, boolean quotaExhausted) {
+        if (quotaExhausted) return false;
+        if ("true".equals(shouldRetry)) return true;
+        if ("false".equals(shouldRetry)) return false;
+        // Rate limited before the server did anything, so safe to repeat even for a POST.
+        if (code == 429) return true;
+        if (!isIdempotent(method)) return false;
+        return code == 408 || code == 409 || code >= 500;
+    }
+
+    private static boolean isIdempotent(String method) {
+        switch (method) {
+            case "GET":
+            case "HEAD":
+            case "OPTIONS":
+            case "PUT":
+            case "DELETE":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Whether a 429 is the account being out of credit rather than going too fast. */
+    private static boolean isQuotaExhausted(Response response) {
+        try {
+            String body = response.peekBody(MAX_ERROR_PEEK_BYTES).string();
+            JSONObject error = new JSONObject(body).optJSONObject("error");
+            return error != null && (INSUFFICIENT_QUOTA.equals(error.optString("code"))
+                    || INSUFFICIENT_QUOTA.equals(error.optString("type")));
+        } catch (IOException | JSONException e) {
+            return false;
+        }
+    }
+
+    /** What the server asked us to wait, in ms, or -1 if it didn't say. */
+    private static long retryAfterMs(Response response) {
+        return retryAfterMs(response.header("retry-after-ms"), response.header("Retry-After"));
+    }
+
+    /** Same, from the {@code retry-after-ms} and {@code Retry-After} header values (either may be null). */
+    static long retryAfterMs(String ms, String retryAfter) {
+        if (ms != null) {
+            try {
+                return Math.max(0, (long) Double.parseDouble(ms.trim()));
+            } catch (NumberFormatException ignored) {
+                // fall through to Retry-After
+            }
+        }
+        if (retryAfter == null) return -1;
+        try {
+            return Math.max(0, (long) (Double.parseDouble(retryAfter.trim()) * 1000));
+        } catch (NumberFormatException notSeconds) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, at.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (RuntimeException notADate) {
+                return -1;
+            }
+        }
+    }
+
+    /** 0.5 s, 1 s, 2 s, ... up to 8 s, each shortened by up to a quarter so clients spread out. */
+    private static long backoffMs(int attempt) {
+        long base = Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << Math.min(attempt, 16));
+        return (long) (base * (1 - 0.25 * ThreadLocalRandom.current().nextDouble()));
+    }
+
+    /** Adjusts the bucket to the limits reported with {@code response}. */
+    private static void observeLimits(Response response, Limit limit) {
+        String header = response.header("x-ratelimit-limit-requests");
+        if (header != null) {
+            try {
+                int perMinute = Integer.parseInt(header.trim());
+                if (perMinute > 0) setRequestsPerMinute(limit, perMinute);
+            } catch (NumberFormatException ignored) {
+                // keep the current rate
+            }
+        }
+        pauseIfExhausted(response, limit.bucket, "requests");
+        pauseIfExhausted(response, limit.bucket, "tokens");
+    }
+
+    private static void setRequestsPerMinute(Limit limit, int perMinute) {
+        synchronized (limit) {
+            if (perMinute == limit.requestsPerMinute) return;
+            limit.requestsPerMinute = perMinute;
+            limit.bucket.setRate(perMinute / 60.0, burstFor(perMinute));
+        }
+        Log.i(TAG, "Rate limit " + perMinute + " requests/min");
+    }
+
+    private static void pauseIfExhausted(Response response, TokenBucket bucket, String kind) {
+        String remaining = response.header("x-ratelimit-remaining-" + kind);
+        if (remaining == null || !remaining.trim().equals("0")) return;
+        long resetMs = parseDurationMs(response.header("x-ratelimit-reset-" + kind));
+        if (resetMs > 0) {
+            Log.i(TAG, "Out of " + kind + " until the limit resets in " + resetMs + " ms");
+            bucket.pauseFor(Math.min(resetMs, MAX_RETRY_AFTER_MS));
+        }
+    }
+
+    /** Parses the API's reset durations, e.g. "20ms", "1.5s", "6m0s"; -1 if unreadable. */
+    static long parseDurationMs(String value) {
+        if (value == null || value.trim().isEmpty()) return -1;
+        Matcher m = DURATION_PART.matcher(value.trim());
+        double ms = 0;
+        int end = 0;
+        while (m.find()) {
+            if (m.start() != end) return -1;
+            double n = Double.parseDouble(m.group(1));
+            switch (m.group(2)) {
+                case "h": ms += n * 3_600_000; break;
+                case "m": ms += n * 60_000; break;
+                case "s": ms += n * 1000; break;
+                default: ms += n; break;
+            }
+            end = m.end();
+        }
+        return end == value.trim().length() ? (long) Math.ceil(ms) : -1;
+    }
+
+    private static double burstFor(int perMinute) {
+        return Math.max(1, perMinute / 60.0 * BURST_SECONDS);
+    }
+
+    /** Waits {@code ms}, giving up as soon as the call is cancelled. */
+    private static void sleep(Chain chain, long ms) throws IOException {
+        long deadline = System.currentTimeMillis() + ms;
+        long left;
+        while ((left = deadline - System.currentTimeMillis()) > 0) {
+            if (chain.call().isCanceled()) throw new IOException("Canceled");
+            try {
+                Thread.sleep(Math.min(left, WAIT_SLICE_MS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to retry");
+            }
+        }
+        if (chain.call().isCanceled()) throw new IOException("Canceled");
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.storyprinter.openai;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the server-sent events of a streamed API response. Each event's data is one JSON
+ * payload; events whose data is too big to hold as a string can be streamed to the handler
+ * instead.
+ */
+final class ServerSentEvents {
+
+    private ServerSentEvents() {
+    }
+
+    /** Handles one event; return false to stop reading the stream. */
+    interface Handler {
+        boolean onEvent(String type, JSONObject event) throws IOException;
+
+        /**
+         * Whether events named {@code eventName} (by their "event:" line) are too big to parse
+         * whole; their data then goes to {@link #onLargeEvent} as a stream instead.
+         */
+        default boolean isLarge(String eventName) {
+            return false;
+        }
+
+        /** Handles the data line of a large event; {@code data} ends with the line. */
+        default boolean onLargeEvent(String eventName, InputStream data) throws IOException {
+            return true;
+        }
+    }
+
+    /**
+     * Reads server-sent events from {@code body} as they arrive, until the stream ends or
+     * {@code handler} has seen enough. Only the data lines matter, since each JSON payload
+     * carries its own "type"; error events are turned into an IOException.
+     */
+    static void read(InputStream body, Handler handler) throws IOException {
+        InputStream in = new BufferedInputStream(body);
+        StringBuilder data = new StringBuilder();
+        String eventName = null;
+        while (true) {
+            int c = in.read();
+            if (c == '\r') continue;
+            if (c == -1 || c == '\n') {
+                // A blank line (or the end of the stream) completes the event.
+                eventName = null;
+                if (data.length() > 0) {
+                    String eventData = data.toString();
+                    data.setLength(0);
+                    if (eventData.equals("[DONE]")) return;
+
+                    JSONObject event;
+                    try {
+                        event = new JSONObject(eventData);
+                    } catch (JSONException e) {
+                        throw new IOException("Failed to parse OpenAI stream event\n" + eventData, e);
+                    }
+                    String type = event.optString("type", "");
+                    if ("response.failed".equals(type) || "response.incomplete".equals(type) || "error".equals(type)) {
+                        throw new IOException("OpenAI stream error: " + eventData);
+                    }
+                    if (!handler.onEvent(type, event)) return;
+                }
+                if (c == -1) return;
+                continue;
+            }
+
+            StringBuilder field = new StringBuilder();
+            while (c != -1 && c != ':' && c != '\n') {
+                field.append((char) c);
+                c = in.read();
+            }
+            if (c != ':') continue; // a field without a value; nothing we use
+            in.mark(1);
+            if (in.read() != ' ') in.reset();
+
+            if ("data".contentEquals(field) && eventName != null && handler.isLarge(eventName)) {
+                LineStream line = new LineStream(in);
+                boolean more = handler.onLargeEvent(eventName, line);
+                line.drain();
+                if (!more) return;
+                continue;
+            }
+            String value = readLine(in);
+            if ("event".contentEquals(field)) {
+                eventName = value;
+            } else if ("data".contentEquals(field)) {
+                if (data.length() > 0) data.append('\n');
+                data.append(value);
+            }
+        }
+    }
+
+    /** Rest of the current line, without the line break. */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') line.write(c);
+        String s = new String(line.toByteArray(), StandardCharsets.UTF_8);
+        return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+    }
+
+    /** The rest of the current line of {@code in}, ending before the line break. */
+    private static final class LineStream extends InputStream {
+        private final InputStream in;
+        private boolean ended;
+
+        LineStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (ended) return -1;
+            int c = in.read();
+            if (c == -1 || c == '\n') {
+                ended = true;
+                return -1;
+            }
+            return c;
+        }
+
+        void drain() throws IOException {
+            while (read() != -1) {
+                // skip what the handler didn't read
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.storyprinter.openai;
+
+/**
+ * Client-side request budget: {@code capacity} requests may go at once, then one more per
+ * {@code 1 / perSecond} seconds. Can also be paused outright, e.g. until a rate limit resets.
+ */
+final class TokenBucket {
+
+    private double perSecond;
+    private double capacity;
+    private double tokens;
+    private long refilledAtNanos;
+    private long pausedUntilNanos;
+
+    TokenBucket(double perSecond, double capacity) {
+        this.perSecond = perSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.refilledAtNanos = System.nanoTime();
+        this.pausedUntilNanos = refilledAtNanos;
+    }
+
+    /** Takes a token and returns 0, or returns how many ms to wait before asking again. */
+    synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        refill(now);
+        if (now - pausedUntilNanos < 0) {
+            return Math.max(1, (pausedUntilNanos - now) / 1_000_000);
+        }
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / perSecond * 1000));
+    }
+
+    /** Changes the rate, keeping the tokens already saved up (up to the new capacity). */
+    synchronized void setRate(double perSecond, double capacity) {
+        refill(System.nanoTime());
+        this.perSecond = perSecond;
+        this.capacity = capacity;
+        tokens = Math.min(tokens, capacity);
+    }
+
+    /** No token is handed out for the next {@code ms}; extends, never shortens, a pause. */
+    synchronized void pauseFor(long ms) {
+        long until = System.nanoTime() + ms * 1_000_000;
+        if (until - pausedUntilNanos > 0) pausedUntilNanos = until;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - refilledAtNanos) / 1e9 * perSecond);
+        refilledAtNanos = now;
+    }
+}
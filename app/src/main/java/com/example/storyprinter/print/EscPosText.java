@@ -0,0 +1,104 @@
+package com.example.storyprinter.print;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Text in the printer's built-in font: a few hundred bytes per paragraph instead of a raster
+ * image of it.
+ */
+public final class EscPosText {
+
+    private EscPosText() {}
+
+    // Font A is 12x24 dots on common 203 dpi ESC/POS heads.
+    private static final int FONT_A_WIDTH_DOTS = 12;
+
+    /** Characters per line at {@code style}'s size on {@code profile}'s paper. */
+    public static int columns(PrinterProfile profile, TextStyle style) {
+        int dotsPerChar = Math.round(FONT_A_WIDTH_DOTS * profile.dpi / 203f) * style.scale;
+        return Math.max(1, profile.widthPx / dotsPerChar);
+    }
+
+    /**
+     * Writes {@code text} left-aligned and word-wrapped to the paper width. Leaves the printer in
+     * its normal size/weight and centred afterwards, as the job header set it up.
+     */
+    public static void write(OutputStream out, String text, TextStyle style, PrinterProfile profile) throws IOException {
+        int size = style.scale - 1;
+        out.write(new byte[]{0x1b, 0x61, 0x00}); // ESC a 0 left
+        out.write(new byte[]{0x1d, 0x21, (byte) ((size << 4) | size)}); // GS ! n width/height scale
+        out.write(new byte[]{0x1b, 0x45, (byte) (style.bold ? 1 : 0)}); // ESC E n bold
+
+        // Fold first: folding can change the length ("…" becomes "..."), and lines are measured
+        // in the characters actually printed.
+        for (String line : wrap(toPrinterCharset(text), columns(profile, style))) {
+            out.write(line.getBytes(StandardCharsets.US_ASCII));
+            out.write('\n');
+        }
+
+        out.write(new byte[]{0x1b, 0x45, 0x00}); // ESC E 0
+        out.write(new byte[]{0x1d, 0x21, 0x00}); // GS ! 0
+        out.write(new byte[]{0x1b, 0x61, 0x01}); // ESC a 1 center
+    }
+
+    /** Greedy word wrap; words longer than a line are split. Blank lines in the input are kept. */
+    public static List<String> wrap(String text, int columns) {
+        List<String> lines = new ArrayList<>();
+        if (text == null) return lines;
+        for (String paragraph : text.replace("\r", "").split("\n", -1)) {
+            StringBuilder line = new StringBuilder();
+            for (String word : paragraph.trim().split("\\s+")) {
+                if (word.isEmpty()) continue;
+                while (word.length() > columns) {
+                    if (line.length() > 0) {
+                        lines.add(line.toString());
+                        line.setLength(0);
+                    }
+                    lines.add(word.substring(0, columns));
+                    word = word.substring(columns);
+                }
+                if (line.length() > 0 && line.length() + 1 + word.length() > columns) {
+                    lines.add(line.toString());
+                    line.setLength(0);
+                }
+                if (line.length() > 0) line.append(' ');
+                line.append(word);
+            }
+            lines.add(line.toString());
+        }
+        // Trailing blank lines would only waste paper.
+        while (!lines.isEmpty() && lines.get(lines.size() - 1).isEmpty()) {
+            lines.remove(lines.size() - 1);
+        }
+        return lines;
+    }
+
+    /**
+     * Folds text to plain ASCII, which every built-in font covers: accents are dropped, typographic
+     * punctuation is replaced and anything else becomes '?'. Line breaks are kept.
+     */
+    static String toPrinterCharset(String s) {
+        if (s == null) return null;
+        String decomposed = Normalizer.normalize(s, Normalizer.Form.NFD);
+        StringBuilder out = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i += Character.charCount(decomposed.codePointAt(i))) {
+            int c = decomposed.codePointAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            switch (c) {
+                case '‘': case '’': out.append('\''); break;
+                case '“': case '”': out.append('"'); break;
+                case '–': case '—': out.append('-'); break;
+                case '…': out.append("..."); break;
+                case '\u00a0': case '\t': out.append(' '); break; // no-break space, tab
+                case '\n': case '\r': out.append((char) c); break;
+                default: out.append(c >= 0x20 && c < 0x7f ? (char) c : '?');
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.storyprinter.print;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 1-bit glyphs of one font at one pixel size, each drawn through a {@link Canvas} once and then
+ * kept packed like a {@link MonoRaster}. Laying out a page after that is only bit copies.
+ * Glyphs are per code point, unshaped; see {@link TextRasterizer#isSimple(String)}.
+ *
+ * Atlases are shared through {@link #get(Typeface, int)}; all methods are thread-safe.
+ */
+public final class GlyphAtlas {
+
+    /** A packed glyph, positioned relative to the pen on the baseline. */
+    public static final class Glyph {
+        public final int advance;
+        public final int left;   // from pen x to the first column
+        public final int top;    // from baseline to the first row, usually negative
+        public final int width;
+        public final int height;
+        final byte[] bits;       // MSB first, rows padded to whole bytes
+
+        Glyph(int advance, int left, int top, int width, int height, byte[] bits) {
+            this.advance = advance;
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+            this.bits = bits;
+        }
+
+        int bytesPerLine() {
+            return MonoRaster.bytesPerLine(width);
+        }
+    }
+
+    // Anti-aliased coverage at or above this alpha becomes a dot.
+    private static final int INK_THRESHOLD = 128;
+
+    // A story uses a couple of sizes at a time; keep a few in case settings change mid-session.
+    private static final int MAX_ATLASES = 6;
+
+    /** Atlas cache key: the same Typeface instance at the same size. */
+    private static final class Key {
+        final Typeface typeface;
+        final int sizePx;
+
+        Key(Typeface typeface, int sizePx) {
+            this.typeface = typeface;
+            this.sizePx = sizePx;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return typeface == other.typeface && sizePx == other.sizePx;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(typeface) + sizePx;
+        }
+    }
+
+    private static final Map<Key, GlyphAtlas> ATLASES = new LinkedHashMap<Key, GlyphAtlas>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, GlyphAtlas> eldest) {
+            return size() > MAX_ATLASES;
+        }
+    };
+
+    /** The shared atlas for {@code typeface} at {@code sizePx}. */
+    public static GlyphAtlas get(Typeface typeface, int sizePx) {
+        Key key = new Key(typeface, sizePx);
+        synchronized (ATLASES) {
+            GlyphAtlas atlas = ATLASES.get(key);
+            if (atlas == null) {
+                atlas = new GlyphAtlas(typeface, sizePx);
+                ATLASES.put(key, atlas);
+            }
+            return atlas;
+        }
+    }
+
+    private final Paint paint;
+    private final Map<Integer, Glyph> glyphs = new HashMap<>();
+    private final Rect bounds = new Rect();
+
+    /** Distance from the top of a line to the baseline. */
+    public final int ascent;
+    /** Baseline-to-baseline distance. */
+    public final int lineHeight;
+
+    private GlyphAtlas(Typeface typeface, int sizePx) {
+        paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTypeface(typeface);
+        paint.setTextSize(sizePx);
+        paint.setColor(Color.BLACK);
+        Paint.FontMetricsInt fm = paint.getFontMetricsInt();
+        ascent = -fm.ascent;
+        lineHeight = fm.descent - fm.ascent + fm.leading;
+    }
+
+    public synchronized Glyph glyph(int codePoint) {
+        Glyph g = glyphs.get(codePoint);
+        if (g == null) {
+            g = render(codePoint);
+            glyphs.put(codePoint, g);
+        }
+        return g;
+    }
+
+    public int advance(int codePoint) {
+        return glyph(codePoint).advance;
+    }
+
+    /** Width in pixels of {@code s} set on one line. */
+    public int measure(String s) {
+        int width = 0;
+        for (int i = 0; i < s.length(); ) {
+            int cp = s.codePointAt(i);
+            width += advance(cp);
+            i += Character.charCount(cp);
+        }
+        return width;
+    }
+
+    private Glyph render(int codePoint) {
+        String s = new String(Character.toChars(codePoint));
+        int advance = Math.round(paint.measureText(s));
+        paint.getTextBounds(s, 0, s.length(), bounds);
+        int w = bounds.width();
+        int h = bounds.height();
+        if (w <= 0 || h <= 0) {
+            // Spaces and other blanks only move the pen.
+            return new Glyph(advance, 0, 0, 0, 0, new byte[0]);
+        }
+
+        Bitmap scratch = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        new Canvas(scratch).drawText(s, -bounds.left, -bounds.top, paint);
+        int[] pixels = new int[w * h];
+        scratch.getPixels(pixels, 0, w, 0, 0, w, h);
+        scratch.recycle();
+
+        int bytesPerLine = MonoRaster.bytesPerLine(w);
+        byte[] bits = new byte[bytesPerLine * h];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                if (Color.alpha(pixels[y * w + x]) >= INK_THRESHOLD) {
+                    bits[y * bytesPerLine + (x >> 3)] |= (byte) (0x80 >>> (x & 7));
+                }
+            }
+        }
+        return new Glyph(advance, bounds.left, bounds.top, w, h, bits);
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.storyprinter.print;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Turns a picture into the black/white bitmap a printer gets: scaled to the paper, optionally
+ * tone corrected (see {@link ToneMapper}), gamma corrected, optionally sharpened, then dithered
+ * (see {@link RowDitherer}).
+ *
+ * The settings are the ones tuned in Manual mode and stored in the "image_prefs" preferences,
+ * so every print path processes images the same way.
+ */
+public final class ImageProcessor {
+
+    public static final int DITHER_ATKINSON = 0;
+    public static final int DITHER_FLOYD_STEINBERG = 1;
+    public static final int DITHER_ORDERED_8x8 = 2;
+    public static final int DITHER_NONE = 3;
+
+    public static final int TONE_NONE = 0;
+    /** Stretches the image's luminance range to full black..white. */
+    public static final int TONE_AUTO_LEVELS = 1;
+    /** Adaptive, contrast-limited equalization per region (CLAHE). */
+    public static final int TONE_CLAHE = 2;
+
+    public static final String PREFS_NAME = "image_prefs";
+    private static final String KEY_GAMMA = "gamma_progress"; // stored as int progress (10..150)
+    private static final String KEY_THRESHOLD = "threshold"; // 0..255
+    private static final String KEY_DITHER_MODE = "dither_mode"; // see DITHER_*
+    private static final String KEY_INVERT = "invert";
+    private static final String KEY_SHARPEN = "sharpen";
+    private static final String KEY_TONE = "tone"; // see TONE_*
+    private static final String KEY_FSDITHER_LEGACY = "fs_dither"; // legacy boolean for migration
+
+    public static final int DEFAULT_GAMMA_PROGRESS = 100; // => 1.00
+    public static final int DEFAULT_THRESHOLD = 128;
+
+    public final float gamma;
+    public final int threshold;
+    public final int ditherMode;
+    public final boolean invert;
+    public final boolean sharpen;
+    public final int tone;
+
+    public ImageProcessor(float gamma, int threshold, int ditherMode, boolean invert, boolean sharpen, int tone) {
+        this.gamma = gamma;
+        this.threshold = threshold;
+        this.ditherMode = ditherMode;
+        this.invert = invert;
+        this.sharpen = sharpen;
+        this.tone = tone;
+    }
+
+    /** The settings last saved from Manual mode, clamped to valid ranges. */
+    @NonNull
+    public static ImageProcessor fromPreferences(@NonNull Context context) {
+        SharedPreferences sp = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        int gammaProgress = sp.getInt(KEY_GAMMA, DEFAULT_GAMMA_PROGRESS);
+        int threshold = sp.getInt(KEY_THRESHOLD, DEFAULT_THRESHOLD);
+        int ditherMode = sp.contains(KEY_DITHER_MODE)
+                ? sp.getInt(KEY_DITHER_MODE, DITHER_ATKINSON)
+                : (sp.getBoolean(KEY_FSDITHER_LEGACY, true) ? DITHER_ATKINSON : DITHER_NONE);
+        boolean invert = sp.getBoolean(KEY_INVERT, false);
+        boolean sharpen = sp.getBoolean(KEY_SHARPEN, false);
+        int tone = sp.getInt(KEY_TONE, TONE_NONE);
+
+        // Clamp values just in case
+        if (gammaProgress < 10) gammaProgress = 10; if (gammaProgress > 150) gammaProgress = 150;
+        if (threshold < 0) threshold = 0; if (threshold > 255) threshold = 255;
+        if (ditherMode < 0 || ditherMode > 3) ditherMode = DITHER_ATKINSON;
+        if (tone < TONE_NONE || tone > TONE_CLAHE) tone = TONE_NONE;
+
+        return new ImageProcessor(gammaProgress / 100f, threshold, ditherMode, invert, sharpen, tone);
+    }
+
+    public void save(@NonNull Context context) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putInt(KEY_GAMMA, Math.round(gamma * 100f))
+                .putInt(KEY_THRESHOLD, threshold)
+                .putInt(KEY_DITHER_MODE, ditherMode)
+                .putBoolean(KEY_INVERT, invert)
+                .putBoolean(KEY_SHARPEN, sharpen)
+                .putInt(KEY_TONE, tone)
+                .apply();
+    }
+
+    /** Identifies these settings, for caching what was processed with them. */
+    public String cacheKey() {
+        return Math.round(gamma * 100f) + "/" + threshold + "/" + ditherMode + "/" + invert + "/" + sharpen + "/" + tone;
+    }
+
+    /**
+     * Decodes {@code uri} at the smallest power-of-two sample size that still covers
+     * {@code targetWidth}, so a large photo isn't decoded at full resolution only to be scaled
+     * down to the paper.
+     */
+    public static Bitmap decodeSampled(ContentResolver resolver, Uri uri, int targetWidth) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream is = resolver.openInputStream(uri)) {
+            if (is == null) throw new IOException("Cannot open image");
+            BitmapFactory.decodeStream(is, null, options);
+        }
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= targetWidth) sampleSize *= 2;
+
+        options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap;
+        try (InputStream is = resolver.openInputStream(uri)) {
+            if (is == null) throw new IOException("Cannot open image");
+            bitmap = BitmapFactory.decodeStream(is, null, options);
+        }
+        if (bitmap == null) throw new IOException("Decode failed");
+        return bitmap;
+    }
+
+    /** Black/white bitmap at most {@code profile.widthPx} wide, width padded to a multiple of 8. */
+    public Bitmap process(Bitmap original, PrinterProfile profile) {
+        // Scale to printer width if needed
+        int width = original.getWidth();
+        int height = original.getHeight();
+        if (width > profile.widthPx) {
+            float ratio = (float) profile.widthPx / width;
+            width = profile.widthPx;
+            height = Math.round(height * ratio);
+            original = Bitmap.createScaledBitmap(original, width, height, true);
+        }
+        // Pad to multiple of 8 with white
+        final int paddedWidth = (width + 7) / 8 * 8;
+        final int sourceWidth = width;
+        final Bitmap source = original;
+        final int sourceHeight = height;
+        // Tone correction looks at the whole image, so it needs all the pixels up front.
+        final int[] toned;
+        if (tone != TONE_NONE) {
+            toned = new int[width * height];
+            source.getPixels(toned, 0, width, 0, 0, width, height);
+            ToneMapper.apply(toned, width, height, tone);
+        } else {
+            toned = null;
+        }
+        final int[] row = {0};
+        RowDitherer ditherer = new RowDitherer(this, paddedWidth, argb -> {
+            if (row[0] >= sourceHeight) return false;
+            if (toned != null) {
+                System.arraycopy(toned, row[0]++ * sourceWidth, argb, 0, sourceWidth);
+            } else {
+                source.getPixels(argb, 0, sourceWidth, 0, row[0]++, sourceWidth, 1);
+            }
+            Arrays.fill(argb, sourceWidth, paddedWidth, Color.WHITE);
+            return true;
+        });
+
+        Bitmap bw = Bitmap.createBitmap(paddedWidth, height, Bitmap.Config.ARGB_8888);
+        boolean[] black = new boolean[paddedWidth];
+        int[] out = new int[paddedWidth];
+        for (int y = 0; ditherer.nextRow(black); y++) {
+            for (int x = 0; x < paddedWidth; x++) out[x] = black[x] ? Color.BLACK : Color.WHITE;
+            bw.setPixels(out, 0, paddedWidth, 0, y, paddedWidth, 1);
+        }
+        return bw;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.storyprinter.print;
+
+import android.graphics.Bitmap;
+
+/** A 1-bit image packed for GS v 0: MSB first, rows padded to whole bytes, 1 = black dot. */
+public final class MonoRaster {
+
+    public final byte[] data;
+    public final int width;
+    public final int height;
+
+    public MonoRaster(byte[] data, int width, int height) {
+        if (data.length < bytesPerLine(width) * height) {
+            throw new IllegalArgumentException("Raster data too short for " + width + "x" + height);
+        }
+        this.data = data;
+        this.width = width;
+        this.height = height;
+    }
+
+    /** Packs a black/white bitmap (see {@link ImageRasterizer#rasterizeImage(Bitmap)}). */
+    public static MonoRaster of(Bitmap bitmap) {
+        return new MonoRaster(ImageRasterizer.rasterizeImage(bitmap), bitmap.getWidth(), bitmap.getHeight());
+    }
+
+    public int bytesPerLine() {
+        return bytesPerLine(width);
+    }
+
+    static int bytesPerLine(int width) {
+        return (width + 7) / 8;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.storyprinter.print;
+
+import com.example.storyprinter.util.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes and dithers a batch of images on several cores while handing them out strictly in
+ * order. Only a small window of images runs ahead of the consumer, so memory stays bounded
+ * however long the batch is, and the printer can start on the first image while later ones are
+ * still being processed.
+ */
+public final class ParallelRasterLoader implements Closeable {
+
+    private static final String TAG = "ParallelRasterLoader";
+
+    /** Produces image {@code index}; called on a worker thread. Return null to skip it. */
+    public interface Loader {
+        MonoRaster load(int index) throws IOException;
+    }
+
+    private final int count;
+    private final Loader loader;
+    private final Logger log;
+    private final int window;
+    private final ExecutorService executor;
+    private final ArrayDeque<Future<MonoRaster>> inFlight = new ArrayDeque<>(); // guarded by this
+    private int nextToSubmit; // guarded by this
+    private int nextToReturn;
+    private volatile boolean closed;
+
+    /** Uses one worker per core, with at most twice that many images decoded ahead. */
+    public ParallelRasterLoader(int count, Loader loader) {
+        this(count, Runtime.getRuntime().availableProcessors(), loader);
+    }
+
+    public ParallelRasterLoader(int count, int threads, Loader loader) {
+        this(count, threads, loader, Logger.ANDROID);
+    }
+
+    ParallelRasterLoader(int count, int threads, Loader loader, Logger log) {
+        this.count = count;
+        this.loader = loader;
+        this.log = log;
+        int workers = Math.max(1, threads);
+        window = workers * 2;
+        executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "raster-loader");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Index of the image the last {@link #next()} returned, counting skipped ones.
+     */
+    public int lastIndex() {
+        return nextToReturn - 1;
+    }
+
+    /**
+     * The next image in order, waiting for it if needed, or null once the batch is done or
+     * closed. Images that failed to load are logged and skipped.
+     */
+    public MonoRaster next() throws InterruptedException {
+        while (true) {
+            Future<MonoRaster> future;
+            synchronized (this) {
+                if (closed) return null;
+                fill();
+                // Left queued while we wait, so close() can cancel it.
+                future = inFlight.peek();
+                if (future == null) return null;
+            }
+            MonoRaster raster = null;
+            try {
+                raster = future.get();
+            } catch (CancellationException e) {
+                return null;
+            } catch (ExecutionException e) {
+                log.w(TAG, "Skipping image " + nextToReturn, e.getCause());
+            } finally {
+                synchronized (this) {
+                    inFlight.poll();
+                    nextToReturn++;
+                }
+            }
+            if (raster != null && !closed) return raster;
+        }
+    }
+
+    // Caller holds the lock.
+    private void fill() {
+        while (inFlight.size() < window && nextToSubmit < count) {
+            final int index = nextToSubmit++;
+            inFlight.add(executor.submit(() -> loader.load(index)));
+        }
+    }
+
+    /** Whether {@link #close()} was called. */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops loading; images not yet handed out are dropped. May be called from any thread.
+     * Every queued or running load is cancelled (running ones are interrupted), so a consumer
+     * blocked in {@link #next()} gets null straight away rather than when its image is done.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            for (Future<MonoRaster> future : inFlight) future.cancel(true);
+        }
+        executor.shutdownNow();
+    }
+}
@@ -4,34 +4,240 @@ import android.util.Log;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
 
 public class PhomemoEscPosEncoder {
 
+    /** Paper advanced between images of a batch by default; see {@link PrinterProfile#mmToDots}. */
+    public static final int DEFAULT_GAP_MM = 3;
+
+    // ESC J n feeds at most 255 dots per command.
+    private static final int MAX_FEED_DOTS = 255;
+    // Rows per ESC * 33 stripe.
+    private static final int BIT_IMAGE_ROWS = 24;
+
     public static byte[] encodeImage(byte[] imageData, int width, int height) {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        return encodeImage(imageData, width, height, PrinterProfiles.DEFAULT, PrintQuality.NORMAL);
+    }
+
+    public static byte[] encodeImage(byte[] imageData, int width, int height, PrinterProfile profile,
+                                     PrintQuality quality) {
+        int bytesPerLine = (width + 7) / 8;
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(
+                bytesPerLine * height + estimateOverhead(height, bytesPerLine, profile));
         try {
-            // Initialize printer & center
-            outputStream.write(new byte[]{0x1b, 0x40}); // ESC @ reset
-            outputStream.write(new byte[]{0x1b, 0x61, 0x01}); // ESC a 1 center
-
-            int bytesPerLine = (width + 7) / 8; // width already padded to multiple of 8
-
-            // Single raster command for whole image: GS v 0 m xL xH yL yH d1..dn
-            outputStream.write(new byte[]{0x1d, 0x76, 0x30, 0x00}); // m = 0 normal density
-            byte xL = (byte) (bytesPerLine & 0xFF);
-            byte xH = (byte) ((bytesPerLine >> 8) & 0xFF);
-            byte yL = (byte) (height & 0xFF);
-            byte yH = (byte) ((height >> 8) & 0xFF);
-            outputStream.write(new byte[]{xL, xH, yL, yH});
-            // Write all raster bytes
-            outputStream.write(imageData, 0, bytesPerLine * height);
-
-            // Feed a few lines
-            outputStream.write(new byte[]{0x1b, 0x64, 0x02}); // ESC d 2
+            encodeImage(outputStream, imageData, width, height, profile, quality);
         } catch (IOException e) {
             Log.e("PhomemoEscPosEncoder", "Error encoding image", e);
         }
 
         return outputStream.toByteArray();
     }
-}
\ No newline at end of file
+
+    /** Streams the encoded job into {@code outputStream}, e.g. a print spool file. */
+    public static void encodeImage(OutputStream outputStream, byte[] imageData, int width, int height) throws IOException {
+        encodeImage(outputStream, imageData, width, height, PrinterProfiles.DEFAULT, PrintQuality.NORMAL);
+    }
+
+    /**
+     * Same as above, with the image split into bands the given printer model can buffer and the
+     * head speed/density set for {@code quality}.
+     */
+    public static void encodeImage(OutputStream outputStream, byte[] imageData, int width, int height,
+                                   PrinterProfile profile, PrintQuality quality) throws IOException {
+        writeHeader(outputStream, profile, quality);
+        writeRaster(outputStream, imageData, width, height, profile);
+        writeTrailer(outputStream);
+    }
+
+    /**
+     * Gang-prints several images as one continuous job: a single reset and final feed, with
+     * {@code gapDots} of blank paper between images. Saves the per-job reset, feed and head
+     * warm-up when printing many small labels.
+     */
+    public static byte[] encodeBatch(List<MonoRaster> rasters, int gapDots, PrinterProfile profile,
+                                     PrintQuality quality) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            encodeBatch(outputStream, rasters, gapDots, profile, quality);
+        } catch (IOException e) {
+            Log.e("PhomemoEscPosEncoder", "Error encoding batch", e);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /** Streaming variant of {@link #encodeBatch(List, int, PrinterProfile, PrintQuality)}. */
+    public static void encodeBatch(OutputStream outputStream, List<MonoRaster> rasters, int gapDots,
+                                   PrinterProfile profile, PrintQuality quality) throws IOException {
+        writeHeader(outputStream, profile, quality);
+        for (int i = 0; i < rasters.size(); i++) {
+            if (i > 0) writeFeedDots(outputStream, gapDots);
+            MonoRaster r = rasters.get(i);
+            writeRaster(outputStream, r.data, r.width, r.height, profile);
+        }
+        writeTrailer(outputStream);
+    }
+
+    /** Supplies a raster one packed row at a time (MSB first, 1 = black dot), top to bottom. */
+    public interface RowSource {
+        void nextRow(byte[] packedRow);
+    }
+
+    /**
+     * Same as {@link #encodeImage(OutputStream, byte[], int, int, PrinterProfile, PrintQuality)},
+     * with the image pulled from {@code rows} while it is written; only one band is held at a time.
+     */
+    public static void encodeRows(OutputStream outputStream, int width, int height, RowSource rows,
+                                  PrinterProfile profile, PrintQuality quality) throws IOException {
+        writeHeader(outputStream, profile, quality);
+        int bytesPerLine = (width + 7) / 8;
+        int maxBandRows = bandRows(profile);
+        byte[] band = new byte[bytesPerLine * Math.min(maxBandRows, height)];
+        byte[] row = new byte[bytesPerLine];
+        for (int top = 0; top < height; top += maxBandRows) {
+            int bandRows = Math.min(maxBandRows, height - top);
+            for (int i = 0; i < bandRows; i++) {
+                Arrays.fill(row, (byte) 0);
+                rows.nextRow(row);
+                System.arraycopy(row, 0, band, i * bytesPerLine, bytesPerLine);
+            }
+            writeBand(outputStream, profile, band, 0, bytesPerLine, bandRows);
+        }
+        writeTrailer(outputStream);
+    }
+
+    /**
+     * A story page in one job: the picture as raster (may be null) followed by {@code text} (may
+     * be null). The text goes out in the printer's built-in font where the profile
+     * {@link PrinterProfile#supportsNativeText has one}, otherwise as a raster from
+     * {@link TextRasterizer}.
+     */
+    public static void encodePage(OutputStream outputStream, MonoRaster image, String text, TextStyle style,
+                                  PrinterProfile profile, PrintQuality quality) throws IOException {
+        writeHeader(outputStream, profile, quality);
+        if (image != null) {
+            writeRaster(outputStream, image.data, image.width, image.height, profile);
+        }
+        if (text != null && !text.trim().isEmpty()) {
+            if (image != null) writeFeedDots(outputStream, profile.mmToDots(DEFAULT_GAP_MM));
+            if (profile.supportsNativeText) {
+                EscPosText.write(outputStream, text, style, profile);
+            } else {
+                MonoRaster r = TextRasterizer.render(text, style, profile);
+                writeRaster(outputStream, r.data, r.width, r.height, profile);
+            }
+        }
+        writeTrailer(outputStream);
+    }
+
+    private static void writeHeader(OutputStream outputStream, PrinterProfile profile, PrintQuality quality)
+            throws IOException {
+        // Initialize printer & center
+        outputStream.write(new byte[]{0x1b, 0x40}); // ESC @ reset
+        outputStream.write(new byte[]{0x1b, 0x61, 0x01}); // ESC a 1 center
+
+        // Head settings go after the reset, which would otherwise restore the defaults.
+        int speed = quality.speedLevel(profile);
+        if (speed >= 0) {
+            outputStream.write(profile.speedCommand);
+            outputStream.write(speed);
+        }
+        int density = quality.densityLevel(profile);
+        if (density >= 0) {
+            outputStream.write(profile.densityCommand);
+            outputStream.write(density);
+        }
+    }
+
+    /** The image in bands of at most {@link #bandRows} rows, using the profile's raster command. */
+    private static void writeRaster(OutputStream outputStream, byte[] imageData, int width, int height,
+                                    PrinterProfile profile) throws IOException {
+        int bytesPerLine = (width + 7) / 8; // width already padded to multiple of 8
+        int maxBandRows = bandRows(profile);
+        for (int row = 0; row < height; row += maxBandRows) {
+            int rows = Math.min(maxBandRows, height - row);
+            writeBand(outputStream, profile, imageData, row * bytesPerLine, bytesPerLine, rows);
+        }
+    }
+
+    /** Band height for the profile; bit-image bands are whole stripes, so stripes never straddle bands. */
+    private static int bandRows(PrinterProfile profile) {
+        if (profile.rasterCommand() == RasterCommand.GS_V_0) return profile.maxBandRows;
+        return Math.max(1, profile.maxBandRows / BIT_IMAGE_ROWS) * BIT_IMAGE_ROWS;
+    }
+
+    private static void writeBand(OutputStream outputStream, PrinterProfile profile, byte[] data, int offset,
+                                  int bytesPerLine, int rows) throws IOException {
+        if (profile.rasterCommand() == RasterCommand.GS_V_0) {
+            writeBandHeader(outputStream, bytesPerLine, rows);
+            outputStream.write(data, offset, rows * bytesPerLine);
+        } else {
+            writeBitImage(outputStream, data, offset, bytesPerLine, rows);
+        }
+    }
+
+    private static void writeBandHeader(OutputStream outputStream, int bytesPerLine, int rows) throws IOException {
+        // GS v 0 m xL xH yL yH d1..dn
+        outputStream.write(new byte[]{0x1d, 0x76, 0x30, 0x00}); // m = 0 normal density
+        byte xL = (byte) (bytesPerLine & 0xFF);
+        byte xH = (byte) ((bytesPerLine >> 8) & 0xFF);
+        byte yL = (byte) (rows & 0xFF);
+        byte yH = (byte) ((rows >> 8) & 0xFF);
+        outputStream.write(new byte[]{xL, xH, yL, yH});
+    }
+
+    /**
+     * Rows as ESC * 33 stripes: each column of a stripe is three bytes, top dot in the MSB, and
+     * ESC J advances the paper by the rows actually used so the next stripe lines up. A short last
+     * stripe is padded with white rows, which only ever overlap paper that is fed anyway.
+     */
+    private static void writeBitImage(OutputStream outputStream, byte[] data, int offset, int bytesPerLine,
+                                      int rows) throws IOException {
+        int dots = bytesPerLine * 8;
+        byte[] stripe = new byte[dots * 3];
+        for (int top = 0; top < rows; top += BIT_IMAGE_ROWS) {
+            int stripeRows = Math.min(BIT_IMAGE_ROWS, rows - top);
+            Arrays.fill(stripe, (byte) 0);
+            for (int r = 0; r < stripeRows; r++) {
+                int rowStart = offset + (top + r) * bytesPerLine;
+                int bit = 0x80 >>> (r & 7);
+                int slot = r >> 3;
+                for (int x = 0; x < dots; x++) {
+                    if ((data[rowStart + (x >> 3)] & (0x80 >>> (x & 7))) != 0) {
+                        stripe[x * 3 + slot] |= (byte) bit;
+                    }
+                }
+            }
+            // ESC * m nL nH d1..dk, m = 33 for 24-dot double density
+            outputStream.write(new byte[]{0x1b, 0x2a, 33, (byte) (dots & 0xFF), (byte) ((dots >> 8) & 0xFF)});
+            outputStream.write(stripe);
+            writeFeedDots(outputStream, stripeRows);
+        }
+    }
+
+    /** Bytes of commands around the raster data, for sizing output buffers. */
+    private static int estimateOverhead(int height, int bytesPerLine, PrinterProfile profile) {
+        if (profile.rasterCommand() == RasterCommand.GS_V_0) {
+            int bands = (height + profile.maxBandRows - 1) / profile.maxBandRows;
+            return 16 + bands * 8;
+        }
+        // Stripes round the height up to a multiple of 24 rows, plus 8 command bytes each.
+        int stripes = (height + BIT_IMAGE_ROWS - 1) / BIT_IMAGE_ROWS;
+        return 16 + stripes * 8 + (stripes * BIT_IMAGE_ROWS - height) * bytesPerLine;
+    }
+
+    private static void writeFeedDots(OutputStream outputStream, int dots) throws IOException {
+        while (dots > 0) {
+            int n = Math.min(dots, MAX_FEED_DOTS);
+            outputStream.write(new byte[]{0x1b, 0x4a, (byte) n}); // ESC J n
+            dots -= n;
+        }
+    }
+
+    private static void writeTrailer(OutputStream outputStream) throws IOException {
+        // Feed a few lines
+        outputStream.write(new byte[]{0x1b, 0x64, 0x02}); // ESC d 2
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.storyprinter.print;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.LongSupplier;
+
+/**
+ * One entry in the {@link PrintQueue}: an encoded ESC/POS payload plus its live progress.
+ *
+ * The payload is either held in memory or lives in a {@link PrintSpool} file.
+ * Progress fields are written by the queue's writer thread and read from anywhere.
+ */
+public final class PrintJob {
+
+    public enum State { QUEUED, PRINTING, DONE, FAILED, CANCELLED }
+
+    public final long id;
+    public final String label;
+    public final int copies;
+    /** Bluetooth address of the printer this job must print on, or null for the first idle one. */
+    public final String printerAddress;
+    private final byte[] data;
+    final PrintSpool.Entry spoolEntry;
+    private final long payloadSize;
+    private final LongSupplier uptimeClock;
+
+    private volatile State state = State.QUEUED;
+    private volatile long bytesSent;
+    private volatile int copiesDone;
+    private volatile long startedAtUptimeMs;
+    private volatile long bytesSentAtStart;
+    private volatile long finishedAtUptimeMs;
+    private volatile String error;
+    private volatile String printedOn;
+    volatile boolean cancelRequested;
+
+    PrintJob(long id, String label, byte[] data, int copies, String printerAddress, LongSupplier uptimeClock) {
+        this.id = id;
+        this.label = label;
+        this.printerAddress = printerAddress;
+        this.data = data;
+        this.spoolEntry = null;
+        this.payloadSize = data.length;
+        this.copies = Math.max(1, copies);
+        this.uptimeClock = uptimeClock;
+    }
+
+    PrintJob(long id, PrintSpool.Entry spoolEntry, LongSupplier uptimeClock) {
+        this.id = id;
+        this.label = spoolEntry.label;
+        this.printerAddress = spoolEntry.printerAddress;
+        this.data = null;
+        this.spoolEntry = spoolEntry;
+        this.payloadSize = spoolEntry.payloadSize();
+        this.copies = spoolEntry.copies;
+        this.copiesDone = spoolEntry.copiesDone;
+        this.bytesSent = payloadSize * copiesDone;
+        this.uptimeClock = uptimeClock;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isFinished() {
+        State s = state;
+        return s == State.DONE || s == State.FAILED || s == State.CANCELLED;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    /** Address of the printer that picked the job up last, or null before it started. */
+    public String getPrintedOn() {
+        return printedOn;
+    }
+
+    public int getCopiesDone() {
+        return copiesDone;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getTotalBytes() {
+        return payloadSize * copies;
+    }
+
+    public int getProgressPercent() {
+        long total = getTotalBytes();
+        return total == 0 ? 100 : (int) (bytesSent * 100 / total);
+    }
+
+    /** Average transfer rate since the job started, or 0 before it started. */
+    public double getBytesPerSecond() {
+        long start = startedAtUptimeMs;
+        if (start == 0L) return 0;
+        long end = finishedAtUptimeMs != 0L ? finishedAtUptimeMs : uptimeClock.getAsLong();
+        long elapsed = Math.max(1L, end - start);
+        return (bytesSent - bytesSentAtStart) * 1000.0 / elapsed;
+    }
+
+    /**
+     * Error message for {@link State#FAILED} jobs, or why a {@link State#QUEUED} job that already
+     * started is waiting (e.g. the printer ran out of paper). Null otherwise.
+     */
+    public String getError() {
+        return error;
+    }
+
+    long getPayloadSize() {
+        return payloadSize;
+    }
+
+    /** A fresh read view of the payload for one copy. */
+    ByteBuffer openPayload(PrintSpool spool) throws IOException {
+        return data != null ? ByteBuffer.wrap(data) : spool.map(spoolEntry);
+    }
+
+    void markStarted(String printerAddress) {
+        printedOn = printerAddress;
+        bytesSentAtStart = bytesSent;
+        startedAtUptimeMs = uptimeClock.getAsLong();
+        state = State.PRINTING;
+    }
+
+    void setProgress(long bytesSent, int copiesDone) {
+        this.bytesSent = bytesSent;
+        this.copiesDone = copiesDone;
+    }
+
+    /** Puts a started job back in line; printing restarts at the first unfinished copy. */
+    void markRequeued(String reason) {
+        this.error = reason;
+        this.bytesSent = payloadSize * copiesDone;
+        state = State.QUEUED;
+    }
+
+    void markFinished(State finalState, String error) {
+        this.error = error;
+        finishedAtUptimeMs = uptimeClock.getAsLong();
+        state = finalState;
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.storyprinter.print;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.example.storyprinter.metrics.LatencyMetrics;
+
+/**
+ * Latency figures kept on the device. Each sample is also logged under the "PrintMetrics" tag,
+ * e.g. {@code adb logcat -s PrintMetrics}.
+ */
+public final class PrintMetrics {
+
+    private static final LatencyMetrics METRICS = new LatencyMetrics("PrintMetrics", "print_metrics");
+
+    private PrintMetrics() {
+        // no instances
+    }
+
+    /** Records the time from an image being shared to its job being completely sent. */
+    public static void recordTimeToPaper(@NonNull Context context, long millis) {
+        METRICS.record(context, "time_to_paper", millis, "");
+    }
+}
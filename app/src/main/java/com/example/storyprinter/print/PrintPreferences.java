@@ -0,0 +1,84 @@
+package com.example.storyprinter.print;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Stores printing options that apply to every print, whichever mode it comes from.
+ */
+public final class PrintPreferences {
+
+    private static final String PREFS_NAME = "print_settings";
+
+    private static final String KEY_QUALITY = "quality";
+    private static final String KEY_PRINTER_MODEL = "printer_model";
+    private static final String KEY_TEXT_SCALE = "text_scale";
+    private static final String KEY_TEXT_BOLD = "text_bold";
+    private static final String KEY_STORY_AUTO_PRINT = "story_auto_print";
+
+    private PrintPreferences() {
+        // no instances
+    }
+
+    @NonNull
+    public static PrintQuality getQuality(@NonNull Context context) {
+        SharedPreferences sp = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        return PrintQuality.fromName(sp.getString(KEY_QUALITY, PrintQuality.NORMAL.name()));
+    }
+
+    public static void setQuality(@NonNull Context context, @NonNull PrintQuality quality) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString(KEY_QUALITY, quality.name())
+                .apply();
+    }
+
+    /** The model chosen by the user, or null to detect it from the Bluetooth device name. */
+    @Nullable
+    public static PrinterProfile getPrinterModelOverride(@NonNull Context context) {
+        SharedPreferences sp = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String id = sp.getString(KEY_PRINTER_MODEL, null);
+        return id != null ? PrinterProfiles.byId(id) : null;
+    }
+
+    public static void setPrinterModelOverride(@NonNull Context context, @Nullable PrinterProfile profile) {
+        SharedPreferences.Editor editor = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit();
+        if (profile == null) {
+            editor.remove(KEY_PRINTER_MODEL);
+        } else {
+            editor.putString(KEY_PRINTER_MODEL, profile.id);
+        }
+        editor.apply();
+    }
+
+    @NonNull
+    public static TextStyle getTextStyle(@NonNull Context context) {
+        SharedPreferences sp = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        return new TextStyle(sp.getInt(KEY_TEXT_SCALE, TextStyle.DEFAULT.scale),
+                sp.getBoolean(KEY_TEXT_BOLD, TextStyle.DEFAULT.bold));
+    }
+
+    public static void setTextStyle(@NonNull Context context, @NonNull TextStyle style) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putInt(KEY_TEXT_SCALE, style.scale)
+                .putBoolean(KEY_TEXT_BOLD, style.bold)
+                .apply();
+    }
+
+    /** Whether Story mode queues every page for printing as soon as its image arrives. */
+    public static boolean isStoryAutoPrint(@NonNull Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .getBoolean(KEY_STORY_AUTO_PRINT, false);
+    }
+
+    public static void setStoryAutoPrint(@NonNull Context context, boolean enabled) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putBoolean(KEY_STORY_AUTO_PRINT, enabled)
+                .apply();
+    }
+}
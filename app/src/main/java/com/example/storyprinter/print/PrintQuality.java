@@ -0,0 +1,44 @@
+package com.example.storyprinter.print;
+
+/**
+ * Trade-off between print speed and darkness, sent as head speed/density commands in the job
+ * header on printers whose {@link PrinterProfile} supports them.
+ */
+public enum PrintQuality {
+    /** Fastest line speed and light heating, for quick proofs. */
+    DRAFT("Draft", 1f, 0.3f),
+    /** Leaves the printer's own settings alone. */
+    NORMAL("Normal", -1f, -1f),
+    /** Slow feed and strong heating for dense, even blacks. */
+    QUALITY("Quality", 0f, 0.8f);
+
+    public final String label;
+    // Position within the profile's speed/density range (0 = min, 1 = max); negative = don't send.
+    private final float speed;
+    private final float density;
+
+    PrintQuality(String label, float speed, float density) {
+        this.label = label;
+        this.speed = speed;
+        this.density = density;
+    }
+
+    /** Speed level for {@code profile}, or -1 if no speed command should be sent. */
+    public int speedLevel(PrinterProfile profile) {
+        if (speed < 0 || !profile.supportsSpeed()) return -1;
+        return profile.minSpeed + Math.round(speed * (profile.maxSpeed - profile.minSpeed));
+    }
+
+    /** Density level for {@code profile}, or -1 if no density command should be sent. */
+    public int densityLevel(PrinterProfile profile) {
+        if (density < 0 || !profile.supportsDensity()) return -1;
+        return profile.minDensity + Math.round(density * (profile.maxDensity - profile.minDensity));
+    }
+
+    public static PrintQuality fromName(String name) {
+        for (PrintQuality q : values()) {
+            if (q.name().equals(name)) return q;
+        }
+        return NORMAL;
+    }
+}
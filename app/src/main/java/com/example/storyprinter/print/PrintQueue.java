@@ -0,0 +1,536 @@
+package com.example.storyprinter.print;
+
+import android.os.SystemClock;
+
+import com.example.storyprinter.bluetooth.BluetoothConnectionManager;
+import com.example.storyprinter.bluetooth.PrinterPool;
+import com.example.storyprinter.bluetooth.PrinterStatus;
+import com.example.storyprinter.bluetooth.PrinterStatusException;
+import com.example.storyprinter.util.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+/**
+ * FIFO of print jobs drained by one writer thread per printer in a {@link PrinterPool},
+ * optionally backed by a {@link PrintSpool} so jobs survive process death and are picked up
+ * again on the next start.
+ *
+ * Jobs without a target printer go to whichever printer is free first, so a batch spreads across
+ * the pool; {@link #enqueueMirrored} instead queues the job once for every printer.
+ *
+ * Jobs wait while their printer is disconnected. When a printer stops a job (paper out, cover
+ * open) or its connection drops mid-job, that job goes back to the head of the queue and that
+ * printer pauses, so the remaining jobs aren't burnt through one failed pre-flight check after
+ * another; another printer may take the job over meanwhile. A paused printer resumes once it
+ * reports it is ready again, or on {@link #resume()}. Printing picks up again at the first copy
+ * that wasn't completely sent.
+ *
+ * A running job can be cancelled; it stops after the copy being printed, since an ESC/POS raster
+ * command cut short would swallow whatever is sent next.
+ */
+public final class PrintQueue {
+
+    private static final String TAG = "PrintQueue";
+
+    /** Progress events are throttled to this interval per job (state changes are always sent). */
+    private static final long PROGRESS_EVENT_INTERVAL_MS = 100L;
+
+    /** Called on a writer thread (progress) or the caller's thread (enqueue/cancel/move). */
+    public interface Listener {
+        void onJobChanged(PrintJob job);
+    }
+
+    /** One printer's writer thread and the state it owns. Fields are guarded by {@link #lock}. */
+    private final class Worker {
+        final PrinterPool.Printer printer;
+        final Thread thread;
+        PrintJob current;
+        boolean paused;
+        boolean stopped;
+
+        Worker(PrinterPool.Printer printer) {
+            this.printer = printer;
+            thread = new Thread(() -> writerLoop(this), "print-queue-writer-" + printer.address);
+            thread.setDaemon(true);
+        }
+    }
+
+    private final PrinterPool pool;
+    private final PrintSpool spool; // null: jobs are kept in memory only
+    private final Logger log;
+    private final LongSupplier uptimeClock;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Object lock = new Object();
+    private final List<PrintJob> pending = new ArrayList<>(); // guarded by lock
+    private final Map<String, Worker> workers = new HashMap<>(); // guarded by lock
+    private boolean shutdown; // guarded by lock
+    private long nextId = 1; // guarded by lock
+
+    private final PrinterPool.StatusListener statusListener = (printer, status) -> {
+        if (!status.isBlocking() && !status.overheated) resume(printer.address);
+    };
+
+    private final PrinterPool.Listener poolListener = this::syncWorkers;
+
+    public PrintQueue(PrinterPool pool) {
+        this(pool, null);
+    }
+
+    /** Jobs are written to {@code spool}; jobs left there by a previous run are queued first. */
+    public PrintQueue(PrinterPool pool, PrintSpool spool) {
+        this(pool, spool, Logger.ANDROID, SystemClock::uptimeMillis);
+    }
+
+    PrintQueue(PrinterPool pool, PrintSpool spool, Logger log, LongSupplier uptimeClock) {
+        this.pool = pool;
+        this.spool = spool;
+        this.log = log;
+        this.uptimeClock = uptimeClock;
+        pool.addStatusListener(statusListener);
+        pool.addListener(poolListener);
+        restoreSpooled();
+        syncWorkers();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Appends an encoded ESC/POS job for the first free printer; it is sent {@code copies} times
+     * back to back. With a spool the payload is written to disk first, so call this off the main thread.
+     */
+    public PrintJob enqueue(String label, byte[] escpos, int copies) {
+        if (spool != null) {
+            try {
+                return enqueue(label, copies, out -> out.write(escpos));
+            } catch (IOException e) {
+                log.w(TAG, "Couldn't spool job, keeping it in memory", e);
+            }
+        }
+        return add(id -> new PrintJob(id, label, escpos, copies, null, uptimeClock));
+    }
+
+    /**
+     * Appends a job for the first free printer whose payload is streamed by {@code writer}
+     * straight into the spool, so it never has to be held on the heap in one piece.
+     * Call off the main thread.
+     *
+     * @throws IOException if the job couldn't be written to disk.
+     */
+    public PrintJob enqueue(String label, int copies, PrintSpool.PayloadWriter writer) throws IOException {
+        return enqueueOn(null, label, copies, writer);
+    }
+
+    /** Like {@link #enqueue(String, int, PrintSpool.PayloadWriter)}, for one printer only (null: any). */
+    public PrintJob enqueueOn(String printerAddress, String label, int copies, PrintSpool.PayloadWriter writer)
+            throws IOException {
+        if (spool == null) throw new IllegalStateException("PrintQueue has no spool");
+        PrintSpool.Entry entry = spool.create(label, copies, printerAddress, writer);
+        return add(id -> new PrintJob(id, entry, uptimeClock));
+    }
+
+    /**
+     * Queues the same job once for every connected printer, so each prints it in full.
+     * Falls back to a single job for any printer when none is connected yet.
+     */
+    public List<PrintJob> enqueueMirrored(String label, int copies, PrintSpool.PayloadWriter writer)
+            throws IOException {
+        List<PrinterPool.Printer> printers = pool.getConnectedPrinters();
+        List<PrintJob> jobs = new ArrayList<>();
+        if (printers.isEmpty()) {
+            jobs.add(enqueue(label, copies, writer));
+            return jobs;
+        }
+        if (spool == null) throw new IllegalStateException("PrintQueue has no spool");
+        // Encode once; the other printers get a copy of the spooled payload.
+        PrintSpool.Entry first = spool.create(label, copies, printers.get(0).address, writer);
+        List<PrintSpool.Entry> entries = new ArrayList<>();
+        entries.add(first);
+        for (int i = 1; i < printers.size(); i++) {
+            entries.add(spool.duplicate(first, printers.get(i).address));
+        }
+        for (PrintSpool.Entry entry : entries) {
+            jobs.add(add(id -> new PrintJob(id, entry, uptimeClock)));
+        }
+        return jobs;
+    }
+
+    private interface JobFactory {
+        PrintJob create(long id);
+    }
+
+    private PrintJob add(JobFactory factory) {
+        PrintJob job;
+        synchronized (lock) {
+            job = factory.create(nextId++);
+            pending.add(job);
+            // A new job is an explicit request to print, so retry after a printer error.
+            for (Worker w : workers.values()) w.paused = false;
+            lock.notifyAll();
+        }
+        notifyChanged(job);
+        return job;
+    }
+
+    /**
+     * Cancels a job. Queued jobs are dropped immediately; a running job stops after its current copy.
+     * Returns false if the job is unknown or already finished.
+     */
+    public boolean cancel(long jobId) {
+        PrintJob cancelled = null;
+        synchronized (lock) {
+            // Queue first: a job that was just put back is still its worker's current job for a moment.
+            for (int i = 0; i < pending.size(); i++) {
+                if (pending.get(i).id == jobId) {
+                    cancelled = pending.remove(i);
+                    cancelled.cancelRequested = true;
+                    cancelled.markFinished(PrintJob.State.CANCELLED, null);
+                    release(cancelled);
+                    break;
+                }
+            }
+            if (cancelled == null) {
+                for (Worker w : workers.values()) {
+                    if (w.current != null && w.current.id == jobId) {
+                        w.current.cancelRequested = true;
+                        cancelled = w.current;
+                        break;
+                    }
+                }
+            }
+        }
+        if (cancelled != null) notifyChanged(cancelled);
+        return cancelled != null;
+    }
+
+    /** Cancels the running jobs and everything queued behind them. */
+    public void cancelAll() {
+        List<PrintJob> changed = new ArrayList<>();
+        synchronized (lock) {
+            for (PrintJob job : pending) {
+                job.cancelRequested = true;
+                job.markFinished(PrintJob.State.CANCELLED, null);
+                release(job);
+                changed.add(job);
+            }
+            pending.clear();
+            for (Worker w : workers.values()) {
+                if (w.current != null && !w.current.isFinished()) {
+                    w.current.cancelRequested = true;
+                    changed.add(w.current);
+                }
+            }
+        }
+        for (PrintJob job : changed) notifyChanged(job);
+    }
+
+    /**
+     * Moves a queued (not yet printing) job to {@code newIndex} among the queued jobs.
+     * Returns false if the job isn't queued.
+     */
+    public boolean move(long jobId, int newIndex) {
+        PrintJob moved = null;
+        synchronized (lock) {
+            for (int i = 0; i < pending.size(); i++) {
+                if (pending.get(i).id == jobId) {
+                    moved = pending.remove(i);
+                    int target = Math.max(0, Math.min(newIndex, pending.size()));
+                    pending.add(target, moved);
+                    break;
+                }
+            }
+        }
+        if (moved != null) notifyChanged(moved);
+        return moved != null;
+    }
+
+    /** The running jobs (if any) followed by the queued jobs in print order. */
+    public List<PrintJob> snapshot() {
+        synchronized (lock) {
+            List<PrintJob> jobs = new ArrayList<>(pending.size() + workers.size());
+            for (Worker w : workers.values()) {
+                if (w.current != null) jobs.add(w.current);
+            }
+            jobs.addAll(pending);
+            return jobs;
+        }
+    }
+
+    public boolean isIdle() {
+        synchronized (lock) {
+            if (!pending.isEmpty()) return false;
+            for (Worker w : workers.values()) {
+                if (w.current != null) return false;
+            }
+            return true;
+        }
+    }
+
+    /** True if any printer is holding off after an error. */
+    public boolean isPaused() {
+        synchronized (lock) {
+            for (Worker w : workers.values()) {
+                if (w.paused) return true;
+            }
+            return false;
+        }
+    }
+
+    /** Number of printers currently sending a job. */
+    public int getActivePrinterCount() {
+        synchronized (lock) {
+            int n = 0;
+            for (Worker w : workers.values()) {
+                if (w.current != null) n++;
+            }
+            return n;
+        }
+    }
+
+    /** Combined transfer rate of all running jobs, i.e. the throughput of the whole pool. */
+    public double getBytesPerSecond() {
+        double total = 0;
+        for (PrintJob job : snapshot()) {
+            if (job.getState() == PrintJob.State.PRINTING) total += job.getBytesPerSecond();
+        }
+        return total;
+    }
+
+    /** Clears pauses caused by printer errors and re-checks the connections. */
+    public void resume() {
+        synchronized (lock) {
+            for (Worker w : workers.values()) w.paused = false;
+            lock.notifyAll();
+        }
+    }
+
+    private void resume(String printerAddress) {
+        synchronized (lock) {
+            Worker w = workers.get(printerAddress);
+            if (w == null) return;
+            w.paused = false;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops the writer threads after the copies being printed. Spooled jobs stay on disk and are
+     * picked up by the next queue using the same spool; jobs held only in memory are cancelled.
+     */
+    public void shutdown() {
+        pool.removeStatusListener(statusListener);
+        pool.removeListener(poolListener);
+        List<PrintJob> changed = new ArrayList<>();
+        synchronized (lock) {
+            shutdown = true;
+            for (Worker w : workers.values()) {
+                if (w.current != null && w.current.spoolEntry == null) {
+                    w.current.cancelRequested = true;
+                }
+            }
+            for (int i = pending.size() - 1; i >= 0; i--) {
+                PrintJob job = pending.get(i);
+                if (job.spoolEntry == null) {
+                    pending.remove(i);
+                    job.markFinished(PrintJob.State.CANCELLED, null);
+                    changed.add(job);
+                }
+            }
+            lock.notifyAll();
+        }
+        for (PrintJob job : changed) notifyChanged(job);
+    }
+
+    /**
+     * Starts a writer for every printer that joined the pool and stops those of printers that
+     * left, then wakes the rest in case their printer reconnected. Jobs bound to a printer that
+     * left are cancelled; the rest stay for the other printers.
+     */
+    private void syncWorkers() {
+        List<PrinterPool.Printer> printers = pool.getPrinters();
+        List<PrintJob> changed = new ArrayList<>();
+        synchronized (lock) {
+            if (shutdown) return;
+            Map<String, Worker> gone = new HashMap<>(workers);
+            for (PrinterPool.Printer p : printers) {
+                if (gone.remove(p.address) != null) continue;
+                Worker w = new Worker(p);
+                workers.put(p.address, w);
+                w.thread.start();
+            }
+            for (Worker w : gone.values()) {
+                String address = w.printer.address;
+                w.stopped = true;
+                workers.remove(address);
+                if (w.current != null && address.equals(w.current.printerAddress)) {
+                    w.current.cancelRequested = true;
+                }
+                for (int i = pending.size() - 1; i >= 0; i--) {
+                    PrintJob job = pending.get(i);
+                    if (address.equals(job.printerAddress)) {
+                        pending.remove(i);
+                        job.markFinished(PrintJob.State.CANCELLED, null);
+                        release(job);
+                        changed.add(job);
+                    }
+                }
+            }
+            lock.notifyAll();
+        }
+        for (PrintJob job : changed) notifyChanged(job);
+    }
+
+    private void writerLoop(Worker worker) {
+        BluetoothConnectionManager connection = worker.printer.connection;
+        while (true) {
+            PrintJob job;
+            synchronized (lock) {
+                while (true) {
+                    if (shutdown || worker.stopped) return;
+                    job = worker.paused || !connection.isConnected() ? null : takeJob(worker.printer.address);
+                    if (job != null) break;
+                    try {
+                        // Woken by new jobs, resume(), and the pool when a printer joins, leaves or reconnects.
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                worker.current = job;
+            }
+
+            runJob(worker, job);
+
+            synchronized (lock) {
+                worker.current = null;
+                // Another printer may be able to take over a job this one put back.
+                lock.notifyAll();
+            }
+            if (job.isFinished()) release(job);
+            notifyChanged(job);
+        }
+    }
+
+    /** Removes and returns the first queued job this printer may print. Caller holds {@link #lock}. */
+    private PrintJob takeJob(String printerAddress) {
+        for (int i = 0; i < pending.size(); i++) {
+            PrintJob job = pending.get(i);
+            if (job.printerAddress == null || job.printerAddress.equals(printerAddress)) {
+                return pending.remove(i);
+            }
+        }
+        return null;
+    }
+
+    private void restoreSpooled() {
+        if (spool == null) return;
+        List<PrintJob> restored = new ArrayList<>();
+        synchronized (lock) {
+            for (PrintSpool.Entry entry : spool.loadPending()) {
+                restored.add(new PrintJob(nextId++, entry, uptimeClock));
+            }
+            pending.addAll(0, restored);
+        }
+        if (!restored.isEmpty()) log.i(TAG, "Restored " + restored.size() + " spooled job(s)");
+        for (PrintJob job : restored) notifyChanged(job);
+    }
+
+    private void runJob(Worker worker, PrintJob job) {
+        PrinterPool.Printer printer = worker.printer;
+        job.markStarted(printer.address);
+        notifyChanged(job);
+
+        final long[] lastEventAt = {0L};
+        final long payloadSize = job.getPayloadSize();
+        try {
+            for (int copy = job.getCopiesDone(); copy < job.copies; copy++) {
+                if (job.cancelRequested) break;
+                if (isStopped(worker)) {
+                    requeue(worker, job, "Stopped", false);
+                    return;
+                }
+                ByteBuffer payload = job.openPayload(spool);
+                final long base = (long) copy * payloadSize;
+                final int copyIndex = copy;
+                printer.connection.sendJob(payload, (sent, total) -> {
+                    job.setProgress(base + sent, copyIndex);
+                    long now = uptimeClock.getAsLong();
+                    if (now - lastEventAt[0] >= PROGRESS_EVENT_INTERVAL_MS) {
+                        lastEventAt[0] = now;
+                        notifyChanged(job);
+                    }
+                });
+                job.setProgress(base + payloadSize, copy + 1);
+                if (job.spoolEntry != null) spool.markProgress(job.spoolEntry, copy + 1);
+            }
+            job.markFinished(job.cancelRequested && job.getCopiesDone() < job.copies
+                    ? PrintJob.State.CANCELLED
+                    : PrintJob.State.DONE, null);
+            log.i(TAG, "Job " + job.id + " finished on " + printer.address + ": " + job.getBytesSent()
+                    + " bytes at " + Math.round(job.getBytesPerSecond()) + " B/s");
+        } catch (PrinterStatusException e) {
+            PrinterStatus status = e.status;
+            log.w(TAG, "Job " + job.id + " stopped by " + printer.address + ": " + status);
+            if (job.cancelRequested) {
+                job.markFinished(PrintJob.State.CANCELLED, null);
+                return;
+            }
+            requeue(worker, job, printer.displayName() + ": " + status.describe() + " - waiting", true);
+        } catch (IOException e) {
+            if (!printer.isConnected() && !job.cancelRequested) {
+                requeue(worker, job, printer.displayName() + " disconnected - waiting", true);
+                log.w(TAG, "Job " + job.id + " interrupted by disconnect", e);
+                return;
+            }
+            job.markFinished(PrintJob.State.FAILED, e.getMessage() != null ? e.getMessage() : e.toString());
+            log.e(TAG, "Job " + job.id + " failed", e);
+        }
+    }
+
+    /**
+     * Puts an interrupted job back at the head of the queue; with {@code pause} the printer that
+     * was running it holds off until it is resumed.
+     */
+    private void requeue(Worker worker, PrintJob job, String reason, boolean pause) {
+        synchronized (lock) {
+            if (job.cancelRequested) {
+                job.markFinished(PrintJob.State.CANCELLED, null);
+                return;
+            }
+            job.markRequeued(reason);
+            pending.add(0, job);
+            if (pause) worker.paused = true;
+        }
+    }
+
+    private boolean isStopped(Worker worker) {
+        synchronized (lock) {
+            return shutdown || worker.stopped;
+        }
+    }
+
+    /** Drops the spool files of a job that won't be printed (again). */
+    private void release(PrintJob job) {
+        if (job.spoolEntry != null) spool.delete(job.spoolEntry);
+    }
+
+    private void notifyChanged(PrintJob job) {
+        for (Listener l : listeners) {
+            l.onJobChanged(job);
+        }
+    }
+}
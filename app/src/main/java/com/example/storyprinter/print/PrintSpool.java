@@ -0,0 +1,287 @@
+package com.example.storyprinter.print;
+
+import com.example.storyprinter.util.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * On-disk store for encoded print jobs, so queued output survives process death.
+ *
+ * Each job is two files in the spool directory:
+ * - {@code <seq>.bin}: the ESC/POS payload, written sequentially and read back memory-mapped.
+ * - {@code <seq>.meta}: label, copy count, copies already printed and the target printer, if any.
+ *
+ * The payload is synced to disk before the meta file is written (and replaced atomically), so a
+ * job without one was never completely spooled and is discarded on load. The meta file also
+ * records the payload size, so a payload cut short by a crash is never replayed to a printer.
+ * The directory is synced after each rename where the platform allows it; where it doesn't, a
+ * crash right after spooling may lose the job, but never leaves a half-written one.
+ */
+public final class PrintSpool {
+
+    private static final String TAG = "PrintSpool";
+
+    private static final String EXT_PAYLOAD = ".bin";
+    private static final String EXT_META = ".meta";
+    private static final String EXT_TMP = ".tmp";
+
+    private static final String META_LABEL = "label";
+    private static final String META_COPIES = "copies";
+    private static final String META_COPIES_DONE = "copies_done";
+    private static final String META_PRINTER = "printer";
+    private static final String META_SIZE = "size";
+
+    /** Streams a job's bytes into the spool file. */
+    public interface PayloadWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /** A job stored in the spool. Immutable apart from the persisted copy counter. */
+    public static final class Entry {
+        public final long sequence;
+        public final String label;
+        public final int copies;
+        /** Bluetooth address of the printer this job must go to, or null for any printer. */
+        public final String printerAddress;
+        final File payload;
+        final File meta;
+        /** Payload length when it was spooled. */
+        final long size;
+        volatile int copiesDone;
+
+        Entry(long sequence, String label, int copies, int copiesDone, String printerAddress,
+              File payload, File meta, long size) {
+            this.sequence = sequence;
+            this.label = label;
+            this.copies = copies;
+            this.copiesDone = copiesDone;
+            this.printerAddress = printerAddress;
+            this.payload = payload;
+            this.meta = meta;
+            this.size = size;
+        }
+
+        public long payloadSize() {
+            return size;
+        }
+    }
+
+    private final File dir;
+    private final Logger log;
+    private volatile boolean dirSyncUnsupported;
+    private long nextSequence = -1; // guarded by this; lazily initialised from existing files
+
+    public PrintSpool(File dir) {
+        this(dir, Logger.ANDROID);
+    }
+
+    PrintSpool(File dir, Logger log) {
+        this.dir = dir;
+        this.log = log;
+    }
+
+    /** Writes a new job for any printer to disk. Call off the main thread. */
+    public Entry create(String label, int copies, PayloadWriter writer) throws IOException {
+        return create(label, copies, null, writer);
+    }
+
+    /** Writes a new job to disk, optionally bound to one printer. Call off the main thread. */
+    public Entry create(String label, int copies, String printerAddress, PayloadWriter writer) throws IOException {
+        ensureDir();
+        long seq = allocateSequence();
+        File payload = new File(dir, seq + EXT_PAYLOAD);
+        File meta = new File(dir, seq + EXT_META);
+
+        try (FileOutputStream file = new FileOutputStream(payload);
+             OutputStream out = new BufferedOutputStream(file, 16 * 1024)) {
+            writer.write(out);
+            out.flush();
+            // On disk before the meta file says the job is complete.
+            file.getFD().sync();
+        } catch (IOException | RuntimeException e) {
+            //noinspection ResultOfMethodCallIgnored
+            payload.delete();
+            throw e;
+        }
+
+        Entry entry = new Entry(seq, label != null ? label : "", Math.max(1, copies), 0, printerAddress,
+                payload, meta, payload.length());
+        writeMeta(entry);
+        return entry;
+    }
+
+    /** Copies an entry's payload into a new job for {@code printerAddress}, e.g. to mirror it. */
+    public Entry duplicate(Entry source, String printerAddress) throws IOException {
+        return create(source.label, source.copies, printerAddress, out -> {
+            try (InputStream in = new FileInputStream(source.payload)) {
+                byte[] buf = new byte[16 * 1024];
+                int n;
+                while ((n = in.read(buf)) != -1) out.write(buf, 0, n);
+            }
+        });
+    }
+
+    /**
+     * Jobs left over from a previous run, oldest first. Incomplete or unreadable entries are removed,
+     * as are stray files a crash left behind, so call this before spooling new jobs.
+     */
+    public List<Entry> loadPending() {
+        List<Entry> entries = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files == null) return entries;
+
+        for (File f : files) {
+            String name = f.getName();
+            if (name.endsWith(EXT_TMP)
+                    || name.endsWith(EXT_META) && !new File(dir, stripExtension(name) + EXT_PAYLOAD).exists()) {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+                continue;
+            }
+            if (!name.endsWith(EXT_PAYLOAD)) continue;
+            long seq;
+            try {
+                seq = Long.parseLong(name.substring(0, name.length() - EXT_PAYLOAD.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            File meta = new File(dir, seq + EXT_META);
+            Entry entry = readEntry(seq, f, meta);
+            if (entry == null || entry.copiesDone >= entry.copies) {
+                deleteFiles(f, meta);
+                continue;
+            }
+            entries.add(entry);
+        }
+        Collections.sort(entries, (a, b) -> Long.compare(a.sequence, b.sequence));
+        return entries;
+    }
+
+    /** Maps the payload read-only, so large jobs are paged in from disk instead of held on the heap. */
+    public ByteBuffer map(Entry entry) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(entry.payload, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed.
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /** Persists how many copies have been fully printed. */
+    public void markProgress(Entry entry, int copiesDone) {
+        entry.copiesDone = copiesDone;
+        try {
+            writeMeta(entry);
+        } catch (IOException e) {
+            log.w(TAG, "Couldn't persist progress for job " + entry.sequence, e);
+        }
+    }
+
+    public void delete(Entry entry) {
+        deleteFiles(entry.payload, entry.meta);
+    }
+
+    private Entry readEntry(long seq, File payload, File meta) {
+        if (!meta.isFile()) return null;
+        Properties p = new Properties();
+        try (InputStream in = new FileInputStream(meta)) {
+            p.load(in);
+            int copies = Integer.parseInt(p.getProperty(META_COPIES, "1"));
+            int copiesDone = Integer.parseInt(p.getProperty(META_COPIES_DONE, "0"));
+            long size = Long.parseLong(p.getProperty(META_SIZE, "-1"));
+            if (size < 0 || payload.length() != size) {
+                log.w(TAG, "Dropping spool entry " + seq + ": payload is " + payload.length()
+                        + " bytes, expected " + size);
+                return null;
+            }
+            return new Entry(seq, p.getProperty(META_LABEL, ""), copies, copiesDone,
+                    p.getProperty(META_PRINTER), payload, meta, size);
+        } catch (IOException | NumberFormatException e) {
+            log.w(TAG, "Dropping unreadable spool entry " + seq, e);
+            return null;
+        }
+    }
+
+    private void writeMeta(Entry entry) throws IOException {
+        Properties p = new Properties();
+        p.setProperty(META_LABEL, entry.label);
+        p.setProperty(META_COPIES, String.valueOf(entry.copies));
+        p.setProperty(META_COPIES_DONE, String.valueOf(entry.copiesDone));
+        if (entry.printerAddress != null) p.setProperty(META_PRINTER, entry.printerAddress);
+        p.setProperty(META_SIZE, String.valueOf(entry.size));
+
+        File tmp = new File(dir, entry.sequence + EXT_META + EXT_TMP);
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            p.store(out, null);
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(entry.meta)) {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            throw new IOException("Couldn't commit spool metadata for job " + entry.sequence);
+        }
+        syncDir();
+    }
+
+    /** Makes the rename durable. Best effort: not every file system lets a directory be opened. */
+    private void syncDir() {
+        if (dirSyncUnsupported) return;
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            dirSyncUnsupported = true;
+            log.w(TAG, "Can't sync spool dir, renames may not survive a crash", e);
+        }
+    }
+
+    private synchronized long allocateSequence() {
+        if (nextSequence < 0) {
+            long max = 0;
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    String name = f.getName();
+                    int dot = name.indexOf('.');
+                    if (dot <= 0) continue;
+                    try {
+                        max = Math.max(max, Long.parseLong(name.substring(0, dot)));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+            nextSequence = max + 1;
+        }
+        return nextSequence++;
+    }
+
+    private void ensureDir() throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create spool dir");
+        }
+    }
+
+    private static String stripExtension(String name) {
+        int dot = name.indexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    private static void deleteFiles(File payload, File meta) {
+        //noinspection ResultOfMethodCallIgnored
+        meta.delete();
+        //noinspection ResultOfMethodCallIgnored
+        payload.delete();
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.storyprinter.print;
+
+import java.util.Set;
+
+/**
+ * What one printer model can do: paper width, resolution, how much raster data it accepts per
+ * command and per write, and which raster and heat/speed commands it understands.
+ *
+ * Profiles are looked up in {@link PrinterProfiles}.
+ */
+public final class PrinterProfile {
+
+    public final String id;
+    public final String displayName;
+    /** Bluetooth names starting with one of these (case-insensitive) are this model. */
+    final String[] namePrefixes;
+
+    /** Printable width in dots; always a multiple of 8. */
+    public final int widthPx;
+    public final int dpi;
+    /** Tallest raster band the printer buffers reliably; taller images are split into bands. */
+    public final int maxBandRows;
+    /** Bitmap commands the printer accepts; never empty. */
+    public final Set<RasterCommand> rasterCommands;
+    /** Bytes per socket write; small enough that status reports can stop a job promptly. */
+    public final int chunkSize;
+
+    /** Prefix of the print-head density command (level byte appended), or null if unsupported. */
+    final byte[] densityCommand;
+    public final int minDensity;
+    public final int maxDensity;
+    /** Prefix of the print speed command (level byte appended), or null if unsupported. */
+    final byte[] speedCommand;
+    public final int minSpeed;
+    public final int maxSpeed;
+
+    /** True if the printer renders its built-in font (ESC/POS text mode) usably. */
+    public final boolean supportsNativeText;
+
+    PrinterProfile(String id, String displayName, String[] namePrefixes, int widthPx, int dpi,
+                   int maxBandRows, Set<RasterCommand> rasterCommands, int chunkSize,
+                   byte[] densityCommand, int minDensity, int maxDensity,
+                   byte[] speedCommand, int minSpeed, int maxSpeed,
+                   boolean supportsNativeText) {
+        this.id = id;
+        this.displayName = displayName;
+        this.namePrefixes = namePrefixes;
+        this.widthPx = widthPx;
+        this.dpi = dpi;
+        this.maxBandRows = maxBandRows;
+        this.rasterCommands = rasterCommands;
+        this.chunkSize = chunkSize;
+        this.densityCommand = densityCommand;
+        this.minDensity = minDensity;
+        this.maxDensity = maxDensity;
+        this.speedCommand = speedCommand;
+        this.minSpeed = minSpeed;
+        this.maxSpeed = maxSpeed;
+        this.supportsNativeText = supportsNativeText;
+    }
+
+    public int bytesPerLine() {
+        return widthPx / 8;
+    }
+
+    /** The command images are sent with: GS v 0 where supported, it needs no transposing. */
+    public RasterCommand rasterCommand() {
+        return rasterCommands.contains(RasterCommand.GS_V_0) ? RasterCommand.GS_V_0 : RasterCommand.ESC_STAR_24;
+    }
+
+    public boolean supportsDensity() {
+        return densityCommand != null;
+    }
+
+    public boolean supportsSpeed() {
+        return speedCommand != null;
+    }
+
+    /** Converts a length on paper to dots, e.g. for feed gaps. */
+    public int mmToDots(int mm) {
+        return Math.round(mm * dpi / 25.4f);
+    }
+
+    /** Length of the longest prefix matching {@code deviceName}, 0 if none does. */
+    int matchLength(String deviceName) {
+        int best = 0;
+        if (deviceName == null) return best;
+        for (String prefix : namePrefixes) {
+            if (deviceName.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                best = Math.max(best, prefix.length());
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
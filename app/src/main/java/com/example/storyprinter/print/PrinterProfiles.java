@@ -0,0 +1,109 @@
+package com.example.storyprinter.print;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Registry of known printer models.
+ *
+ * Phomemo models take the vendor heat/speed commands (ESC N 4 n, ESC N 13 n); the generic
+ * profiles only rely on plain ESC/POS and are meant for clones we can't identify by name. The
+ * bit-image profile is for old clones that print nothing (or garbage) from GS v 0 rasters.
+ */
+public final class PrinterProfiles {
+
+    private PrinterProfiles() {}
+
+    private static final byte[] PHOMEMO_DENSITY = {0x1b, 0x4e, 0x04}; // ESC N 4 n
+    private static final byte[] PHOMEMO_SPEED = {0x1b, 0x4e, 0x0d}; // ESC N 13 n
+
+    // GS v 0 carries the height in two bytes, but cheap firmwares drop data when a single band
+    // outgrows their line buffer; 255 rows keeps yH = 0 for all of them.
+    private static final int SAFE_BAND_ROWS = 255;
+
+    private static final Set<RasterCommand> GS_V_0_ONLY = Collections.unmodifiableSet(
+            EnumSet.of(RasterCommand.GS_V_0));
+    private static final Set<RasterCommand> ESC_POS_RASTER = Collections.unmodifiableSet(
+            EnumSet.of(RasterCommand.GS_V_0, RasterCommand.ESC_STAR_24));
+    private static final Set<RasterCommand> BIT_IMAGE_ONLY = Collections.unmodifiableSet(
+            EnumSet.of(RasterCommand.ESC_STAR_24));
+
+    public static final PrinterProfile T02 = new PrinterProfile(
+            "T02", "Phomemo T02", new String[]{"T02"},
+            384, 203, SAFE_BAND_ROWS, GS_V_0_ONLY, 1024,
+            PHOMEMO_DENSITY, 1, 15, PHOMEMO_SPEED, 1, 5, false);
+
+    public static final PrinterProfile M02 = new PrinterProfile(
+            "M02", "Phomemo M02", new String[]{"M02"},
+            384, 203, SAFE_BAND_ROWS, GS_V_0_ONLY, 1024,
+            PHOMEMO_DENSITY, 1, 15, PHOMEMO_SPEED, 1, 5, false);
+
+    public static final PrinterProfile M02S = new PrinterProfile(
+            "M02S", "Phomemo M02S", new String[]{"M02S"},
+            576, 300, SAFE_BAND_ROWS, GS_V_0_ONLY, 2048,
+            PHOMEMO_DENSITY, 1, 15, PHOMEMO_SPEED, 1, 5, false);
+
+    public static final PrinterProfile GENERIC_58MM = new PrinterProfile(
+            "generic58", "Generic 58 mm ESC/POS", new String[0],
+            384, 203, SAFE_BAND_ROWS, ESC_POS_RASTER, 1024,
+            null, 0, 0, null, 0, 0, true);
+
+    public static final PrinterProfile GENERIC_80MM = new PrinterProfile(
+            "generic80", "Generic 80 mm ESC/POS", new String[0],
+            576, 203, SAFE_BAND_ROWS, ESC_POS_RASTER, 2048,
+            null, 0, 0, null, 0, 0, true);
+
+    public static final PrinterProfile GENERIC_4IN = new PrinterProfile(
+            "generic104", "Generic 4 inch ESC/POS", new String[0],
+            832, 203, SAFE_BAND_ROWS, ESC_POS_RASTER, 4096,
+            null, 0, 0, null, 0, 0, true);
+
+    public static final PrinterProfile GENERIC_58MM_BIT_IMAGE = new PrinterProfile(
+            "generic58esc", "Generic 58 mm ESC/POS (bit image)", new String[0],
+            384, 203, SAFE_BAND_ROWS, BIT_IMAGE_ONLY, 1024,
+            null, 0, 0, null, 0, 0, true);
+
+    /** Used when nothing is known about the printer; what the app was originally written for. */
+    public static final PrinterProfile DEFAULT = T02;
+
+    private static final List<PrinterProfile> ALL = Collections.unmodifiableList(Arrays.asList(
+            T02, M02, M02S, GENERIC_58MM, GENERIC_80MM, GENERIC_4IN, GENERIC_58MM_BIT_IMAGE));
+
+    public static List<PrinterProfile> all() {
+        return ALL;
+    }
+
+    /** Profiles that can be recognised from a Bluetooth device name. */
+    public static List<PrinterProfile> named() {
+        List<PrinterProfile> named = new ArrayList<>();
+        for (PrinterProfile p : ALL) {
+            if (p.namePrefixes.length > 0) named.add(p);
+        }
+        return named;
+    }
+
+    public static PrinterProfile byId(String id) {
+        for (PrinterProfile p : ALL) {
+            if (p.id.equals(id)) return p;
+        }
+        return null;
+    }
+
+    /** Best match for a Bluetooth device name (longest prefix wins, so "M02S" beats "M02"), or null. */
+    public static PrinterProfile forDeviceName(String deviceName) {
+        PrinterProfile best = null;
+        int bestLength = 0;
+        for (PrinterProfile p : ALL) {
+            int length = p.matchLength(deviceName);
+            if (length > bestLength) {
+                best = p;
+                bestLength = length;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.storyprinter.print;
+
+/**
+ * ESC/POS commands for printing a bitmap. Printers differ in which they accept, so each
+ * {@link PrinterProfile} lists its own.
+ */
+public enum RasterCommand {
+    /** GS v 0: whole rows, MSB first, one band per command. What Phomemo firmware expects. */
+    GS_V_0,
+    /**
+     * ESC * 33: 24-dot double-density bit image, sent as columns of three bytes per 24-row
+     * stripe. Older or minimal clones only understand this one.
+     */
+    ESC_STAR_24
+}
@@ -0,0 +1,164 @@
+package com.example.storyprinter.print;
+
+import java.util.Arrays;
+
+/**
+ * The gamma, sharpen and dither steps of {@link ImageProcessor}, one row at a time. Diffused
+ * error is carried to the following rows in two look-ahead buffers and sharpening reads one
+ * source row ahead, so memory stays at a handful of rows however tall the image is.
+ */
+final class RowDitherer {
+
+    /** Supplies source rows top to bottom. */
+    interface PixelSource {
+        /** Fills {@code argb} (exactly the output width) with the next row; false when done. */
+        boolean next(int[] argb);
+    }
+
+    private static final int[][] BAYER_8 = {
+            {0,32,8,40,2,34,10,42},
+            {48,16,56,24,50,18,58,26},
+            {12,44,4,36,14,46,6,38},
+            {60,28,52,20,62,30,54,22},
+            {3,35,11,43,1,33,9,41},
+            {51,19,59,27,49,17,57,25},
+            {15,47,7,39,13,45,5,37},
+            {63,31,55,23,61,29,53,21}
+    }; // values 0..63
+
+    private final ImageProcessor settings;
+    private final int width;
+    private final PixelSource source;
+    private final int[] argb;
+
+    // Gamma-corrected luminance around the row being dithered, for the 3x3 sharpen.
+    private double[] prev, cur, next, spare;
+    private final double[] work;
+    // Error pushed into the next row and the one after.
+    private double[] err1, err2;
+    private boolean started;
+    private int y;
+
+    RowDitherer(ImageProcessor settings, int width, PixelSource source) {
+        this.settings = settings;
+        this.width = width;
+        this.source = source;
+        argb = new int[width];
+        work = new double[width];
+        err1 = new double[width];
+        err2 = new double[width];
+    }
+
+    /** Dithers the next row into {@code black} (true = dot); false when the source is exhausted. */
+    boolean nextRow(boolean[] black) {
+        if (!started) {
+            started = true;
+            cur = readLuminance(null);
+            next = cur != null ? readLuminance(null) : null;
+        } else {
+            spare = prev;
+            prev = cur;
+            cur = next;
+            next = cur != null ? readLuminance(spare) : null;
+        }
+        if (cur == null) return false;
+
+        if (settings.sharpen) {
+            sharpen(work);
+        } else {
+            System.arraycopy(cur, 0, work, 0, width);
+        }
+        for (int x = 0; x < width; x++) work[x] += err1[x];
+        double[] t = err1;
+        err1 = err2;
+        err2 = t;
+        Arrays.fill(err2, 0);
+
+        dither(work, black);
+        y++;
+        return true;
+    }
+
+    private double[] readLuminance(double[] into) {
+        if (!source.next(argb)) return null;
+        double[] lum = into != null ? into : new double[width];
+        for (int x = 0; x < width; x++) {
+            // Channels unpacked by hand, not through Color, so this runs in plain JVM tests too.
+            int c = argb[x];
+            double L = 0.299 * ((c >> 16) & 0xFF) + 0.587 * ((c >> 8) & 0xFF) + 0.114 * (c & 0xFF);
+            double normalized = L / 255.0;
+            double adjusted = Math.pow(normalized, 1.0 / settings.gamma);
+            lum[x] = adjusted * 255.0;
+        }
+        return lum;
+    }
+
+    // Unsharp mask: sharpen edges so they survive dithering.
+    // Subtracts a 3x3 box blur from the original and adds the difference scaled by strength.
+    private void sharpen(double[] out) {
+        double strength = 0.5;
+        for (int x = 0; x < width; x++) {
+            double sum = 0;
+            int count = 0;
+            for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                sum += cur[nx];
+                count++;
+                if (prev != null) {
+                    sum += prev[nx];
+                    count++;
+                }
+                if (next != null) {
+                    sum += next[nx];
+                    count++;
+                }
+            }
+            double blur = sum / count;
+            double detail = cur[x] - blur;
+            out[x] = Math.max(0, Math.min(255, cur[x] + detail * strength));
+        }
+    }
+
+    private void dither(double[] lum, boolean[] black) {
+        int threshold = settings.threshold;
+        if (settings.ditherMode == ImageProcessor.DITHER_FLOYD_STEINBERG) {
+            for (int x = 0; x < width; x++) {
+                double oldPixel = lum[x];
+                double newPixel = oldPixel < threshold ? 0 : 255;
+                double error = oldPixel - newPixel;
+                black[x] = (newPixel == 0) != settings.invert;
+                if (x + 1 < width) lum[x + 1] += error * 7 / 16.0;
+                if (x > 0) err1[x - 1] += error * 3 / 16.0;
+                err1[x] += error * 5 / 16.0;
+                if (x + 1 < width) err1[x + 1] += error * 1 / 16.0;
+            }
+        } else if (settings.ditherMode == ImageProcessor.DITHER_ORDERED_8x8) {
+            // Offset for global threshold influence (center around 128); positive makes it darker.
+            double offset = 128 - threshold;
+            for (int x = 0; x < width; x++) {
+                int m = BAYER_8[y & 7][x & 7];
+                double orderedThreshold = (m + 0.5) * 4; // 0..~255
+                double lumAdj = Math.max(0, Math.min(255, lum[x] + offset));
+                black[x] = (lumAdj < orderedThreshold) != settings.invert;
+            }
+        } else if (settings.ditherMode == ImageProcessor.DITHER_ATKINSON) {
+            // Atkinson: diffuses 6/8 of error to 6 neighbors (loses 1/4 of error).
+            // Produces cleaner whites and darker blacks — ideal for thermal printers.
+            for (int x = 0; x < width; x++) {
+                double oldPixel = lum[x];
+                double newPixel = oldPixel < threshold ? 0 : 255;
+                double err = (oldPixel - newPixel) / 8.0;
+                black[x] = (newPixel == 0) != settings.invert;
+                if (x + 1 < width) lum[x + 1] += err;
+                if (x + 2 < width) lum[x + 2] += err;
+                if (x > 0) err1[x - 1] += err;
+                err1[x] += err;
+                if (x + 1 < width) err1[x + 1] += err;
+                err2[x] += err;
+            }
+        } else { // DITHER_NONE
+            for (int x = 0; x < width; x++) {
+                black[x] = (lum[x] < threshold) != settings.invert;
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.storyprinter.print;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Color;
+import android.graphics.Rect;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Prints images of any length (comic strips, long stories, rotated panoramas) without decoding
+ * them whole: the source is decoded a strip at a time with a {@link BitmapRegionDecoder}, each
+ * strip is scaled to the paper and fed through the {@link RowDitherer}, and rows are written out
+ * band by band. Peak memory is one strip plus one band, whatever the height.
+ */
+public final class TallImageEncoder {
+
+    private TallImageEncoder() {}
+
+    /** Images longer than this many dots on paper are printed in strips. */
+    public static final int MAX_BUFFERED_ROWS = 4096;
+
+    // Output rows decoded per strip.
+    private static final int STRIP_ROWS = 256;
+    // Pixel budget of the overview decoded to pick tone levels.
+    private static final int OVERVIEW_PIXELS = 1 << 20;
+
+    /** Whether a {@code width} x {@code height} image needs the strip path on {@code profile}. */
+    public static boolean needsStreaming(int width, int height, PrinterProfile profile) {
+        if (width <= 0 || height <= 0) return false;
+        long printedHeight = width > profile.widthPx ? (long) height * profile.widthPx / width : height;
+        return printedHeight > MAX_BUFFERED_ROWS;
+    }
+
+    /** Power-of-two sample size that brings a preview of such an image within the row limit. */
+    public static int previewSampleSize(int height) {
+        int sample = 1;
+        while (height / sample > MAX_BUFFERED_ROWS) sample *= 2;
+        return sample;
+    }
+
+    /** Writes the whole image as one job. The caller owns (and recycles) {@code decoder}. */
+    public static void encode(OutputStream out, BitmapRegionDecoder decoder, ImageProcessor processor,
+                              PrinterProfile profile, PrintQuality quality) throws IOException {
+        int sourceWidth = decoder.getWidth();
+        int sourceHeight = decoder.getHeight();
+        int width = Math.min(sourceWidth, profile.widthPx);
+        int height = Math.max(1, Math.round((float) sourceHeight * width / sourceWidth));
+        int paddedWidth = (width + 7) / 8 * 8;
+
+        // Decode no more detail than the scaled strip needs.
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1;
+        while (sourceWidth / (options.inSampleSize * 2) >= width) options.inSampleSize *= 2;
+
+        // Strips can't be equalized region by region without seams, so any tone setting gets
+        // one levels curve from a low-resolution overview of the whole image.
+        int[] levels = processor.tone != ImageProcessor.TONE_NONE ? overviewLevels(decoder) : null;
+
+        StripSource strips = new StripSource(decoder, options, width, height, paddedWidth, levels);
+        RowDitherer ditherer = new RowDitherer(processor, paddedWidth, strips);
+        boolean[] black = new boolean[paddedWidth];
+        try {
+            PhomemoEscPosEncoder.encodeRows(out, paddedWidth, height, row -> {
+                if (!ditherer.nextRow(black)) return; // decoder came up short; leave the row blank
+                for (int x = 0; x < paddedWidth; x++) {
+                    if (black[x]) row[x >> 3] |= (byte) (0x80 >>> (x & 7));
+                }
+            }, profile, quality);
+        } finally {
+            strips.release();
+        }
+    }
+
+    private static int[] overviewLevels(BitmapRegionDecoder decoder) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1;
+        while ((long) (decoder.getWidth() / options.inSampleSize) * (decoder.getHeight() / options.inSampleSize)
+                > OVERVIEW_PIXELS) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap overview = decoder.decodeRegion(new Rect(0, 0, decoder.getWidth(), decoder.getHeight()), options);
+        if (overview == null) return null;
+        int[] pixels = new int[overview.getWidth() * overview.getHeight()];
+        overview.getPixels(pixels, 0, overview.getWidth(), 0, 0, overview.getWidth(), overview.getHeight());
+        overview.recycle();
+        return ToneMapper.levelsLut(pixels);
+    }
+
+    /** Source rows at output width, decoded {@link #STRIP_ROWS} output rows at a time. */
+    private static final class StripSource implements RowDitherer.PixelSource {
+        private final BitmapRegionDecoder decoder;
+        private final BitmapFactory.Options options;
+        private final int width;
+        private final int height;
+        private final int paddedWidth;
+        private final int[] levels;
+        private final Rect region = new Rect();
+
+        private Bitmap strip;
+        private int stripTop;
+        private int row;
+
+        StripSource(BitmapRegionDecoder decoder, BitmapFactory.Options options, int width, int height,
+                    int paddedWidth, int[] levels) {
+            this.decoder = decoder;
+            this.options = options;
+            this.width = width;
+            this.height = height;
+            this.paddedWidth = paddedWidth;
+            this.levels = levels;
+        }
+
+        @Override
+        public boolean next(int[] argb) {
+            if (row >= height) return false;
+            if (strip == null || row >= stripTop + strip.getHeight()) {
+                if (!decodeStrip(row)) return false;
+            }
+            strip.getPixels(argb, 0, width, 0, row - stripTop, width, 1);
+            if (levels != null) {
+                for (int x = 0; x < width; x++) argb[x] = ToneMapper.grey(levels[ToneMapper.luminance(argb[x])]);
+            }
+            Arrays.fill(argb, width, paddedWidth, Color.WHITE);
+            row++;
+            return true;
+        }
+
+        private boolean decodeStrip(int top) {
+            release();
+            int bottom = Math.min(height, top + STRIP_ROWS);
+            long sourceHeight = decoder.getHeight();
+            region.set(0, (int) (top * sourceHeight / height),
+                    decoder.getWidth(), (int) Math.min(sourceHeight, (bottom * sourceHeight + height - 1) / height));
+            Bitmap decoded = decoder.decodeRegion(region, options);
+            if (decoded == null) return false;
+            strip = Bitmap.createScaledBitmap(decoded, width, bottom - top, true);
+            if (strip != decoded) decoded.recycle();
+            stripTop = top;
+            return true;
+        }
+
+        void release() {
+            if (strip != null) {
+                strip.recycle();
+                strip = null;
+            }
+        }
+    }
+}
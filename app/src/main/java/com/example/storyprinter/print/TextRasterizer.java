@@ -0,0 +1,224 @@
+package com.example.storyprinter.print;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lays out text to the paper width and sets it straight into a {@link MonoRaster} from a
+ * {@link GlyphAtlas}. For printers without a built-in font, or text the built-in font can't show.
+ *
+ * The atlas sets one code point per glyph, left to right, which is only right for scripts without
+ * shaping. Anything else (combining marks, right-to-left text, Indic or Thai clusters, emoji
+ * sequences) is laid out whole with a {@link StaticLayout} and thresholded instead; slower, but
+ * the system does the shaping and bidi.
+ */
+public final class TextRasterizer {
+
+    private TextRasterizer() {}
+
+    // Same line height as the built-in Font A (24 dots at 203 dpi) so both paths look alike.
+    private static final int BASE_SIZE_DOTS = 24;
+
+    // Blank dots kept on either side of the text.
+    private static final int MARGIN_DOTS = 8;
+
+    // Anti-aliased coverage at or above this alpha becomes a dot, as in GlyphAtlas.
+    private static final int INK_THRESHOLD = 128;
+
+    /** Font size in printer dots for {@code style} on {@code profile}. */
+    public static int sizePx(TextStyle style, PrinterProfile profile) {
+        return Math.round(BASE_SIZE_DOTS * profile.dpi / 203f) * style.scale;
+    }
+
+    /** Renders {@code text} in the system font, full paper width. */
+    public static MonoRaster render(String text, TextStyle style, PrinterProfile profile) {
+        Typeface typeface = style.bold ? Typeface.DEFAULT_BOLD : Typeface.DEFAULT;
+        if (!isSimple(text)) {
+            return renderShaped(text, typeface, sizePx(style, profile), profile.widthPx);
+        }
+        return render(text, GlyphAtlas.get(typeface, sizePx(style, profile)), profile.widthPx);
+    }
+
+    /** True if every code point can be set on its own, left to right, as the atlas does. */
+    static boolean isSimple(String text) {
+        if (text == null) return true;
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            // Emoji and other astral characters often come in sequences.
+            if (Character.isSupplementaryCodePoint(cp)) return false;
+            switch (Character.getType(cp)) {
+                case Character.NON_SPACING_MARK:
+                case Character.COMBINING_SPACING_MARK:
+                case Character.ENCLOSING_MARK:
+                case Character.FORMAT: // ZWJ, bidi controls
+                    return false;
+                default:
+                    break;
+            }
+            switch (Character.UnicodeScript.of(cp)) {
+                case COMMON:
+                case LATIN:
+                case GREEK:
+                case CYRILLIC:
+                case HAN:
+                case HIRAGANA:
+                case KATAKANA:
+                case HANGUL:
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /** Lays out and draws {@code text} in one go, left margin and width as {@link #render}. */
+    static MonoRaster renderShaped(String text, Typeface typeface, int sizePx, int width) {
+        String trimmed = text.replace("\r", "").replaceAll("\\s+$", "");
+        TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTypeface(typeface);
+        paint.setTextSize(sizePx);
+        paint.setColor(Color.BLACK);
+        StaticLayout layout = StaticLayout.Builder
+                .obtain(trimmed, 0, trimmed.length(), paint, width - 2 * MARGIN_DOTS)
+                .setIncludePad(false)
+                .build();
+
+        int height = Math.max(1, layout.getHeight());
+        Bitmap scratch = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(scratch);
+        canvas.translate(MARGIN_DOTS, 0);
+        layout.draw(canvas);
+
+        int bytesPerLine = MonoRaster.bytesPerLine(width);
+        byte[] data = new byte[bytesPerLine * height];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            scratch.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                if (Color.alpha(row[x]) >= INK_THRESHOLD) {
+                    data[y * bytesPerLine + (x >> 3)] |= (byte) (0x80 >>> (x & 7));
+                }
+            }
+        }
+        scratch.recycle();
+        return new MonoRaster(data, width, height);
+    }
+
+    public static MonoRaster render(String text, GlyphAtlas atlas, int width) {
+        List<String> lines = wrap(text, atlas, width - 2 * MARGIN_DOTS);
+        int height = Math.max(1, lines.size()) * atlas.lineHeight;
+        int bytesPerLine = MonoRaster.bytesPerLine(width);
+        byte[] data = new byte[bytesPerLine * height];
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int baseline = i * atlas.lineHeight + atlas.ascent;
+            int x = MARGIN_DOTS;
+            for (int j = 0; j < line.length(); ) {
+                int cp = line.codePointAt(j);
+                GlyphAtlas.Glyph g = atlas.glyph(cp);
+                if (g.width > 0) {
+                    blit(data, bytesPerLine, height, g, x + g.left, baseline + g.top);
+                }
+                x += g.advance;
+                j += Character.charCount(cp);
+            }
+        }
+        return new MonoRaster(data, width, height);
+    }
+
+    /**
+     * Greedy word wrap by measured width, like {@link EscPosText#wrap(String, int)} does by
+     * columns. Words wider than a line are split.
+     */
+    static List<String> wrap(String text, GlyphAtlas atlas, int maxWidth) {
+        List<String> lines = new ArrayList<>();
+        if (text == null) return lines;
+        int spaceWidth = atlas.advance(' ');
+        for (String paragraph : text.replace("\r", "").split("\n", -1)) {
+            StringBuilder line = new StringBuilder();
+            int lineWidth = 0;
+            for (String word : paragraph.trim().split("\\s+")) {
+                if (word.isEmpty()) continue;
+                int wordWidth = atlas.measure(word);
+                while (wordWidth > maxWidth) {
+                    if (line.length() > 0) {
+                        lines.add(line.toString());
+                        line.setLength(0);
+                        lineWidth = 0;
+                    }
+                    int cut = fit(word, atlas, maxWidth);
+                    lines.add(word.substring(0, cut));
+                    word = word.substring(cut);
+                    wordWidth = atlas.measure(word);
+                }
+                if (line.length() > 0 && lineWidth + spaceWidth + wordWidth > maxWidth) {
+                    lines.add(line.toString());
+                    line.setLength(0);
+                    lineWidth = 0;
+                }
+                if (line.length() > 0) {
+                    line.append(' ');
+                    lineWidth += spaceWidth;
+                }
+                line.append(word);
+                lineWidth += wordWidth;
+            }
+            lines.add(line.toString());
+        }
+        // Trailing blank lines would only waste paper.
+        while (!lines.isEmpty() && lines.get(lines.size() - 1).isEmpty()) {
+            lines.remove(lines.size() - 1);
+        }
+        return lines;
+    }
+
+    /** Length of the longest prefix of {@code word} that fits, at least one character. */
+    private static int fit(String word, GlyphAtlas atlas, int maxWidth) {
+        int width = 0;
+        int i = 0;
+        while (i < word.length()) {
+            int cp = word.codePointAt(i);
+            int next = width + atlas.advance(cp);
+            if (next > maxWidth && i > 0) break;
+            width = next;
+            i += Character.charCount(cp);
+        }
+        return i;
+    }
+
+    /** ORs the glyph's rows into {@code dst} at (x, y), byte-wise with a shift; clips at the edges. */
+    private static void blit(byte[] dst, int dstBytesPerLine, int dstHeight, GlyphAtlas.Glyph g, int x, int y) {
+        int srcBytesPerLine = g.bytesPerLine();
+        for (int row = 0; row < g.height; row++) {
+            int dy = y + row;
+            if (dy < 0 || dy >= dstHeight) continue;
+            int dstRow = dy * dstBytesPerLine;
+            int srcRow = row * srcBytesPerLine;
+            for (int b = 0; b < srcBytesPerLine; b++) {
+                int v = g.bits[srcRow + b] & 0xFF;
+                if (v == 0) continue;
+                int dx = x + b * 8;
+                if (dx <= -8) continue;
+                if (dx < 0) {
+                    v = (v << -dx) & 0xFF;
+                    dx = 0;
+                }
+                int index = dx >> 3;
+                int shift = dx & 7;
+                if (index < dstBytesPerLine) dst[dstRow + index] |= (byte) (v >>> shift);
+                if (shift != 0 && index + 1 < dstBytesPerLine) dst[dstRow + index + 1] |= (byte) (v << (8 - shift));
+            }
+        }
+    }
+}
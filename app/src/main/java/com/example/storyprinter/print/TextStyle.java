@@ -0,0 +1,18 @@
+package com.example.storyprinter.print;
+
+/** How story text is set on paper: a character scale (1 = the printer's normal size) and weight. */
+public final class TextStyle {
+
+    public static final int MIN_SCALE = 1;
+    public static final int MAX_SCALE = 3;
+
+    public static final TextStyle DEFAULT = new TextStyle(1, false);
+
+    public final int scale;
+    public final boolean bold;
+
+    public TextStyle(int scale, boolean bold) {
+        this.scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale));
+        this.bold = bold;
+    }
+}
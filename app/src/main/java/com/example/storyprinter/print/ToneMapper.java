@@ -0,0 +1,187 @@
+package com.example.storyprinter.print;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Automatic tone correction ahead of gamma and dithering, so dark illustrations and flat phone
+ * photos keep their detail on paper without retuning gamma and threshold by hand. Pixels come
+ * out grey, carrying the corrected luminance.
+ */
+final class ToneMapper {
+
+    private ToneMapper() {}
+
+    // Share of pixels ignored at each end of the histogram, so a few specks don't pin the range.
+    private static final float LEVELS_CLIP = 0.005f;
+    // CLAHE tiles across the width; tiles are square, so a long image has more rows of them.
+    private static final int CLAHE_TILES_ACROSS = 8;
+    private static final int CLAHE_MIN_TILE = 16;
+    // Histogram bins are capped at this multiple of the average, which limits noise amplification.
+    private static final float CLAHE_CLIP_LIMIT = 2.5f;
+
+    private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS, r -> {
+        Thread t = new Thread(r, "tone-mapper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Applies {@code tone} (an {@code ImageProcessor.TONE_*}) to {@code argb} in place. */
+    static void apply(int[] argb, int width, int height, int tone) {
+        if (tone == ImageProcessor.TONE_AUTO_LEVELS) {
+            applyLut(argb, levelsLut(argb));
+        } else if (tone == ImageProcessor.TONE_CLAHE) {
+            clahe(argb, width, height);
+        }
+    }
+
+    // Channels packed by hand, as in RowDitherer, so the mapper runs in plain JVM tests too.
+    static int luminance(int c) {
+        return (299 * ((c >> 16) & 0xFF) + 587 * ((c >> 8) & 0xFF) + 114 * (c & 0xFF) + 500) / 1000;
+    }
+
+    static int grey(int v) {
+        return 0xFF000000 | v << 16 | v << 8 | v;
+    }
+
+    /** Maps each pixel's luminance through {@code lut} (256 entries). */
+    static void applyLut(int[] argb, int[] lut) {
+        for (int i = 0; i < argb.length; i++) argb[i] = grey(lut[luminance(argb[i])]);
+    }
+
+    /** Stretches the occupied luminance range of {@code argb} to the full 0..255. */
+    static int[] levelsLut(int[] argb) {
+        int[] histogram = new int[256];
+        for (int c : argb) histogram[luminance(c)]++;
+
+        int clip = (int) (argb.length * LEVELS_CLIP);
+        int low = 0, high = 255;
+        for (int seen = 0; low < 255; low++) {
+            seen += histogram[low];
+            if (seen > clip) break;
+        }
+        for (int seen = 0; high > 0; high--) {
+            seen += histogram[high];
+            if (seen > clip) break;
+        }
+
+        int[] lut = new int[256];
+        if (high <= low) { // flat image: nothing to stretch
+            for (int v = 0; v < 256; v++) lut[v] = v;
+            return lut;
+        }
+        for (int v = 0; v < 256; v++) {
+            lut[v] = Math.max(0, Math.min(255, (v - low) * 255 / (high - low)));
+        }
+        return lut;
+    }
+
+    /**
+     * Contrast-limited adaptive histogram equalization: each tile gets its own clipped
+     * equalization curve, and every pixel blends the curves of the four nearest tile centres.
+     * Tiles are equalized in parallel, then rows are mapped in parallel bands.
+     */
+    static void clahe(int[] argb, int width, int height) {
+        int tilesX = Math.max(1, Math.min(CLAHE_TILES_ACROSS, width / CLAHE_MIN_TILE));
+        int tileSize = (width + tilesX - 1) / tilesX;
+        int tilesY = Math.max(1, (height + tileSize - 1) / tileSize);
+        int tileHeight = (height + tilesY - 1) / tilesY;
+
+        byte[] lum = new byte[argb.length];
+        int[][] luts = new int[tilesX * tilesY][];
+        List<Callable<Void>> tasks = new ArrayList<>(tilesY);
+        for (int ty = 0; ty < tilesY; ty++) {
+            final int tileRow = ty;
+            tasks.add(() -> {
+                int y0 = tileRow * tileHeight;
+                int y1 = Math.min(height, y0 + tileHeight);
+                for (int y = y0; y < y1; y++) {
+                    for (int x = 0, i = y * width; x < width; x++, i++) lum[i] = (byte) luminance(argb[i]);
+                }
+                for (int tx = 0; tx < tilesX; tx++) {
+                    int x0 = tx * tileSize;
+                    int x1 = Math.min(width, x0 + tileSize);
+                    luts[tileRow * tilesX + tx] = equalize(lum, width, x0, y0, x1, y1);
+                }
+                return null;
+            });
+        }
+        if (!runAll(tasks)) return;
+
+        tasks.clear();
+        int band = (height + THREADS - 1) / THREADS;
+        for (int start = 0; start < height; start += band) {
+            final int y0 = start;
+            final int y1 = Math.min(height, start + band);
+            tasks.add(() -> {
+                for (int y = y0; y < y1; y++) {
+                    float fy = (y + 0.5f) / tileHeight - 0.5f;
+                    int ty0 = Math.max(0, Math.min(tilesY - 1, (int) Math.floor(fy)));
+                    int ty1 = Math.min(tilesY - 1, ty0 + 1);
+                    float ay = Math.max(0f, Math.min(1f, fy - ty0));
+                    for (int x = 0, i = y * width; x < width; x++, i++) {
+                        float fx = (x + 0.5f) / tileSize - 0.5f;
+                        int tx0 = Math.max(0, Math.min(tilesX - 1, (int) Math.floor(fx)));
+                        int tx1 = Math.min(tilesX - 1, tx0 + 1);
+                        float ax = Math.max(0f, Math.min(1f, fx - tx0));
+                        int v = lum[i] & 0xFF;
+                        float top = luts[ty0 * tilesX + tx0][v] * (1 - ax) + luts[ty0 * tilesX + tx1][v] * ax;
+                        float bottom = luts[ty1 * tilesX + tx0][v] * (1 - ax) + luts[ty1 * tilesX + tx1][v] * ax;
+                        argb[i] = grey(Math.round(top * (1 - ay) + bottom * ay));
+                    }
+                }
+                return null;
+            });
+        }
+        runAll(tasks);
+    }
+
+    /** Clipped equalization curve for one tile of {@code lum}. */
+    private static int[] equalize(byte[] lum, int width, int x0, int y0, int x1, int y1) {
+        int[] histogram = new int[256];
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0, i = y * width + x0; x < x1; x++, i++) histogram[lum[i] & 0xFF]++;
+        }
+        int area = (x1 - x0) * (y1 - y0);
+
+        // Clip tall bins and share what was cut off evenly, so flat areas aren't blown up.
+        int limit = Math.max(1, Math.round(CLAHE_CLIP_LIMIT * area / 256f));
+        int excess = 0;
+        for (int v = 0; v < 256; v++) {
+            if (histogram[v] > limit) {
+                excess += histogram[v] - limit;
+                histogram[v] = limit;
+            }
+        }
+        int share = excess / 256;
+        int rest = excess % 256;
+        for (int v = 0; v < 256; v++) histogram[v] += share + (v < rest ? 1 : 0);
+
+        int[] lut = new int[256];
+        int cdf = 0;
+        for (int v = 0; v < 256; v++) {
+            cdf += histogram[v];
+            lut[v] = Math.min(255, (int) ((long) cdf * 255 / area));
+        }
+        return lut;
+    }
+
+    /** Runs {@code tasks} on the pool; false if interrupted, leaving the work unfinished. */
+    private static boolean runAll(List<Callable<Void>> tasks) {
+        try {
+            for (Future<Void> f : POOL.invokeAll(tasks)) f.get();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.storyprinter.story;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.example.storyprinter.metrics.LatencyMetrics;
+
+/**
+ * Story generation latency kept on the device, per image backend so the two can be compared.
+ * Each sample is also logged under the "StoryMetrics" tag, e.g. {@code adb logcat -s StoryMetrics}.
+ */
+public final class StoryMetrics {
+
+    private static final LatencyMetrics METRICS = new LatencyMetrics("StoryMetrics", "story_metrics");
+
+    private StoryMetrics() {
+        // no instances
+    }
+
+    /**
+     * Records the time from a page's image being requested to the final image arriving.
+     * {@code backend} names the image path used, e.g. "responses" or "images_api".
+     */
+    public static void recordPageImage(@NonNull Context context, @NonNull String backend,
+                                       int pageNumber, long millis) {
+        METRICS.record(context, "page_image_" + backend, millis, " page=" + pageNumber);
+    }
+}
@@ -17,9 +17,24 @@ public final class StorySession {
         public String text;
         public Bitmap image;
 
+        // Encoded ESC/POS job for this page and the print settings it was made with.
+        private String printJobKey;
+        private byte[] printJob;
+
         public Page(int pageNumber) {
             this.pageNumber = pageNumber;
         }
+
+        /** The cached print job if it was encoded for {@code key}, otherwise null. */
+        public synchronized byte[] getPrintJob(String key) {
+            return key.equals(printJobKey) ? printJob : null;
+        }
+
+        /** Replaces the cached print job; only one set of settings is kept per page. */
+        public synchronized void setPrintJob(String key, byte[] job) {
+            printJobKey = key;
+            printJob = job;
+        }
     }
 
     private static final StorySession INSTANCE = new StorySession();
@@ -39,8 +54,11 @@ public final class StorySession {
     /** The seed prompt last used to start the story (optional). */
     private String seedPrompt;
 
-    /** Optional user-provided reference image (base64, without data-url prefix). */
-    private String referenceImageBase64;
+    /** Optional user-provided reference image (JPEG bytes). */
+    private byte[] referenceImageJpeg;
+
+    /** Files API id of the reference image once uploaded, so it is only sent once. */
+    private String referenceImageFileId;
 
     /** Small thumbnail for UI (kept in-memory only). */
     private Bitmap referenceImageThumbnail;
@@ -48,19 +66,18 @@ public final class StorySession {
     private StorySession() {
     }
 
-    public synchronized void clear() {
-        clear(true);
+    /** Clears everything; returns the uploaded reference file id this drops, for deleting. */
+    public synchronized String clear() {
+        return clear(true);
     }
 
-    public synchronized void clear(boolean removeReferenceImage) {
+    /** Returns the uploaded reference file id this drops, if any, for deleting. */
+    public synchronized String clear(boolean removeReferenceImage) {
         pages.clear();
         previousTextResponseId = null;
         previousImageResponseId = null;
         seedPrompt = null;
-        if (removeReferenceImage) {
-            referenceImageBase64 = null;
-            referenceImageThumbnail = null;
-        }
+        return removeReferenceImage ? clearReferenceImage() : null;
     }
 
     public synchronized List<Page> snapshotPages() {
@@ -105,21 +122,48 @@ public final class StorySession {
         this.seedPrompt = seedPrompt;
     }
 
-    public synchronized String getReferenceImageBase64() {
-        return referenceImageBase64;
+    public synchronized byte[] getReferenceImageJpeg() {
+        return referenceImageJpeg;
+    }
+
+    public synchronized String getReferenceImageFileId() {
+        return referenceImageFileId;
+    }
+
+    /**
+     * Records the upload of {@code jpeg}, unless the reference image has changed since; false
+     * then, and the upload is the caller's to delete.
+     */
+    public synchronized boolean setReferenceImageFileId(byte[] jpeg, String fileId) {
+        if (jpeg != referenceImageJpeg) return false;
+        this.referenceImageFileId = fileId;
+        return true;
+    }
+
+    /** Forgets the uploaded file id (the image itself is kept) and returns it, for deleting. */
+    public synchronized String takeReferenceImageFileId() {
+        String fileId = referenceImageFileId;
+        referenceImageFileId = null;
+        return fileId;
     }
 
     public synchronized Bitmap getReferenceImageThumbnail() {
         return referenceImageThumbnail;
     }
 
-    public synchronized void setReferenceImage(String base64, Bitmap thumbnail) {
-        this.referenceImageBase64 = base64;
+    /** Returns the previous image's uploaded file id, if any, for deleting. */
+    public synchronized String setReferenceImage(byte[] jpeg, Bitmap thumbnail) {
+        String replaced = takeReferenceImageFileId();
+        this.referenceImageJpeg = jpeg;
         this.referenceImageThumbnail = thumbnail;
+        return replaced;
     }
 
-    public synchronized void clearReferenceImage() {
-        this.referenceImageBase64 = null;
+    /** Returns the image's uploaded file id, if any, for deleting. */
+    public synchronized String clearReferenceImage() {
+        String removed = takeReferenceImageFileId();
+        this.referenceImageJpeg = null;
         this.referenceImageThumbnail = null;
+        return removed;
     }
 }
@@ -0,0 +1,38 @@
+package com.example.storyprinter.util;
+
+import android.util.Log;
+
+/**
+ * Where non-UI classes send their log lines. Production code uses {@link #ANDROID}; JVM tests pass
+ * their own, since {@link Log} is not available there.
+ */
+public interface Logger {
+
+    Logger ANDROID = (priority, tag, msg, tr) -> {
+        if (tr != null) msg = msg + '\n' + Log.getStackTraceString(tr);
+        Log.println(priority, tag, msg);
+    };
+
+    /** @param priority one of the {@link Log} priority constants */
+    void log(int priority, String tag, String msg, Throwable tr);
+
+    default void d(String tag, String msg) {
+        log(Log.DEBUG, tag, msg, null);
+    }
+
+    default void i(String tag, String msg) {
+        log(Log.INFO, tag, msg, null);
+    }
+
+    default void w(String tag, String msg) {
+        log(Log.WARN, tag, msg, null);
+    }
+
+    default void w(String tag, String msg, Throwable tr) {
+        log(Log.WARN, tag, msg, tr);
+    }
+
+    default void e(String tag, String msg, Throwable tr) {
+        log(Log.ERROR, tag, msg, tr);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.storyprinter.bluetooth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrinterStatusParserTest {
+
+    private long now = 1_000L;
+    private final PrinterStatusParser parser = new PrinterStatusParser(() -> now);
+
+    private PrinterStatus feed(PrinterStatus current, int... bytes) {
+        PrinterStatus status = current;
+        for (int b : bytes) {
+            PrinterStatus updated = parser.feed(b, status);
+            if (updated != null) status = updated;
+        }
+        return status;
+    }
+
+    @Test
+    public void vendorPaperNotification() {
+        assertNull(parser.feed(0x1A, PrinterStatus.UNKNOWN));
+        assertNull(parser.feed(0x06, PrinterStatus.UNKNOWN));
+        PrinterStatus status = parser.feed(0x88, PrinterStatus.UNKNOWN);
+        assertNotNull(status);
+        assertTrue(status.paperOut);
+
+        assertFalse(feed(status, 0x1A, 0x06, 0x89).paperOut);
+    }
+
+    @Test
+    public void vendorCoverAndHeatNotifications() {
+        PrinterStatus status = feed(PrinterStatus.UNKNOWN, 0x1A, 0x05, 0x98, 0x1A, 0x03, 0xA9);
+        assertTrue(status.coverOpen);
+        assertTrue(status.overheated);
+
+        status = feed(status, 0x1A, 0x05, 0x99, 0x1A, 0x03, 0xA8);
+        assertFalse(status.coverOpen);
+        assertFalse(status.overheated);
+    }
+
+    @Test
+    public void unknownVendorNotificationIsSkipped() {
+        assertNull(parser.feed(0x1A, PrinterStatus.UNKNOWN));
+        assertNull(parser.feed(0x7F, PrinterStatus.UNKNOWN));
+        assertNull(parser.feed(0x01, PrinterStatus.UNKNOWN));
+        // Back in sync for the next notification.
+        assertTrue(feed(PrinterStatus.UNKNOWN, 0x1A, 0x06, 0x88).paperOut);
+    }
+
+    @Test
+    public void paperSensorReply() {
+        parser.expectReply(PrinterStatusParser.QUERY_PAPER_SENSOR);
+        PrinterStatus status = parser.feed(0x72, PrinterStatus.UNKNOWN); // bits 5+6: paper end
+        assertNotNull(status);
+        assertTrue(status.paperOut);
+        assertEquals(0, parser.pendingReplies());
+    }
+
+    @Test
+    public void updatesAreStampedWithClock() {
+        assertFalse(PrinterStatus.UNKNOWN.isKnown());
+        PrinterStatus status = feed(PrinterStatus.UNKNOWN, 0x1A, 0x06, 0x88);
+        assertEquals(1_000L, status.reportedAtUptimeMs);
+        assertTrue(status.isKnown());
+
+        now = 2_500L;
+        parser.expectReply(PrinterStatusParser.QUERY_PRINTER);
+        status = parser.feed(0x16, status);
+        assertEquals(2_500L, status.reportedAtUptimeMs);
+        assertTrue(status.paperOut);
+    }
+
+    @Test
+    public void offlineCauseKeepsPaperEndFromSensor() {
+        parser.expectReply(PrinterStatusParser.QUERY_PAPER_SENSOR);
+        parser.expectReply(PrinterStatusParser.QUERY_OFFLINE_CAUSE);
+        PrinterStatus status = feed(PrinterStatus.UNKNOWN, 0x72, 0x16); // 0x16: cover open
+        assertTrue(status.paperOut);
+        assertTrue(status.coverOpen);
+        assertFalse(status.error);
+    }
+
+    @Test
+    public void repliesAreMatchedToQueriesInOrder() {
+        parser.expectReply(PrinterStatusParser.QUERY_PAPER_SENSOR);
+        parser.expectReply(PrinterStatusParser.QUERY_ERROR_CAUSE);
+        PrinterStatus status = feed(PrinterStatus.UNKNOWN, 0x12, 0x52); // 0x52: auto-recoverable
+        assertFalse(status.paperOut);
+        assertTrue(status.overheated);
+        assertFalse(status.error);
+    }
+
+    @Test
+    public void pendingQueryWinsOverVendorPrefix() {
+        // 0x1A is also a valid DLE EOT reply: cover closed, no paper end, no error.
+        parser.expectReply(PrinterStatusParser.QUERY_OFFLINE_CAUSE);
+        assertNotNull(parser.feed(0x1A, PrinterStatus.UNKNOWN));
+        assertEquals(0, parser.pendingReplies());
+        // So what follows is not read as a notification.
+        assertNull(parser.feed(0x06, PrinterStatus.UNKNOWN));
+        assertNull(parser.feed(0x88, PrinterStatus.UNKNOWN));
+    }
+
+    @Test
+    public void bytesThatAreNotRepliesLeaveQueriesPending() {
+        parser.expectReply(PrinterStatusParser.QUERY_PRINTER);
+        assertNull(parser.feed(0xFF, PrinterStatus.UNKNOWN));
+        assertNull(parser.feed(0x00, PrinterStatus.UNKNOWN));
+        assertEquals(1, parser.pendingReplies());
+
+        parser.clearPending();
+        assertEquals(0, parser.pendingReplies());
+        assertNull(parser.feed(0x12, PrinterStatus.UNKNOWN));
+    }
+}
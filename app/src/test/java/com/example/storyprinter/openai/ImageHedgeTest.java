@@ -0,0 +1,196 @@
+package com.example.storyprinter.openai;
+
+import com.example.storyprinter.util.Logger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ImageHedgeTest {
+
+    private static final Logger NO_LOG = (priority, tag, msg, tr) -> { };
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    /** One started request, left for the test to finish. */
+    private static final class Started {
+        final String model;
+        final OpenAiClient.ImageListener listener;
+        final CompletableFuture<OpenAiClient.ImageResult> future = new CompletableFuture<>();
+
+        Started(String model, OpenAiClient.ImageListener listener) {
+            this.model = model;
+            this.listener = listener;
+        }
+    }
+
+    private final LinkedBlockingQueue<Started> started = new LinkedBlockingQueue<>();
+
+    private final OpenAiClient.ImageAttempt attempt = (model, listener) -> {
+        Started s = new Started(model, listener);
+        started.add(s);
+        return s.future;
+    };
+
+    @After
+    public void tearDown() {
+        timer.shutdownNow();
+    }
+
+    private CompletableFuture<OpenAiClient.ImageResult> hedged(String backupModel, long hedgeAfterMs,
+                                                                OpenAiClient.ImageListener listener) {
+        return OpenAiClient.generateImageHedgedAsync("main", backupModel, hedgeAfterMs, listener, attempt,
+                timer, NO_LOG);
+    }
+
+    private Started nextStarted() throws InterruptedException {
+        Started s = started.poll(5, TimeUnit.SECONDS);
+        assertTrue("attempt not started", s != null);
+        return s;
+    }
+
+    /** The backup, once the hedge is watching it; it is started a moment before that. */
+    private Started nextBackup() throws InterruptedException {
+        Started s = nextStarted();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (s.future.getNumberOfDependents() == 0 && !s.future.isDone()) {
+            assertTrue("backup not watched", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        return s;
+    }
+
+    private static OpenAiClient.ImageResult result(String id) {
+        return new OpenAiClient.ImageResult(id, null);
+    }
+
+    @Test
+    public void noBudgetMeansOneRequest() throws Exception {
+        CompletableFuture<OpenAiClient.ImageResult> future = hedged("fast", 0, null);
+        Started primary = nextStarted();
+
+        assertSame(primary.future, future);
+        Thread.sleep(50);
+        assertTrue(started.isEmpty());
+    }
+
+    @Test
+    public void fastPrimaryIsNotHedged() throws Exception {
+        CompletableFuture<OpenAiClient.ImageResult> future = hedged("fast", 100, null);
+        Started primary = nextStarted();
+        primary.future.complete(result("a"));
+
+        assertEquals("a", future.get(5, TimeUnit.SECONDS).responseId);
+        Thread.sleep(200);
+        assertTrue(started.isEmpty());
+    }
+
+    @Test
+    public void backupWinsAndPrimaryIsCancelled() throws Exception {
+        CompletableFuture<OpenAiClient.ImageResult> future = hedged("fast", 10, null);
+        Started primary = nextStarted();
+        Started backup = nextBackup();
+        assertEquals("main", primary.model);
+        assertEquals("fast", backup.model);
+
+        backup.future.complete(result("b"));
+
+        assertEquals("b", future.get(5, TimeUnit.SECONDS).responseId);
+        assertTrue(primary.future.isCancelled());
+    }
+
+    @Test
+    public void primaryCanStillWinAfterBackupStarts() throws Exception {
+        CompletableFuture<OpenAiClient.ImageResult> future = hedged(null, 10, null);
+        Started primary = nextStarted();
+        Started backup = nextBackup();
+        assertEquals("main", backup.model);
+
+        primary.future.complete(result("a"));
+
+        assertEquals("a", future.get(5, TimeUnit.SECONDS).responseId);
+        assertTrue(backup.future.isCancelled());
+    }
+
+    @Test
+    public void oneFailureWaitsForTheOther() throws Exception {
+        CompletableFuture<OpenAiClient.ImageResult> future = hedged("fast", 10, null);
+        Started primary = nextStarted();
+        Started backup = nextBackup();
+
+        primary.future.completeExceptionally(new IOException("primary down"));
+        assertFalse(future.isDone());
+        backup.future.complete(result("b"));
+
+        assertEquals("b", future.get(5, TimeUnit.SECONDS).responseId);
+    }
+
+    @Test
+    public void bothFailingFailsWithTheFirstError() throws Exception {
+        CompletableFuture<OpenAiClient.ImageResult> future = hedged("fast", 10, null);
+        Started primary = nextStarted();
+        Started backup = nextBackup();
+
+        backup.future.completeExceptionally(new IOException("backup down"));
+        primary.future.completeExceptionally(new IOException("primary down"));
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("backup down", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void failureBeforeTheBudgetIsNotHedged() throws Exception {
+        CompletableFuture<OpenAiClient.ImageResult> future = hedged("fast", 100, null);
+        Started primary = nextStarted();
+        primary.future.completeExceptionally(new IOException("primary down"));
+
+        assertTrue(future.isCompletedExceptionally());
+        Thread.sleep(200);
+        assertTrue(started.isEmpty());
+    }
+
+    @Test
+    public void cancellingTheResultCancelsEveryAttempt() throws Exception {
+        CompletableFuture<OpenAiClient.ImageResult> future = hedged("fast", 10, null);
+        Started primary = nextStarted();
+        Started backup = nextBackup();
+
+        future.cancel(true);
+
+        assertTrue(primary.future.isCancelled());
+        assertTrue(backup.future.isCancelled());
+    }
+
+    @Test
+    public void partialFramesNeverStepBack() throws Exception {
+        List<Integer> shown = new ArrayList<>();
+        hedged("fast", 10, (index, image) -> shown.add(index));
+        Started primary = nextStarted();
+        Started backup = nextBackup();
+
+        primary.listener.onPartialImage(0, null);
+        primary.listener.onPartialImage(1, null);
+        backup.listener.onPartialImage(0, null);
+        backup.listener.onPartialImage(1, null);
+        backup.listener.onPartialImage(2, null);
+        primary.listener.onPartialImage(2, null);
+
+        assertEquals(Arrays.asList(0, 1, 2), shown);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.storyprinter.openai;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+public class JsonBodyTest {
+
+    private static JSONObject payload(String prompt, boolean withImage) throws JSONException {
+        JSONArray content = new JSONArray()
+                .put(new JSONObject().put("type", "input_text").put("text", prompt));
+        if (withImage) {
+            content.put(new JSONObject().put("type", "input_image").put("image_url", JsonBody.IMAGE_PLACEHOLDER));
+        }
+        return new JSONObject()
+                .put("model", "gpt-test")
+                .put("input", new JSONArray().put(new JSONObject().put("role", "user").put("content", content)));
+    }
+
+    private static byte[] write(JsonBody body) throws IOException {
+        Buffer sink = new Buffer();
+        body.writeTo(sink);
+        return sink.readByteArray();
+    }
+
+    private static byte[] jpeg(int size) {
+        byte[] jpeg = new byte[size];
+        for (int i = 0; i < size; i++) jpeg[i] = (byte) (i * 31 + 7);
+        return jpeg;
+    }
+
+    private static String inlined(JSONObject payload, byte[] jpeg) {
+        return payload.toString().replace("\"" + JsonBody.IMAGE_PLACEHOLDER + "\"",
+                "\"data:image/jpeg;base64," + Base64.getEncoder().encodeToString(jpeg) + "\"");
+    }
+
+    @Test
+    public void withoutImage_writesThePayload() throws Exception {
+        JSONObject payload = payload("A fox in a \"hat\" — ünïcödé", false);
+        JsonBody body = new JsonBody(payload, null);
+
+        byte[] written = write(body);
+        assertArrayEquals(payload.toString().getBytes(StandardCharsets.UTF_8), written);
+        assertEquals(written.length, body.contentLength());
+        assertEquals("gpt-test", body.model);
+    }
+
+    @Test
+    public void withImage_inlinesItAsADataUrl() throws Exception {
+        // Every padding case, plus one larger than the encoder's internal buffers.
+        for (int size : new int[]{0, 1, 2, 3, 4, 5, 100_001}) {
+            JSONObject payload = payload("Draw this ☃", true);
+            byte[] jpeg = jpeg(size);
+            JsonBody body = new JsonBody(payload, InputImage.ofJpeg(jpeg));
+
+            byte[] written = write(body);
+            assertEquals("size " + size, inlined(payload, jpeg), new String(written, StandardCharsets.UTF_8));
+            assertEquals("size " + size, written.length, body.contentLength());
+        }
+    }
+
+    @Test
+    public void imageWithoutPlaceholder_isLeftOut() throws Exception {
+        JSONObject payload = payload("No picture here", false);
+        JsonBody body = new JsonBody(payload, InputImage.ofJpeg(jpeg(10)));
+
+        byte[] written = write(body);
+        assertArrayEquals(payload.toString().getBytes(StandardCharsets.UTF_8), written);
+        assertEquals(written.length, body.contentLength());
+    }
+
+    @Test
+    public void uploadedImage_isNotInlined() throws Exception {
+        JSONObject payload = payload("Uploaded", false);
+        JsonBody body = new JsonBody(payload, InputImage.ofFileId("file-123"));
+
+        assertArrayEquals(payload.toString().getBytes(StandardCharsets.UTF_8), write(body));
+    }
+
+    @Test
+    public void canBeWrittenTwice() throws Exception {
+        JSONObject payload = payload("Retry me", true);
+        JsonBody body = new JsonBody(payload, InputImage.ofJpeg(jpeg(50)));
+
+        assertArrayEquals(write(body), write(body));
+    }
+
+    @Test
+    public void toLogString_showsImageSizeNotBytes() throws Exception {
+        JsonBody body = new JsonBody(payload("Log me", true), InputImage.ofJpeg(jpeg(1234)));
+
+        String log = body.toLogString();
+        assertTrue(log, log.contains("\"image_url\":\"<1234-byte jpeg>\""));
+        assertTrue(log, log.contains("Log me"));
+    }
+
+    @Test
+    public void toLogString_clipsLongText() throws Exception {
+        StringBuilder prompt = new StringBuilder();
+        for (int i = 0; i < 5000; i++) prompt.append('x');
+        JsonBody body = new JsonBody(payload(prompt.toString(), false), null);
+
+        String log = body.toLogString();
+        assertTrue(log.length() < 1100);
+        assertTrue(log, log.contains("...<"));
+        assertTrue(log, log.startsWith("{") && log.endsWith("}"));
+    }
+}
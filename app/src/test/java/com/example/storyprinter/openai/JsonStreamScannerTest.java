@@ -0,0 +1,142 @@
+package com.example.storyprinter.openai;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class JsonStreamScannerTest {
+
+    private static final Set<String> PATHS = new HashSet<>(Arrays.asList(
+            "id", "output.type", "status", "usage.total_tokens", "error.message"));
+
+    /** Hands out at most a few bytes per read, like a slow network body. */
+    private static final class TrickleInputStream extends InputStream {
+        private final InputStream in;
+        private int calls;
+
+        TrickleInputStream(byte[] data) {
+            in = new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return in.read(b, off, Math.min(len, 1 + calls++ % 3));
+        }
+    }
+
+    private static byte[] image(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    /** Base64 as a JSON string body, with escaped slashes and line breaks as some encoders write it. */
+    private static String jsonBase64(byte[] data) {
+        String b64 = Base64.getEncoder().encodeToString(data);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < b64.length(); i++) {
+            if (i > 0 && i % 76 == 0) sb.append("\\n");
+            char c = b64.charAt(i);
+            sb.append(c == '/' ? "\\/" : String.valueOf(c));
+        }
+        return sb.toString();
+    }
+
+    private static String response(String base64) {
+        return "{\"id\":\"resp_1\",\"output\":[{\"type\":\"message\"},"
+                + "{\"type\":\"image_generation_call\",\"result\":\"" + base64 + "\"}],"
+                + "\"status\":\"completed\",\"usage\":{\"total_tokens\":42}}";
+    }
+
+    private static InputStream stream(String json) {
+        return new TrickleInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void decodesBase64AcrossReads() throws IOException {
+        byte[] image = image(5000);
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        Map<String, String> values = JsonStreamScanner.scan(stream(response(jsonBase64(image))), PATHS, "result",
+                in -> {
+                    byte[] buf = new byte[7]; // odd size, so reads straddle base64 quanta
+                    int n;
+                    while ((n = in.read(buf)) != -1) decoded.write(buf, 0, n);
+                });
+        assertArrayEquals(image, decoded.toByteArray());
+        assertEquals("resp_1", values.get("id"));
+        assertEquals("completed", values.get("status"));
+        assertEquals("42", values.get("usage.total_tokens"));
+    }
+
+    @Test
+    public void firstValueWinsForRepeatedPaths() throws IOException {
+        Map<String, String> values = JsonStreamScanner.scan(stream(response("AAAA")), PATHS, "result", in -> { });
+        assertEquals("message", values.get("output.type"));
+    }
+
+    @Test
+    public void unreadBase64IsSkipped() throws IOException {
+        byte[] image = image(3000);
+        byte[] head = new byte[10];
+        Map<String, String> values = JsonStreamScanner.scan(stream(response(jsonBase64(image))), PATHS, "result",
+                in -> assertEquals(10, in.read(head)));
+        assertArrayEquals(Arrays.copyOf(image, 10), head);
+        assertEquals("completed", values.get("status"));
+    }
+
+    @Test
+    public void withoutBase64KeyTheValueIsNotDecoded() throws IOException {
+        Map<String, String> values = JsonStreamScanner.scan(stream(response(jsonBase64(image(100)))), PATHS, null, null);
+        assertEquals("completed", values.get("status"));
+        assertNull(values.get("result"));
+    }
+
+    @Test
+    public void unescapesCollectedStrings() throws IOException {
+        String json = "{\"error\":{\"message\":\"a\\\"b\\u00e9\\n\\u65e5\"}}";
+        Map<String, String> values = JsonStreamScanner.scan(stream(json), PATHS, null, null);
+        assertEquals("a\"bé\n日", values.get("error.message"));
+    }
+
+    @Test
+    public void keepsUtf8Strings() throws IOException {
+        String json = "{\"error\":{\"message\":\"café 日本\"}}";
+        Map<String, String> values = JsonStreamScanner.scan(stream(json), PATHS, null, null);
+        assertEquals("café 日本", values.get("error.message"));
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedBase64Fails() throws IOException {
+        String json = response(jsonBase64(image(3000)));
+        String truncated = json.substring(0, json.indexOf("\"result\"") + 500);
+        JsonStreamScanner.scan(stream(truncated), PATHS, "result", in -> {
+            byte[] buf = new byte[64];
+            //noinspection StatementWithEmptyBody
+            while (in.read(buf) != -1) {
+            }
+        });
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedDocumentFails() throws IOException {
+        JsonStreamScanner.scan(stream("{\"id\":\"resp_1\",\"output\":["), PATHS, null, null);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.storyprinter.openai;
+
+import org.junit.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.Assert.*;
+
+public class RetryInterceptorTest {
+
+    @Test
+    public void parseDurationMs_singleUnits() {
+        assertEquals(20, RetryInterceptor.parseDurationMs("20ms"));
+        assertEquals(1500, RetryInterceptor.parseDurationMs("1.5s"));
+        assertEquals(120_000, RetryInterceptor.parseDurationMs("2m"));
+        assertEquals(3_600_000, RetryInterceptor.parseDurationMs("1h"));
+    }
+
+    @Test
+    public void parseDurationMs_combinedUnits() {
+        assertEquals(360_000, RetryInterceptor.parseDurationMs("6m0s"));
+        assertEquals(3_723_000, RetryInterceptor.parseDurationMs("1h2m3s"));
+        assertEquals(1_250, RetryInterceptor.parseDurationMs("1s250ms"));
+    }
+
+    @Test
+    public void parseDurationMs_roundsUpFractions() {
+        assertEquals(1, RetryInterceptor.parseDurationMs("0.2ms"));
+    }
+
+    @Test
+    public void parseDurationMs_rejectsUnreadableValues() {
+        assertEquals(-1, RetryInterceptor.parseDurationMs(null));
+        assertEquals(-1, RetryInterceptor.parseDurationMs(""));
+        assertEquals(-1, RetryInterceptor.parseDurationMs("soon"));
+        assertEquals(-1, RetryInterceptor.parseDurationMs("5x"));
+        assertEquals(-1, RetryInterceptor.parseDurationMs("1s later"));
+        assertEquals(-1, RetryInterceptor.parseDurationMs("x1s"));
+    }
+
+    @Test
+    public void retryAfterMs_noHeaders() {
+        assertEquals(-1, RetryInterceptor.retryAfterMs(null, null));
+    }
+
+    @Test
+    public void retryAfterMs_prefersMilliseconds() {
+        assertEquals(1500, RetryInterceptor.retryAfterMs("1500", "30"));
+        assertEquals(250, RetryInterceptor.retryAfterMs(" 250.7 ", null));
+    }
+
+    @Test
+    public void retryAfterMs_fallsBackToSeconds() {
+        assertEquals(2000, RetryInterceptor.retryAfterMs("abc", "2"));
+        assertEquals(500, RetryInterceptor.retryAfterMs(null, "0.5"));
+        assertEquals(0, RetryInterceptor.retryAfterMs(null, "-3"));
+    }
+
+    @Test
+    public void retryAfterMs_httpDate() {
+        String inThirtySeconds = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(30));
+        long ms = RetryInterceptor.retryAfterMs(null, inThirtySeconds);
+        // The date has whole seconds, so up to one is lost.
+        assertTrue("was " + ms, ms > 28_000 && ms <= 30_000);
+
+        String past = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                ZonedDateTime.now(ZoneOffset.UTC).minusMinutes(5));
+        assertEquals(0, RetryInterceptor.retryAfterMs(null, past));
+    }
+
+    @Test
+    public void retryAfterMs_unreadable() {
+        assertEquals(-1, RetryInterceptor.retryAfterMs(null, "later"));
+    }
+
+    @Test
+    public void isRetryable_postOnlyOnRateLimitOrWhenTold() {
+        assertTrue(RetryInterceptor.isRetryable("POST", 429, null, false));
+        assertFalse(RetryInterceptor.isRetryable("POST", 500, null, false));
+        assertFalse(RetryInterceptor.isRetryable("POST", 503, null, false));
+        assertFalse(RetryInterceptor.isRetryable("POST", 408, null, false));
+        assertFalse(RetryInterceptor.isRetryable("POST", 409, null, false));
+        assertTrue(RetryInterceptor.isRetryable("POST", 500, "true", false));
+        assertFalse(RetryInterceptor.isRetryable("POST", 429, "false", false));
+    }
+
+    @Test
+    public void isRetryable_idempotentOnTransientErrors() {
+        assertTrue(RetryInterceptor.isRetryable("GET", 500, null, false));
+        assertTrue(RetryInterceptor.isRetryable("GET", 408, null, false));
+        assertTrue(RetryInterceptor.isRetryable("GET", 409, null, false));
+        assertFalse(RetryInterceptor.isRetryable("GET", 400, null, false));
+        assertFalse(RetryInterceptor.isRetryable("GET", 502, "false", false));
+    }
+
+    @Test
+    public void isRetryable_neverWhenQuotaIsExhausted() {
+        assertFalse(RetryInterceptor.isRetryable("POST", 429, null, true));
+        assertFalse(RetryInterceptor.isRetryable("GET", 429, "true", true));
+    }
+}
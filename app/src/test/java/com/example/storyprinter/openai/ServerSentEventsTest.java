@@ -0,0 +1,154 @@
+package com.example.storyprinter.openai;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ServerSentEventsTest {
+
+    private final List<String> seen = new ArrayList<>();
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void read(String text) throws IOException {
+        ServerSentEvents.read(stream(text), (type, event) -> {
+            seen.add(type + ":" + event.optString("n"));
+            return true;
+        });
+    }
+
+    @Test
+    public void dataLinesBecomeEvents() throws IOException {
+        read("event: a\ndata: {\"type\":\"a\",\"n\":\"1\"}\n\n"
+                + ": keep-alive\n\n"
+                + "data:{\"type\":\"b\",\"n\":\"2\"}\r\n\r\n"
+                + "id: 7\nretry: 1000\ndata: {\"type\":\"c\",\"n\":\"3\"}\n\n");
+
+        assertEquals(Arrays.asList("a:1", "b:2", "c:3"), seen);
+    }
+
+    @Test
+    public void multipleDataLinesAreJoined() throws IOException {
+        read("data: {\"type\":\"a\",\ndata: \"n\":\"x\"}\n\n");
+
+        assertEquals(Arrays.asList("a:x"), seen);
+    }
+
+    @Test
+    public void lastEventNeedsNoBlankLine() throws IOException {
+        read("data: {\"type\":\"a\",\"n\":\"ü\"}");
+
+        assertEquals(Arrays.asList("a:ü"), seen);
+    }
+
+    @Test
+    public void doneEndsTheStream() throws IOException {
+        read("data: {\"type\":\"a\"}\n\ndata: [DONE]\n\ndata: {\"type\":\"b\"}\n\n");
+
+        assertEquals(Arrays.asList("a:"), seen);
+    }
+
+    @Test
+    public void handlerCanStopReading() throws IOException {
+        List<String> types = new ArrayList<>();
+        ServerSentEvents.read(stream("data: {\"type\":\"a\"}\n\ndata: {\"type\":\"b\"}\n\n"), (type, event) -> {
+            types.add(type);
+            return false;
+        });
+
+        assertEquals(Arrays.asList("a"), types);
+    }
+
+    @Test
+    public void errorEventsThrow() {
+        for (String type : Arrays.asList("error", "response.failed", "response.incomplete")) {
+            try {
+                read("data: {\"type\":\"a\"}\n\ndata: {\"type\":\"" + type + "\",\"message\":\"boom\"}\n\n");
+                fail(type);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("OpenAI stream error: "));
+                assertTrue(e.getMessage(), e.getMessage().contains("boom"));
+            }
+        }
+        assertEquals(Arrays.asList("a:", "a:", "a:"), seen);
+    }
+
+    @Test(expected = IOException.class)
+    public void unreadableDataThrows() throws IOException {
+        read("data: {not json\n\n");
+    }
+
+    /** Streams "big" events, reading only the first {@code prefix} bytes of each. */
+    private static final class LargeHandler implements ServerSentEvents.Handler {
+        final List<String> events = new ArrayList<>();
+        final int prefix;
+
+        LargeHandler(int prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean onEvent(String type, JSONObject event) {
+            events.add("small " + type);
+            return true;
+        }
+
+        @Override
+        public boolean isLarge(String eventName) {
+            return "big".equals(eventName);
+        }
+
+        @Override
+        public boolean onLargeEvent(String eventName, InputStream data) throws IOException {
+            ByteArrayOutputStream read = new ByteArrayOutputStream();
+            int c;
+            while (read.size() < prefix && (c = data.read()) != -1) read.write(c);
+            events.add("large " + new String(read.toByteArray(), StandardCharsets.UTF_8));
+            return true;
+        }
+    }
+
+    @Test
+    public void largeEventsAreStreamed() throws IOException {
+        StringBuilder big = new StringBuilder("{\"type\":\"big\",\"b64\":\"");
+        for (int i = 0; i < 1_000_000; i++) big.append('A');
+        big.append("\"}");
+        LargeHandler handler = new LargeHandler(Integer.MAX_VALUE);
+
+        ServerSentEvents.read(stream("event: big\ndata: " + big + "\n\n"
+                + "event: small\ndata: {\"type\":\"small\"}\n\n"), handler);
+
+        assertEquals(Arrays.asList("large " + big, "small small"), handler.events);
+    }
+
+    @Test
+    public void unreadRestOfALargeEventIsSkipped() throws IOException {
+        LargeHandler handler = new LargeHandler(3);
+
+        ServerSentEvents.read(stream("event: big\r\ndata: {\"type\":\"big\",\"x\":1}\r\n\r\n"
+                + "data: {\"type\":\"after\"}\n\n"), handler);
+
+        assertEquals(Arrays.asList("large {\"t", "small after"), handler.events);
+    }
+
+    @Test
+    public void largeTypeWithoutEventLineIsParsedWhole() throws IOException {
+        LargeHandler handler = new LargeHandler(Integer.MAX_VALUE);
+
+        ServerSentEvents.read(stream("data: {\"type\":\"big\"}\n\n"), handler);
+
+        assertEquals(Arrays.asList("small big"), handler.events);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.storyprinter.openai;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TokenBucketTest {
+
+    @Test
+    public void startsFull() {
+        TokenBucket bucket = new TokenBucket(0.001, 3);
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+    }
+
+    @Test
+    public void waitMatchesRate() {
+        TokenBucket bucket = new TokenBucket(1, 1);
+        assertEquals(0, bucket.tryAcquire());
+        long waitMs = bucket.tryAcquire();
+        assertTrue("was " + waitMs, waitMs > 900 && waitMs <= 1000);
+    }
+
+    @Test
+    public void refillsOverTime() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 1);
+        assertEquals(0, bucket.tryAcquire());
+        Thread.sleep(20);
+        assertEquals(0, bucket.tryAcquire());
+    }
+
+    @Test
+    public void pauseHoldsBackTokens() {
+        TokenBucket bucket = new TokenBucket(1000, 10);
+        bucket.pauseFor(5_000);
+        long waitMs = bucket.tryAcquire();
+        assertTrue("was " + waitMs, waitMs > 4_000 && waitMs <= 5_000);
+    }
+
+    @Test
+    public void pauseIsNeverShortened() {
+        TokenBucket bucket = new TokenBucket(1000, 10);
+        bucket.pauseFor(5_000);
+        bucket.pauseFor(10);
+        assertTrue(bucket.tryAcquire() > 4_000);
+    }
+
+    @Test
+    public void setRateCapsSavedTokens() {
+        TokenBucket bucket = new TokenBucket(0.001, 5);
+        bucket.setRate(0.001, 2);
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.storyprinter.print;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class EscPosTextTest {
+
+    @Test
+    public void wrap_breaksBetweenWords() {
+        assertEquals(Arrays.asList("the quick", "brown fox"), EscPosText.wrap("the quick brown fox", 10));
+    }
+
+    @Test
+    public void wrap_fillsLinesExactly() {
+        assertEquals(Arrays.asList("abcde", "fghij"), EscPosText.wrap("abcde fghij", 5));
+        assertEquals(Collections.singletonList("ab cd"), EscPosText.wrap("ab cd", 5));
+    }
+
+    @Test
+    public void wrap_splitsLongWords() {
+        assertEquals(Arrays.asList("abcde", "fghij", "kl"), EscPosText.wrap("abcdefghijkl", 5));
+        assertEquals(Arrays.asList("ab", "abcde", "fgh x"), EscPosText.wrap("ab abcdefgh x", 5));
+    }
+
+    @Test
+    public void wrap_singleColumn() {
+        assertEquals(Arrays.asList("a", "b", "c"), EscPosText.wrap("ab c", 1));
+    }
+
+    @Test
+    public void wrap_keepsBlankLinesButNotTrailingOnes() {
+        assertEquals(Arrays.asList("one", "", "two"), EscPosText.wrap("one\n\ntwo\n\n", 32));
+        assertEquals(Arrays.asList("a", "b"), EscPosText.wrap("a\r\nb", 32));
+    }
+
+    @Test
+    public void wrap_collapsesWhitespace() {
+        assertEquals(Collections.singletonList("a b"), EscPosText.wrap("  a \t  b  ", 32));
+    }
+
+    @Test
+    public void wrap_nullOrEmpty() {
+        assertTrue(EscPosText.wrap(null, 32).isEmpty());
+        assertTrue(EscPosText.wrap("", 32).isEmpty());
+    }
+
+    @Test
+    public void columns_followPaperWidthAndScale() {
+        assertEquals(32, EscPosText.columns(PrinterProfiles.T02, TextStyle.DEFAULT));
+        assertEquals(16, EscPosText.columns(PrinterProfiles.T02, new TextStyle(2, false)));
+        assertEquals(48, EscPosText.columns(PrinterProfiles.GENERIC_80MM, TextStyle.DEFAULT));
+        // 300 dpi: 18-dot characters on 576 dots.
+        assertEquals(32, EscPosText.columns(PrinterProfiles.M02S, TextStyle.DEFAULT));
+    }
+
+    @Test
+    public void toPrinterCharset_foldsToAscii() {
+        assertEquals("Cafe \"quoted\" - it's ok...",
+                EscPosText.toPrinterCharset("Café “quoted” — it’s ok…"));
+        assertEquals("?? ?", EscPosText.toPrinterCharset("日本 😀"));
+        assertEquals("a b\nc", EscPosText.toPrinterCharset("a b\nc"));
+    }
+
+    @Test
+    public void toPrinterCharset_beforeWrapKeepsLinesWithinColumns() {
+        for (String line : EscPosText.wrap(EscPosText.toPrinterCharset("wait… what… really…"), 8)) {
+            assertTrue(line, line.length() <= 8);
+        }
+    }
+}
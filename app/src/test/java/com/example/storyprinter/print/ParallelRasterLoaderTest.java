@@ -0,0 +1,120 @@
+package com.example.storyprinter.print;
+
+import com.example.storyprinter.util.Logger;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ParallelRasterLoaderTest {
+
+    private final List<String> warnings = new ArrayList<>();
+    private final Logger log = (priority, tag, msg, tr) -> {
+        synchronized (warnings) {
+            warnings.add(msg);
+        }
+    };
+
+    private static MonoRaster raster(int index) {
+        return new MonoRaster(new byte[]{(byte) index}, 8, 1);
+    }
+
+    private static List<Integer> drain(ParallelRasterLoader loader) throws InterruptedException {
+        List<Integer> indices = new ArrayList<>();
+        MonoRaster r;
+        while ((r = loader.next()) != null) {
+            assertEquals(loader.lastIndex(), r.data[0]);
+            indices.add(loader.lastIndex());
+        }
+        return indices;
+    }
+
+    @Test
+    public void imagesComeOutInOrder() throws InterruptedException {
+        // Earlier images take longest, so they finish last.
+        ParallelRasterLoader loader = new ParallelRasterLoader(8, 4, index -> {
+            try {
+                Thread.sleep((8 - index) * 10L);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return raster(index);
+        }, log);
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7), drain(loader));
+        assertNull(loader.next());
+        loader.close();
+    }
+
+    @Test
+    public void skippedAndFailedImagesAreLeftOut() throws InterruptedException {
+        ParallelRasterLoader loader = new ParallelRasterLoader(5, 2, index -> {
+            if (index == 1) return null;
+            if (index == 3) throw new IOException("corrupt");
+            return raster(index);
+        }, log);
+
+        assertEquals(Arrays.asList(0, 2, 4), drain(loader));
+        assertEquals(Arrays.asList("Skipping image 3"), warnings);
+        loader.close();
+    }
+
+    @Test
+    public void readAheadIsBounded() throws InterruptedException {
+        AtomicInteger started = new AtomicInteger();
+        ParallelRasterLoader loader = new ParallelRasterLoader(100, 2, index -> {
+            started.incrementAndGet();
+            return raster(index);
+        }, log);
+
+        assertNotNull(loader.next());
+        Thread.sleep(100);
+        // Two workers keep at most four images in flight.
+        assertTrue("started " + started.get(), started.get() <= 4);
+        loader.close();
+    }
+
+    @Test
+    public void closeReleasesABlockedConsumer() throws InterruptedException {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        ParallelRasterLoader loader = new ParallelRasterLoader(3, 1, index -> {
+            loading.countDown();
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return raster(index);
+        }, log);
+
+        AtomicReference<MonoRaster> result = new AtomicReference<>(raster(-1));
+        CountDownLatch returned = new CountDownLatch(1);
+        Thread consumer = new Thread(() -> {
+            try {
+                result.set(loader.next());
+            } catch (InterruptedException ignored) {
+            }
+            returned.countDown();
+        });
+        consumer.start();
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        loader.close();
+
+        assertTrue(returned.await(5, TimeUnit.SECONDS));
+        assertNull(result.get());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(loader.isClosed());
+        assertNull(loader.next());
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.storyprinter.print;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class PhomemoEscPosEncoderTest {
+
+    private static final byte[] HEADER = {0x1b, 0x40, 0x1b, 0x61, 0x01};
+    private static final byte[] TRAILER = {0x1b, 0x64, 0x02};
+
+    private static final MonoRaster FIRST = new MonoRaster(new byte[]{(byte) 0xFF, (byte) 0x81}, 8, 2);
+    private static final MonoRaster SECOND = new MonoRaster(new byte[]{(byte) 0xAA, 0x55}, 16, 1);
+
+    private static byte[] bytes(int... values) {
+        byte[] out = new byte[values.length];
+        for (int i = 0; i < values.length; i++) out[i] = (byte) values[i];
+        return out;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] p : parts) out.write(p, 0, p.length);
+        return out.toByteArray();
+    }
+
+    private static byte[] band(int bytesPerLine, int rows, byte[] data) {
+        return concat(bytes(0x1d, 0x76, 0x30, 0x00, bytesPerLine, 0, rows, 0), data);
+    }
+
+    @Test
+    public void encodeBatch_feedsGapBetweenImagesOnly() {
+        byte[] job = PhomemoEscPosEncoder.encodeBatch(Arrays.asList(FIRST, SECOND), 24,
+                PrinterProfiles.T02, PrintQuality.NORMAL);
+
+        assertArrayEquals(concat(
+                HEADER,
+                band(1, 2, FIRST.data),
+                bytes(0x1b, 0x4a, 24),
+                band(2, 1, SECOND.data),
+                TRAILER), job);
+    }
+
+    @Test
+    public void encodeBatch_splitsLongGapsIntoFeedsOfAtMost255Dots() {
+        byte[] job = PhomemoEscPosEncoder.encodeBatch(Arrays.asList(FIRST, SECOND), 300,
+                PrinterProfiles.T02, PrintQuality.NORMAL);
+
+        assertArrayEquals(concat(
+                HEADER,
+                band(1, 2, FIRST.data),
+                bytes(0x1b, 0x4a, 255, 0x1b, 0x4a, 45),
+                band(2, 1, SECOND.data),
+                TRAILER), job);
+    }
+
+    @Test
+    public void encodeBatch_noGapMeansNoFeed() {
+        byte[] job = PhomemoEscPosEncoder.encodeBatch(Arrays.asList(FIRST, SECOND), 0,
+                PrinterProfiles.T02, PrintQuality.NORMAL);
+
+        assertArrayEquals(concat(HEADER, band(1, 2, FIRST.data), band(2, 1, SECOND.data), TRAILER), job);
+    }
+
+    @Test
+    public void encodeBatch_singleImageIsAPlainJob() {
+        byte[] batch = PhomemoEscPosEncoder.encodeBatch(Collections.singletonList(FIRST), 24,
+                PrinterProfiles.T02, PrintQuality.QUALITY);
+        byte[] single = PhomemoEscPosEncoder.encodeImage(FIRST.data, FIRST.width, FIRST.height,
+                PrinterProfiles.T02, PrintQuality.QUALITY);
+
+        assertArrayEquals(single, batch);
+    }
+
+    @Test
+    public void encodeBatch_headSettingsAreSentOnce() {
+        byte[] job = PhomemoEscPosEncoder.encodeBatch(Arrays.asList(FIRST, SECOND, FIRST), 24,
+                PrinterProfiles.T02, PrintQuality.DRAFT);
+
+        // ESC @ reset, then ESC N 13 (speed) and ESC N 4 (density), all exactly once.
+        assertEquals(1, count(job, bytes(0x1b, 0x40)));
+        assertEquals(1, count(job, bytes(0x1b, 0x4e, 0x0d)));
+        assertEquals(1, count(job, bytes(0x1b, 0x4e, 0x04)));
+        assertEquals(2, count(job, bytes(0x1b, 0x4a, 24)));
+    }
+
+    @Test
+    public void defaultGapAt203Dpi() {
+        assertEquals(24, PrinterProfiles.T02.mmToDots(PhomemoEscPosEncoder.DEFAULT_GAP_MM));
+    }
+
+    private static int count(byte[] haystack, byte[] needle) {
+        int n = 0;
+        outer:
+        for (int i = 0; i + needle.length <= haystack.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) continue outer;
+            }
+            n++;
+        }
+        return n;
+    }
+
+    private static byte[] pattern(int bytesPerLine, int height) {
+        byte[] data = new byte[bytesPerLine * height];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (i * 7 + i / bytesPerLine);
+        return data;
+    }
+
+    private static byte[] encodeRows(byte[] data, int width, int height, PrinterProfile profile) throws IOException {
+        int bytesPerLine = (width + 7) / 8;
+        int[] next = {0};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PhomemoEscPosEncoder.encodeRows(out, width, height, row -> {
+            System.arraycopy(data, next[0] * bytesPerLine, row, 0, bytesPerLine);
+            next[0]++;
+        }, profile, PrintQuality.NORMAL);
+        assertEquals(height, next[0]);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void encodeRows_splitsIntoBandsOfMaxBandRows() throws IOException {
+        byte[] data = pattern(2, 600);
+        byte[] job = encodeRows(data, 16, 600, PrinterProfiles.T02);
+
+        // 255 + 255 + 90 rows.
+        assertArrayEquals(concat(
+                HEADER,
+                band(2, 255, Arrays.copyOfRange(data, 0, 510)),
+                band(2, 255, Arrays.copyOfRange(data, 510, 1020)),
+                band(2, 90, Arrays.copyOfRange(data, 1020, 1200)),
+                TRAILER), job);
+    }
+
+    @Test
+    public void encodeRows_matchesBufferedEncoding() throws IOException {
+        for (PrinterProfile profile : Arrays.asList(PrinterProfiles.T02, PrinterProfiles.GENERIC_58MM_BIT_IMAGE)) {
+            for (int height : new int[]{1, 24, 239, 240, 241, 700}) {
+                byte[] data = pattern(3, height);
+                assertArrayEquals(profile + " x " + height,
+                        PhomemoEscPosEncoder.encodeImage(data, 24, height, profile, PrintQuality.NORMAL),
+                        encodeRows(data, 24, height, profile));
+            }
+        }
+    }
+
+    @Test
+    public void encodeRows_rowBufferIsClearedForEachRow() throws IOException {
+        int[] calls = {0};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // Only even rows are drawn; odd rows must come out blank, not as a copy of the row before.
+        PhomemoEscPosEncoder.encodeRows(out, 8, 4, row -> {
+            if (calls[0]++ % 2 == 0) row[0] |= (byte) 0xF0;
+        }, PrinterProfiles.T02, PrintQuality.NORMAL);
+
+        assertArrayEquals(concat(HEADER, band(1, 4, bytes(0xF0, 0, 0xF0, 0)), TRAILER), out.toByteArray());
+    }
+
+    @Test
+    public void bitImageBandsAreWholeStripes() throws IOException {
+        byte[] job = encodeRows(pattern(1, 250), 8, 250, PrinterProfiles.GENERIC_58MM_BIT_IMAGE);
+        // 250 rows: ten full 24-row stripes and one of 10, each fed by exactly its own height.
+        assertEquals(11, count(job, bytes(0x1b, 0x2a, 33, 8, 0)));
+        assertEquals(10, count(job, bytes(0x1b, 0x4a, 24)));
+        assertEquals(1, count(job, bytes(0x1b, 0x4a, 10)));
+    }
+}
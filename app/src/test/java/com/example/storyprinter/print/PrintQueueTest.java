@@ -0,0 +1,353 @@
+package com.example.storyprinter.print;
+
+import android.bluetooth.BluetoothAdapter;
+
+import com.example.storyprinter.bluetooth.BluetoothConnectionManager;
+import com.example.storyprinter.bluetooth.PrinterPool;
+import com.example.storyprinter.bluetooth.PrinterStatus;
+import com.example.storyprinter.bluetooth.PrinterStatusException;
+import com.example.storyprinter.util.Logger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class PrintQueueTest {
+
+    private static final Logger NO_LOG = (priority, tag, msg, tr) -> { };
+
+    /** What a {@link FakeConnection} does on one sendJob() call before the bytes go out. */
+    private interface Step {
+        void run(FakeConnection connection) throws IOException;
+    }
+
+    /** Stands in for a printer link: records what is sent, after running the next scripted step. */
+    private static final class FakeConnection extends BluetoothConnectionManager {
+        volatile boolean connected = true;
+        final List<byte[]> sent = Collections.synchronizedList(new ArrayList<>());
+        final LinkedBlockingQueue<Step> steps = new LinkedBlockingQueue<>();
+
+        FakeConnection() {
+            super((BluetoothAdapter) null);
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public void sendJob(ByteBuffer data, TransferListener listener) throws IOException {
+            Step step = steps.poll();
+            if (step != null) step.run(this);
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            sent.add(bytes);
+            if (listener != null) listener.onProgress(bytes.length, bytes.length);
+        }
+
+        @Override
+        public void closeConnection() {
+            connected = false;
+        }
+    }
+
+    private final PrinterPool pool = new PrinterPool(NO_LOG);
+    private final PrintQueue queue = new PrintQueue(pool, null, NO_LOG, () -> 1_000L);
+    private PrintQueue spooledQueue;
+    private File spoolDir;
+
+    @After
+    public void tearDown() {
+        queue.shutdown();
+        if (spooledQueue != null) spooledQueue.shutdown();
+        if (spoolDir != null) {
+            File[] files = spoolDir.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    //noinspection ResultOfMethodCallIgnored
+                    f.delete();
+                }
+            }
+            //noinspection ResultOfMethodCallIgnored
+            spoolDir.delete();
+        }
+    }
+
+    /** Replaces {@link #queue} with one that has a spool, so jobs can be bound to a printer. */
+    private PrintQueue spooledQueue() throws IOException {
+        queue.shutdown();
+        spoolDir = Files.createTempDirectory("spool").toFile();
+        spooledQueue = new PrintQueue(pool, new PrintSpool(spoolDir, NO_LOG), NO_LOG, () -> 1_000L);
+        return spooledQueue;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    private static Step disconnect() {
+        return connection -> {
+            connection.connected = false;
+            throw new IOException("Broken pipe");
+        };
+    }
+
+    private static Step blockUntil(CountDownLatch started, CountDownLatch release) {
+        return connection -> {
+            started.countDown();
+            try {
+                assertTrue(release.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        };
+    }
+
+    private static List<Long> idsOf(List<PrintJob> jobs) {
+        List<Long> ids = new ArrayList<>();
+        for (PrintJob job : jobs) ids.add(job.id);
+        return ids;
+    }
+
+    private List<Long> queuedIds() {
+        return idsOf(queue.snapshot());
+    }
+
+    @Test
+    public void move_reordersQueuedJobs() {
+        PrintJob a = queue.enqueue("a", new byte[]{1}, 1);
+        PrintJob b = queue.enqueue("b", new byte[]{2}, 1);
+        PrintJob c = queue.enqueue("c", new byte[]{3}, 1);
+
+        assertTrue(queue.move(c.id, 0));
+        assertEquals(Arrays.asList(c.id, a.id, b.id), queuedIds());
+        assertTrue(queue.move(c.id, 99));
+        assertEquals(Arrays.asList(a.id, b.id, c.id), queuedIds());
+        assertFalse(queue.move(12345, 0));
+    }
+
+    @Test
+    public void cancel_queuedJobIsDroppedAtOnce() {
+        PrintJob a = queue.enqueue("a", new byte[]{1}, 1);
+        PrintJob b = queue.enqueue("b", new byte[]{2}, 1);
+
+        assertTrue(queue.cancel(a.id));
+        assertEquals(PrintJob.State.CANCELLED, a.getState());
+        assertEquals(Arrays.asList(b.id), queuedIds());
+        assertFalse(queue.cancel(a.id));
+    }
+
+    @Test
+    public void jobIsSentOncePerCopy() throws InterruptedException {
+        FakeConnection printer = new FakeConnection();
+        pool.add("AA", "T02", printer);
+        List<PrintJob> events = Collections.synchronizedList(new ArrayList<>());
+        queue.addListener(events::add);
+
+        PrintJob job = queue.enqueue("job", new byte[]{1, 2, 3}, 2);
+        await(() -> job.getState() == PrintJob.State.DONE);
+
+        assertEquals(2, printer.sent.size());
+        assertArrayEquals(new byte[]{1, 2, 3}, printer.sent.get(1));
+        assertEquals(2, job.getCopiesDone());
+        assertEquals(100, job.getProgressPercent());
+        assertEquals("AA", job.getPrintedOn());
+        await(queue::isIdle);
+        assertTrue(events.contains(job));
+    }
+
+    @Test
+    public void disconnectMidJobRequeuesAndPauses() throws InterruptedException {
+        FakeConnection printer = new FakeConnection();
+        printer.steps.add(disconnect());
+        pool.add("AA", "T02", printer);
+
+        PrintJob job = queue.enqueue("job", new byte[]{1}, 1);
+        await(() -> queue.isPaused() && queue.getActivePrinterCount() == 0);
+        assertEquals(PrintJob.State.QUEUED, job.getState());
+        assertNotNull(job.getError());
+        assertEquals(Arrays.asList(job.id), queuedIds());
+
+        printer.connected = true;
+        queue.resume();
+        await(() -> job.getState() == PrintJob.State.DONE);
+        assertEquals(1, printer.sent.size());
+    }
+
+    @Test
+    public void cancelAfterRequeueIsFinal() throws InterruptedException {
+        FakeConnection printer = new FakeConnection();
+        printer.steps.add(disconnect());
+        pool.add("AA", "T02", printer);
+
+        PrintJob job = queue.enqueue("job", new byte[]{1}, 1);
+        await(() -> queue.isPaused() && queue.getActivePrinterCount() == 0);
+        assertTrue(queue.cancel(job.id));
+        assertEquals(PrintJob.State.CANCELLED, job.getState());
+
+        printer.connected = true;
+        PrintJob next = queue.enqueue("next", new byte[]{2}, 1);
+        await(() -> next.getState() == PrintJob.State.DONE);
+        assertEquals(1, printer.sent.size());
+        assertArrayEquals(new byte[]{2}, printer.sent.get(0));
+        assertEquals(PrintJob.State.CANCELLED, job.getState());
+    }
+
+    @Test
+    public void cancelWhilePrintingStopsAfterCurrentCopy() throws InterruptedException {
+        FakeConnection printer = new FakeConnection();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        printer.steps.add(blockUntil(started, release));
+        pool.add("AA", "T02", printer);
+
+        PrintJob job = queue.enqueue("job", new byte[]{1}, 3);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(queue.cancel(job.id));
+        assertTrue(job.isCancelRequested());
+        release.countDown();
+
+        await(job::isFinished);
+        assertEquals(PrintJob.State.CANCELLED, job.getState());
+        assertEquals(1, job.getCopiesDone());
+        assertEquals(1, printer.sent.size());
+    }
+
+    @Test
+    public void cancelledJobStoppedByPrinterIsNotRequeued() throws InterruptedException {
+        FakeConnection printer = new FakeConnection();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        printer.steps.add(connection -> {
+            blockUntil(started, release).run(connection);
+            throw new PrinterStatusException("Print aborted", PrinterStatus.UNKNOWN);
+        });
+        pool.add("AA", "T02", printer);
+
+        PrintJob job = queue.enqueue("job", new byte[]{1}, 1);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(queue.cancel(job.id));
+        release.countDown();
+
+        await(job::isFinished);
+        assertEquals(PrintJob.State.CANCELLED, job.getState());
+        await(queue::isIdle);
+        assertFalse(queue.isPaused());
+        assertTrue(printer.sent.isEmpty());
+    }
+
+    @Test
+    public void jobsSpreadAcrossIdlePrinters() throws InterruptedException {
+        FakeConnection first = new FakeConnection();
+        FakeConnection second = new FakeConnection();
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        first.steps.add(blockUntil(started, release));
+        second.steps.add(blockUntil(started, release));
+        pool.add("AA", "T02", first);
+        pool.add("BB", "M02", second);
+
+        PrintJob a = queue.enqueue("a", new byte[]{1}, 1);
+        PrintJob b = queue.enqueue("b", new byte[]{2}, 1);
+        // Both printers are busy at the same time.
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(2, queue.getActivePrinterCount());
+        release.countDown();
+
+        await(() -> a.getState() == PrintJob.State.DONE && b.getState() == PrintJob.State.DONE);
+        assertNotEquals(a.getPrintedOn(), b.getPrintedOn());
+    }
+
+    @Test
+    public void boundJobWaitsForItsPrinter() throws Exception {
+        FakeConnection first = new FakeConnection();
+        FakeConnection second = new FakeConnection();
+        second.connected = false;
+        pool.add("AA", "T02", first);
+        pool.add("BB", "M02", second);
+        PrintQueue spooled = spooledQueue();
+
+        PrintJob bound = spooled.enqueueOn("BB", "bound", 1, out -> out.write(1));
+        PrintJob any = spooled.enqueue("any", 1, out -> out.write(2));
+        await(() -> any.getState() == PrintJob.State.DONE);
+        assertEquals(PrintJob.State.QUEUED, bound.getState());
+        assertEquals(1, first.sent.size());
+
+        second.connected = true;
+        spooled.resume();
+        await(() -> bound.getState() == PrintJob.State.DONE);
+        assertEquals("BB", bound.getPrintedOn());
+    }
+
+    @Test
+    public void waitingJobStartsWhenPoolChanges() throws InterruptedException {
+        FakeConnection printer = new FakeConnection();
+        printer.connected = false;
+        pool.add("AA", "T02", printer);
+
+        PrintJob job = queue.enqueue("job", new byte[]{1}, 1);
+        Thread.sleep(50);
+        assertEquals(PrintJob.State.QUEUED, job.getState());
+
+        // No polling: the writer only notices the link is back because the pool changed.
+        printer.connected = true;
+        FakeConnection other = new FakeConnection();
+        other.connected = false;
+        pool.add("BB", "M02", other);
+        await(() -> job.getState() == PrintJob.State.DONE);
+        assertEquals("AA", job.getPrintedOn());
+    }
+
+    @Test
+    public void jobsForRemovedPrinterAreCancelled() throws Exception {
+        FakeConnection printer = new FakeConnection();
+        printer.connected = false;
+        pool.add("AA", "T02", printer);
+        PrintQueue spooled = spooledQueue();
+
+        PrintJob bound = spooled.enqueueOn("AA", "bound", 1, out -> out.write(1));
+        PrintJob any = spooled.enqueue("any", 1, out -> out.write(2));
+        pool.disconnect("AA");
+
+        assertEquals(PrintJob.State.CANCELLED, bound.getState());
+        assertEquals(PrintJob.State.QUEUED, any.getState());
+        assertEquals(Arrays.asList(any.id), idsOf(spooled.snapshot()));
+    }
+
+    @Test
+    public void mirroredJobPrintsOnEveryPrinter() throws Exception {
+        FakeConnection first = new FakeConnection();
+        FakeConnection second = new FakeConnection();
+        pool.add("AA", "T02", first);
+        pool.add("BB", "M02", second);
+        PrintQueue spooled = spooledQueue();
+
+        List<PrintJob> jobs = spooled.enqueueMirrored("page", 1, out -> out.write(new byte[]{7, 8}));
+        assertEquals(2, jobs.size());
+        await(() -> jobs.get(0).getState() == PrintJob.State.DONE && jobs.get(1).getState() == PrintJob.State.DONE);
+
+        assertArrayEquals(new byte[]{7, 8}, first.sent.get(0));
+        assertArrayEquals(new byte[]{7, 8}, second.sent.get(0));
+        // Finished jobs leave nothing in the spool; files go just after the worker lets go of the job.
+        await(() -> spoolDir.listFiles().length == 0);
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.storyprinter.print;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PrintSpoolTest {
+
+    private File dir;
+    private final List<String> warnings = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("spool").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        dir.delete();
+    }
+
+    private PrintSpool spool() {
+        return new PrintSpool(dir, (priority, tag, msg, tr) -> warnings.add(msg));
+    }
+
+    private static byte[] payload(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) bytes[i] = (byte) (i * 31);
+        return bytes;
+    }
+
+    private static byte[] read(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        byte[] data = payload(100_000);
+        PrintSpool.Entry created = spool().create("Page 1", 2, "AA:BB:CC:DD:EE:FF", out -> out.write(data));
+
+        List<PrintSpool.Entry> pending = spool().loadPending();
+        assertEquals(1, pending.size());
+        PrintSpool.Entry entry = pending.get(0);
+        assertEquals(created.sequence, entry.sequence);
+        assertEquals("Page 1", entry.label);
+        assertEquals(2, entry.copies);
+        assertEquals(0, entry.copiesDone);
+        assertEquals("AA:BB:CC:DD:EE:FF", entry.printerAddress);
+        assertEquals(data.length, entry.payloadSize());
+        assertArrayEquals(data, read(spool().map(entry)));
+    }
+
+    @Test
+    public void anyPrinterAndDefaults() throws IOException {
+        spool().create(null, 0, out -> out.write(1));
+        PrintSpool.Entry entry = spool().loadPending().get(0);
+        assertEquals("", entry.label);
+        assertEquals(1, entry.copies);
+        assertNull(entry.printerAddress);
+    }
+
+    @Test
+    public void progressIsPersisted() throws IOException {
+        PrintSpool spool = spool();
+        PrintSpool.Entry entry = spool.create("job", 3, out -> out.write(payload(10)));
+        spool.markProgress(entry, 1);
+        assertEquals(1, spool().loadPending().get(0).copiesDone);
+
+        spool.markProgress(entry, 3);
+        assertTrue(spool().loadPending().isEmpty());
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void pendingJobsComeBackOldestFirst() throws IOException {
+        PrintSpool spool = spool();
+        for (int i = 0; i < 12; i++) {
+            spool.create("job " + i, 1, out -> out.write(payload(10)));
+        }
+        List<PrintSpool.Entry> pending = spool().loadPending();
+        assertEquals(12, pending.size());
+        for (int i = 0; i < 12; i++) assertEquals("job " + i, pending.get(i).label);
+
+        // A new spool on the same directory keeps counting.
+        PrintSpool.Entry later = spool().create("later", 1, out -> out.write(1));
+        assertTrue(later.sequence > pending.get(11).sequence);
+    }
+
+    @Test
+    public void truncatedPayloadIsDropped() throws IOException {
+        PrintSpool.Entry entry = spool().create("job", 1, out -> out.write(payload(1000)));
+        try (RandomAccessFile raf = new RandomAccessFile(entry.payload, "rw")) {
+            raf.setLength(500);
+        }
+        assertTrue(spool().loadPending().isEmpty());
+        assertFalse(entry.payload.exists());
+        assertFalse(entry.meta.exists());
+        assertEquals(1, warnings.size());
+    }
+
+    @Test
+    public void strayFilesAreCleanedUp() throws IOException {
+        PrintSpool.Entry entry = spool().create("job", 1, out -> out.write(payload(10)));
+        File orphanMeta = new File(dir, "99.meta");
+        File tmp = new File(dir, "100.meta.tmp");
+        Files.copy(entry.meta.toPath(), orphanMeta.toPath());
+        assertTrue(tmp.createNewFile());
+
+        assertEquals(1, spool().loadPending().size());
+        assertFalse(orphanMeta.exists());
+        assertFalse(tmp.exists());
+        assertTrue(entry.meta.exists());
+    }
+
+    @Test
+    public void payloadSizeIsTheSpooledSize() throws IOException {
+        PrintSpool.Entry entry = spool().create("job", 1, out -> out.write(payload(1000)));
+        try (RandomAccessFile raf = new RandomAccessFile(entry.payload, "rw")) {
+            raf.setLength(10);
+        }
+        assertEquals(1000, entry.payloadSize());
+    }
+
+    @Test
+    public void payloadWithoutMetaIsDropped() throws IOException {
+        PrintSpool.Entry entry = spool().create("job", 1, out -> out.write(payload(10)));
+        assertTrue(entry.meta.delete());
+        assertTrue(spool().loadPending().isEmpty());
+        assertFalse(entry.payload.exists());
+    }
+
+    @Test
+    public void failedWriteLeavesNothingBehind() {
+        try {
+            spool().create("job", 1, out -> {
+                out.write(payload(10));
+                throw new IOException("encoder failed");
+            });
+            fail("expected IOException");
+        } catch (IOException expected) {
+            assertEquals("encoder failed", expected.getMessage());
+        }
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void duplicateCopiesPayload() throws IOException {
+        PrintSpool spool = spool();
+        byte[] data = payload(50_000);
+        PrintSpool.Entry source = spool.create("job", 2, out -> out.write(data));
+        PrintSpool.Entry copy = spool.duplicate(source, "11:22:33:44:55:66");
+
+        assertNotEquals(source.sequence, copy.sequence);
+        assertEquals("11:22:33:44:55:66", copy.printerAddress);
+        assertEquals(2, copy.copies);
+        assertArrayEquals(data, read(spool.map(copy)));
+        assertEquals(2, spool().loadPending().size());
+    }
+}
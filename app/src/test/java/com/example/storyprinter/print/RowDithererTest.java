@@ -0,0 +1,93 @@
+package com.example.storyprinter.print;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class RowDithererTest {
+
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+    private static final int MID_GRAY = 0xFF808080;
+
+    private static ImageProcessor settings(int ditherMode, boolean invert, boolean sharpen) {
+        return new ImageProcessor(1.0f, ImageProcessor.DEFAULT_THRESHOLD, ditherMode, invert, sharpen,
+                ImageProcessor.TONE_NONE);
+    }
+
+    /** Dithers a {@code width} x {@code height} image of one colour; returns the rows produced. */
+    private static boolean[][] dither(ImageProcessor settings, int width, int height, int color) {
+        int[] left = {height};
+        RowDitherer ditherer = new RowDitherer(settings, width, argb -> {
+            if (left[0] == 0) return false;
+            left[0]--;
+            Arrays.fill(argb, color);
+            return true;
+        });
+        boolean[][] rows = new boolean[height][];
+        for (int y = 0; y < height; y++) {
+            rows[y] = new boolean[width];
+            assertTrue("row " + y, ditherer.nextRow(rows[y]));
+        }
+        assertFalse(ditherer.nextRow(new boolean[width]));
+        return rows;
+    }
+
+    private static int countBlack(boolean[][] rows) {
+        int n = 0;
+        for (boolean[] row : rows) {
+            for (boolean b : row) if (b) n++;
+        }
+        return n;
+    }
+
+    @Test
+    public void solidColoursStaySolid() {
+        for (int mode : new int[]{ImageProcessor.DITHER_NONE, ImageProcessor.DITHER_FLOYD_STEINBERG,
+                ImageProcessor.DITHER_ATKINSON, ImageProcessor.DITHER_ORDERED_8x8}) {
+            assertEquals("mode " + mode, 0, countBlack(dither(settings(mode, false, false), 16, 16, WHITE)));
+            assertEquals("mode " + mode, 256, countBlack(dither(settings(mode, false, false), 16, 16, BLACK)));
+        }
+    }
+
+    @Test
+    public void invertFlipsDots() {
+        ImageProcessor inverted = settings(ImageProcessor.DITHER_NONE, true, false);
+        assertEquals(64, countBlack(dither(inverted, 8, 8, WHITE)));
+        assertEquals(0, countBlack(dither(inverted, 8, 8, BLACK)));
+    }
+
+    @Test
+    public void orderedDitherCoversHalfOfMidGray() {
+        // Half the Bayer matrix sits above 128.
+        boolean[][] rows = dither(settings(ImageProcessor.DITHER_ORDERED_8x8, false, false), 16, 16, MID_GRAY);
+        assertEquals(128, countBlack(rows));
+    }
+
+    @Test
+    public void errorDiffusionCoversAboutHalfOfMidGray() {
+        boolean[][] rows = dither(settings(ImageProcessor.DITHER_FLOYD_STEINBERG, false, false), 64, 64, MID_GRAY);
+        double coverage = countBlack(rows) / (64.0 * 64);
+        assertTrue("coverage " + coverage, coverage > 0.45 && coverage < 0.55);
+    }
+
+    @Test
+    public void sharpenLeavesFlatAreasAlone() {
+        int lightGray = 0xFFC8C8C8;
+        assertEquals(0, countBlack(dither(settings(ImageProcessor.DITHER_NONE, false, true), 16, 16, lightGray)));
+    }
+
+    @Test
+    public void emptySource() {
+        RowDitherer ditherer = new RowDitherer(settings(ImageProcessor.DITHER_ATKINSON, false, true), 8, argb -> false);
+        assertFalse(ditherer.nextRow(new boolean[8]));
+    }
+
+    @Test
+    public void singleRowWithSharpen() {
+        boolean[][] rows = dither(settings(ImageProcessor.DITHER_NONE, false, true), 8, 1, BLACK);
+        assertEquals(8, countBlack(rows));
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.storyprinter.print;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TallImageEncoderTest {
+
+    @Test
+    public void needsStreaming_byHeightOnPaper() {
+        PrinterProfile t02 = PrinterProfiles.T02; // 384 dots wide
+        assertFalse(TallImageEncoder.needsStreaming(384, TallImageEncoder.MAX_BUFFERED_ROWS, t02));
+        assertTrue(TallImageEncoder.needsStreaming(384, TallImageEncoder.MAX_BUFFERED_ROWS + 1, t02));
+    }
+
+    @Test
+    public void needsStreaming_wideImagesAreScaledDownFirst() {
+        PrinterProfile t02 = PrinterProfiles.T02;
+        // 768 wide prints at half height: 6000 rows become 3000 on paper.
+        assertFalse(TallImageEncoder.needsStreaming(768, 6000, t02));
+        assertTrue(TallImageEncoder.needsStreaming(768, 9000, t02));
+        // Narrow images aren't scaled up.
+        assertTrue(TallImageEncoder.needsStreaming(100, 5000, t02));
+        // The same image fits a wider printer's buffer.
+        assertFalse(TallImageEncoder.needsStreaming(1152, 8000, PrinterProfiles.GENERIC_80MM));
+    }
+
+    @Test
+    public void needsStreaming_emptyImages() {
+        assertFalse(TallImageEncoder.needsStreaming(0, 100_000, PrinterProfiles.T02));
+        assertFalse(TallImageEncoder.needsStreaming(384, 0, PrinterProfiles.T02));
+    }
+
+    @Test
+    public void previewSampleSize_powersOfTwo() {
+        assertEquals(1, TallImageEncoder.previewSampleSize(TallImageEncoder.MAX_BUFFERED_ROWS));
+        assertEquals(2, TallImageEncoder.previewSampleSize(TallImageEncoder.MAX_BUFFERED_ROWS + 1));
+        assertEquals(4, TallImageEncoder.previewSampleSize(TallImageEncoder.MAX_BUFFERED_ROWS * 3));
+        assertEquals(16, TallImageEncoder.previewSampleSize(60_000));
+    }
+}
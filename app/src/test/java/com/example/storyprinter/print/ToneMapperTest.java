@@ -0,0 +1,119 @@
+package com.example.storyprinter.print;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ToneMapperTest {
+
+    private static int[] greys(int... values) {
+        int[] argb = new int[values.length];
+        for (int i = 0; i < values.length; i++) argb[i] = ToneMapper.grey(values[i]);
+        return argb;
+    }
+
+    private static int[] horizontalRamp(int width, int height, int from, int to) {
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                argb[y * width + x] = ToneMapper.grey(from + (to - from) * x / Math.max(1, width - 1));
+            }
+        }
+        return argb;
+    }
+
+    @Test
+    public void luminance_ofGreyIsItsLevel() {
+        for (int v = 0; v < 256; v++) assertEquals(v, ToneMapper.luminance(ToneMapper.grey(v)));
+        assertEquals(0xFF000000, ToneMapper.grey(0));
+        assertEquals(0xFFFFFFFF, ToneMapper.grey(255));
+    }
+
+    @Test
+    public void luminance_weightsChannels() {
+        assertEquals(76, ToneMapper.luminance(0xFFFF0000));
+        assertEquals(150, ToneMapper.luminance(0xFF00FF00));
+        assertEquals(29, ToneMapper.luminance(0xFF0000FF));
+    }
+
+    @Test
+    public void levelsLut_stretchesOccupiedRange() {
+        int[] lut = ToneMapper.levelsLut(horizontalRamp(256, 4, 50, 200));
+        assertEquals(0, lut[50]);
+        assertEquals(255, lut[200]);
+        assertEquals(0, lut[10]);
+        assertEquals(255, lut[250]);
+        for (int v = 1; v < 256; v++) assertTrue(lut[v] >= lut[v - 1]);
+    }
+
+    @Test
+    public void levelsLut_ignoresAFewSpecks() {
+        int[] argb = horizontalRamp(400, 5, 60, 180);
+        argb[0] = ToneMapper.grey(0);
+        argb[1] = ToneMapper.grey(255);
+        int[] lut = ToneMapper.levelsLut(argb);
+        assertEquals(0, lut[60]);
+        assertEquals(255, lut[180]);
+    }
+
+    @Test
+    public void levelsLut_flatImageIsLeftAlone() {
+        int[] argb = new int[100];
+        Arrays.fill(argb, ToneMapper.grey(128));
+        int[] lut = ToneMapper.levelsLut(argb);
+        for (int v = 0; v < 256; v++) assertEquals(v, lut[v]);
+    }
+
+    @Test
+    public void apply_autoLevels() {
+        int[] argb = greys(100, 100, 150, 150);
+        ToneMapper.apply(argb, 2, 2, ImageProcessor.TONE_AUTO_LEVELS);
+        assertArrayEquals(greys(0, 0, 255, 255), argb);
+    }
+
+    @Test
+    public void apply_noneLeavesPixelsAlone() {
+        int[] argb = greys(100, 100, 150, 150);
+        ToneMapper.apply(argb, 2, 2, ImageProcessor.TONE_NONE);
+        assertArrayEquals(greys(100, 100, 150, 150), argb);
+    }
+
+    @Test
+    public void clahe_flatImageStaysFlat() {
+        int[] argb = new int[64 * 64];
+        Arrays.fill(argb, ToneMapper.grey(90));
+        ToneMapper.clahe(argb, 64, 64);
+        for (int c : argb) assertEquals(argb[0], c);
+    }
+
+    @Test
+    public void clahe_singleTileKeepsOrder() {
+        // Narrower than two tiles, so one curve covers the whole image.
+        int[] argb = horizontalRamp(24, 24, 40, 120);
+        ToneMapper.clahe(argb, 24, 24);
+        for (int x = 1; x < 24; x++) {
+            assertTrue(ToneMapper.luminance(argb[x]) >= ToneMapper.luminance(argb[x - 1]));
+        }
+        // Spreads the narrow range out.
+        assertTrue(ToneMapper.luminance(argb[23]) - ToneMapper.luminance(argb[0]) > 80);
+    }
+
+    @Test
+    public void clahe_outputIsGreyAndRepeatable() {
+        int width = 300, height = 700;
+        int[] source = new int[width * height];
+        for (int i = 0; i < source.length; i++) {
+            int x = i % width, y = i / width;
+            source[i] = 0xFF000000 | ((x * 3) & 0xFF) << 16 | ((y * 5) & 0xFF) << 8 | ((x ^ y) & 0xFF);
+        }
+        int[] first = source.clone();
+        int[] second = source.clone();
+        ToneMapper.clahe(first, width, height);
+        ToneMapper.clahe(second, width, height);
+
+        assertArrayEquals(first, second);
+        for (int c : first) assertEquals(ToneMapper.grey(ToneMapper.luminance(c)), c);
+    }
+}